@@ -26,8 +26,20 @@ public final class DistConstants {
 
   public static final int DEFAULT_SHUTDOWN_TIMEOUT = 30000;
 
+  /**
+   * Extension of the binary files next to the {@link #FILE_NAME_EOSGI_DIST_CONFIG} that hold the
+   * resolved launch configuration of one usage type.
+   */
+  public static final String FILE_EXTENSION_LAUNCH_CONFIG_SIDECAR = ".launch";
+
   public static final String FILE_NAME_EOSGI_DIST_CONFIG = ".eosgi.dist.xml";
 
+  /**
+   * Name of the file in the root folder of the distributions that stores the fingerprints of the
+   * launch configurations that the environments were last launched with.
+   */
+  public static final String FILE_NAME_LAUNCH_FINGERPRINT_STORE = ".eosgi.launch.fingerprints";
+
   /**
    * Key that can be used to pass a classloader to the dist plugin that can load the Sun Attach API
    * via the data map of the execution request.
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -34,15 +35,20 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 import org.everit.osgi.dev.dist.util.DistConstants;
@@ -52,12 +58,93 @@ import org.everit.osgi.dev.dist.util.attach.internal.reflect.VirtualMachineStati
 
 /**
  * Tracks virtual machines that run EOSGi environment.
+ *
+ * <p>
+ * The VMs are listed and attached without holding the lock of the manager, only merging the
+ * results into the tracked state is serialized. The tracked environments are published as an
+ * immutable snapshot after each change, so the query methods never block and the other methods do
+ * not wait for a refresh that is attaching to VMs.
  */
 public class EOSGiVMManager implements Closeable {
 
+  /**
+   * The result of handling a new VM. If the VM is attached on a thread of the attach pool, the
+   * fields are read by the thread that called the refresh after the task is finished. Only the id
+   * is read if the task timed out.
+   */
+  private static final class AttachResult {
+
+    private RuntimeException attachException;
+
+    private long deadlineNanos;
+
+    private Throwable failure;
+
+    /**
+     * Whether the VM was classified from its performance data file without attaching it.
+     */
+    private boolean fromPerfData = false;
+
+    private String jmxURL;
+
+    private Properties systemProperties;
+
+    private boolean timedOut = false;
+
+    private final String vmId;
+
+    AttachResult(final String vmId) {
+      this.vmId = vmId;
+    }
+  }
+
+  /**
+   * Immutable view of the tracked environments that the query methods read.
+   */
+  private static final class Snapshot {
+
+    private static final Snapshot EMPTY =
+        new Snapshot(Collections.emptyMap(), Collections.emptyMap());
+
+    private final Map<String, Set<EnvironmentRuntimeInfo>> environmentInfosByEnvironmentId;
+
+    private final Set<EnvironmentRuntimeInfo> runtimeInfos;
+
+    private final Map<String, String> vmIdByLaunchId;
+
+    Snapshot(final Map<String, Set<EnvironmentRuntimeInfo>> environmentInfosByEnvironmentId,
+        final Map<String, String> vmIdByLaunchId) {
+
+      Map<String, Set<EnvironmentRuntimeInfo>> infosByEnvironmentId =
+          new HashMap<>(environmentInfosByEnvironmentId.size() * 2);
+      Set<EnvironmentRuntimeInfo> allInfos = new HashSet<>();
+      for (Map.Entry<String, Set<EnvironmentRuntimeInfo>> entry : environmentInfosByEnvironmentId
+          .entrySet()) {
+        Set<EnvironmentRuntimeInfo> infos =
+            Collections.unmodifiableSet(new HashSet<>(entry.getValue()));
+        infosByEnvironmentId.put(entry.getKey(), infos);
+        allInfos.addAll(infos);
+      }
+      this.environmentInfosByEnvironmentId = Collections.unmodifiableMap(infosByEnvironmentId);
+      this.runtimeInfos = Collections.unmodifiableSet(allInfos);
+      this.vmIdByLaunchId = Collections.unmodifiableMap(new HashMap<>(vmIdByLaunchId));
+    }
+  }
+
   private static final int BUFFER_SIZE = 1024;
 
-  private static final long DEFAULT_VM_CALL_TIMEOUT = 3000;
+  /**
+   * The default time in milliseconds that a call on a VM may take.
+   */
+  public static final long DEFAULT_VM_CALL_TIMEOUT = 3000;
+
+  private static ThreadFactory daemonThreadFactory(final String name) {
+    return (runnable) -> {
+      Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
 
   /**
    * Static method to list the id of all available virtual machines.
@@ -80,7 +167,9 @@ public class EOSGiVMManager implements Closeable {
     return result;
   }
 
-  private boolean closed = false;
+  private final int attachParallelism;
+
+  private volatile boolean closed = false;
 
   private final Consumer<EOSGiVMManagerEventData> deadlockMessageConsumer;
 
@@ -89,20 +178,50 @@ public class EOSGiVMManager implements Closeable {
   private final Map<String, Set<EnvironmentRuntimeInfo>> environmentInfosByEnvironmentId =
       new HashMap<>();
 
+  /**
+   * Tells whether a new VM should be attached or <code>null</code> if all VMs are attached.
+   */
+  private final Predicate<String> eosgiCandidateFilter;
+
   private final Function<EOSGiVMManagerEventData, Boolean> exceptionDuringAttachVMHandler;
 
   private final Map<String, String> launchIdByVmId = new HashMap<>();
 
+  /**
+   * Whether the VMs are classified from their performance data files and the management agents are
+   * only started on request.
+   */
+  private final boolean perfDataDiscovery;
+
+  private final PerfDataFolderWatcher perfDataFolderWatcher;
+
+  /**
+   * The ids of the VMs that are handled. The set is replaced and never modified.
+   */
   private Set<String> processedVMIds = new HashSet<>();
 
+  /**
+   * Serializes the refreshes, so they do not attach the same new VMs at the same time.
+   */
+  private final Object refreshLock = new Object();
+
   private File shutdownAgentFile = null;
 
-  private ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor();
+  private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
 
-  private final List<Runnable> stateChangeListeners = new ArrayList<>();
+  private final List<Runnable> stateChangeListeners = new CopyOnWriteArrayList<>();
 
   private final VirtualMachineStaticReflect virtualMachineStatic;
 
+  /**
+   * Runs the calls on VMs that have a timeout. A thread is stopped if its call times out, the other
+   * threads are not affected, so the calls of concurrent operations do not wait for each other.
+   */
+  private final ExecutorService vmCallExecutor =
+      Executors.newCachedThreadPool(daemonThreadFactory("EOSGiVMManager-vm-call"));
+
+  private final long vmCallTimeout;
+
   private final Map<String, String> vmIdByLaunchId = new HashMap<>();
 
   /**
@@ -132,40 +251,153 @@ public class EOSGiVMManager implements Closeable {
             ? parameter.exceptionDuringAttachVMHandler
             : (eventData) -> false;
 
+    this.attachParallelism = Math.max(1, parameter.attachParallelism);
+    this.vmCallTimeout = parameter.vmCallTimeout;
+    this.perfDataDiscovery = parameter.discoveryMode == VMDiscoveryMode.PERF_DATA;
+    this.eosgiCandidateFilter = (parameter.discoveryMode == VMDiscoveryMode.PROC_CMDLINE
+        && ProcCmdlineScanner.isAvailable())
+            ? ProcCmdlineScanner::isEOSGiCandidate
+            : null;
+
     refresh();
 
+    // The watcher refreshes once after it started, so no VM that starts in between is missed
+    this.perfDataFolderWatcher =
+        (parameter.watchPerfDataFolder) ? startPerfDataFolderWatcher() : null;
+
   }
 
-  public synchronized void addStateChangeListener(final Runnable listener) {
+  public void addStateChangeListener(final Runnable listener) {
     stateChangeListeners.add(listener);
   }
 
-  private void attachAndProcessVM(final VirtualMachineDescriptorReflect virtualMachineDescriptor) {
-    VirtualMachineReflect virtualMachine = null;
+  private AttachResult attachAndCollect(
+      final VirtualMachineDescriptorReflect virtualMachineDescriptor, final AttachResult result) {
+
+    VirtualMachineReflect virtualMachine;
     try {
       virtualMachine = virtualMachineStatic.attach(virtualMachineDescriptor);
     } catch (RuntimeException e) {
-      if (!handleExceptionByConsumer(e, virtualMachineDescriptor.id())) {
-        throw e;
+      result.attachException = e;
+      return result;
+    }
+
+    try (VirtualMachineReflect attachedVirtualMachine = virtualMachine) {
+      Properties systemProperties = attachedVirtualMachine.getSystemProperties();
+      result.systemProperties = systemProperties;
+      if (systemProperties != null
+          && systemProperties.getProperty(DistConstants.SYSPROP_ENVIRONMENT_ID) != null) {
+        result.jmxURL = attachedVirtualMachine.startLocalManagementAgent();
       }
-      return;
+    }
+    return result;
+  }
+
+  private AttachResult attachAndProcessVM(final String vmId,
+      final Supplier<VirtualMachineReflect> attachAction) {
+    AttachResult result = new AttachResult(vmId);
+    VirtualMachineReflect virtualMachine = null;
+    try {
+      virtualMachine = attachAction.get();
+    } catch (RuntimeException e) {
+      result.attachException = e;
+      return result;
     }
 
     try (VirtualMachineReflect attachedVirtualMachine = virtualMachine) {
-      processVirtualMachine(attachedVirtualMachine);
+      Properties systemProperties =
+          callWithTimeout(() -> attachedVirtualMachine.getSystemProperties(), vmId);
+      result.systemProperties = systemProperties;
+      if (systemProperties != null
+          && systemProperties.getProperty(DistConstants.SYSPROP_ENVIRONMENT_ID) != null) {
+        result.jmxURL = attachedVirtualMachine.startLocalManagementAgent();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Attaches the VMs on a pool of threads, at most {@link #attachParallelism} at the same time.
+   * Each VM has its own timeout that starts when its task is submitted. The task of a VM that times
+   * out is interrupted and abandoned instead of stopped, so it closes the VM when the call returns.
+   * The next VMs are attached on new threads meanwhile. The tracking maps are not touched, the
+   * results are merged by the caller. If the calling thread is interrupted, only the results of
+   * the VMs that were handled before are returned.
+   */
+  private List<AttachResult> attachInParallel(
+      final List<VirtualMachineDescriptorReflect> virtualMachineDescriptors) {
+
+    ExecutorService attachExecutor =
+        Executors.newCachedThreadPool(daemonThreadFactory("EOSGiVMManager-attach"));
+    CompletionService<AttachResult> completionService =
+        new ExecutorCompletionService<>(attachExecutor);
+    long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(vmCallTimeout);
+
+    List<AttachResult> results = new ArrayList<>(virtualMachineDescriptors.size());
+    Map<Future<AttachResult>, AttachResult> runningResults = new HashMap<>();
+    Iterator<VirtualMachineDescriptorReflect> pendingDescriptors =
+        virtualMachineDescriptors.iterator();
+    try {
+      while (pendingDescriptors.hasNext() || !runningResults.isEmpty()) {
+        while (pendingDescriptors.hasNext() && runningResults.size() < attachParallelism) {
+          VirtualMachineDescriptorReflect virtualMachineDescriptor = pendingDescriptors.next();
+          AttachResult result = new AttachResult(virtualMachineDescriptor.id());
+          result.deadlineNanos = System.nanoTime() + timeoutNanos;
+          runningResults.put(completionService.submit(
+              () -> attachAndCollect(virtualMachineDescriptor, result)), result);
+        }
+
+        long waitNanos = Long.MAX_VALUE;
+        for (AttachResult result : runningResults.values()) {
+          waitNanos = Math.min(waitNanos, result.deadlineNanos - System.nanoTime());
+        }
+        Future<AttachResult> finishedFuture =
+            completionService.poll(Math.max(0, waitNanos), TimeUnit.NANOSECONDS);
+
+        // The future of an abandoned task is not in the map anymore
+        AttachResult finishedResult =
+            (finishedFuture != null) ? runningResults.remove(finishedFuture) : null;
+        if (finishedResult != null) {
+          try {
+            finishedFuture.get();
+          } catch (ExecutionException e) {
+            finishedResult.failure = e.getCause();
+          }
+          results.add(finishedResult);
+        }
+
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Future<AttachResult>, AttachResult>> iterator =
+            runningResults.entrySet().iterator();
+        while (iterator.hasNext()) {
+          Map.Entry<Future<AttachResult>, AttachResult> entry = iterator.next();
+          if (now - entry.getValue().deadlineNanos >= 0) {
+            entry.getKey().cancel(true);
+            entry.getValue().timedOut = true;
+            results.add(entry.getValue());
+            iterator.remove();
+          }
+        }
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return results;
+    } finally {
+      attachExecutor.shutdownNow();
     }
   }
 
   @SuppressWarnings("deprecation")
   private <R> R callWithTimeout(final Supplier<R> supplier, final String vmId) {
     AtomicReference<Thread> executorThread = new AtomicReference<>();
-    Future<R> future = singleThreadExecutor.submit(() -> {
+    Future<R> future = vmCallExecutor.submit(() -> {
       executorThread.set(Thread.currentThread());
       return supplier.get();
     });
 
     try {
-      return future.get(DEFAULT_VM_CALL_TIMEOUT, TimeUnit.MILLISECONDS);
+      return future.get(vmCallTimeout, TimeUnit.MILLISECONDS);
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
       return null;
@@ -176,15 +408,29 @@ public class EOSGiVMManager implements Closeable {
       if (thread != null && thread.isAlive()) {
         thread.stop();
       }
-      singleThreadExecutor.shutdown();
-      singleThreadExecutor = Executors.newSingleThreadExecutor();
 
-      EOSGiVMManagerEventData eventData = new EOSGiVMManagerEventData();
-      eventData.virtualMachineId = vmId;
-      eventData.vmManager = this;
-      deadlockMessageConsumer.accept(eventData);
+      handleDeadlock(vmId);
+      return null;
+    }
+  }
+
+  /**
+   * Classifies a VM from its performance data file.
+   *
+   * @return the result that holds the system properties of the VM or <code>null</code> if the VM
+   *         must be attached.
+   */
+  private AttachResult classifyFromPerfData(final String vmId) {
+    Properties systemProperties = PerfDataReader.readSystemProperties(vmId);
+    if (systemProperties == null
+        || (systemProperties.getProperty(DistConstants.SYSPROP_ENVIRONMENT_ID) != null
+            && systemProperties.getProperty("user.dir") == null)) {
       return null;
     }
+    AttachResult result = new AttachResult(vmId);
+    result.fromPerfData = true;
+    result.systemProperties = systemProperties;
+    return result;
   }
 
   @Override
@@ -193,31 +439,77 @@ public class EOSGiVMManager implements Closeable {
       return;
     }
     closed = true;
-    singleThreadExecutor.shutdown();
+    if (perfDataFolderWatcher != null) {
+      perfDataFolderWatcher.close();
+    }
+    vmCallExecutor.shutdown();
     if (this.shutdownAgentFile != null && !shutdownAgentFile.delete()) {
       throw new UncheckedIOException(new IOException(
           "Could not delete shutdown agent file: " + shutdownAgentFile.getAbsolutePath()));
     }
     launchIdByVmId.clear();
-    processedVMIds.clear();
+    processedVMIds = Collections.emptySet();
     environmentInfosByEnvironmentId.clear();
     environmentIdByVmId.clear();
     vmIdByLaunchId.clear();
+    snapshot.set(Snapshot.EMPTY);
   }
 
   /**
-   * Returns the information of all currently tracked environments.
+   * Returns the JMX service URL of a VM that runs a tracked environment. If the VM was discovered
+   * from its performance data, its local management agent is started on the first call.
    *
-   * @return the information of all currently tracked environments.
+   * @param virtualMachineId
+   *          The id of the virtual machine.
+   * @return the JMX service URL or <code>null</code> if the VM does not run a tracked environment
+   *         or its management agent could not be started. The exception of a failed attach is
+   *         passed to the handler of {@link EOSGiVMManagerParameter#exceptionDuringAttachVMHandler}
+   *         and only thrown if the handler does not accept it.
    */
-  public synchronized Set<EnvironmentRuntimeInfo> getRuntimeInformations() {
-    Set<EnvironmentRuntimeInfo> result = new HashSet<>();
-
-    for (Collection<EnvironmentRuntimeInfo> infos : environmentInfosByEnvironmentId.values()) {
+  public String getJmxServiceURL(final String virtualMachineId) {
+    if (closed) {
+      return null;
+    }
+    EnvironmentRuntimeInfo environmentRuntimeInfo = null;
+    for (EnvironmentRuntimeInfo info : snapshot.get().runtimeInfos) {
+      if (info.virtualMachineId.equals(virtualMachineId)) {
+        environmentRuntimeInfo = info;
+      }
+    }
+    if (environmentRuntimeInfo == null) {
+      return null;
+    }
+    if (environmentRuntimeInfo.jmxServiceURL != null) {
+      return environmentRuntimeInfo.jmxServiceURL;
+    }
 
-      result.addAll(infos);
+    String jmxURL;
+    try (VirtualMachineReflect virtualMachine = virtualMachineStatic.attach(virtualMachineId)) {
+      jmxURL = callWithTimeout(() -> virtualMachine.startLocalManagementAgent(), virtualMachineId);
+    } catch (RuntimeException e) {
+      if (!handleExceptionByConsumer(e, virtualMachineId)) {
+        throw e;
+      }
+      return null;
     }
-    return result;
+    if (jmxURL == null) {
+      return null;
+    }
+    setJmxServiceURL(environmentRuntimeInfo, jmxURL);
+    return jmxURL;
+  }
+
+  private synchronized Set<String> getProcessedVMIds() {
+    return processedVMIds;
+  }
+
+  /**
+   * Returns the information of all currently tracked environments.
+   *
+   * @return the information of all currently tracked environments.
+   */
+  public Set<EnvironmentRuntimeInfo> getRuntimeInformations() {
+    return new HashSet<>(snapshot.get().runtimeInfos);
   }
 
   /**
@@ -229,14 +521,14 @@ public class EOSGiVMManager implements Closeable {
    *          The root dir of the environment.
    * @return A set of runtime informations or an empty set if no running JVM is available.
    */
-  public synchronized Set<EnvironmentRuntimeInfo> getRuntimeInformations(final String environmentId,
+  public Set<EnvironmentRuntimeInfo> getRuntimeInformations(final String environmentId,
       final File environmentRootDir) {
     if (closed) {
       return Collections.emptySet();
     }
     Set<EnvironmentRuntimeInfo> result = new HashSet<>();
     Set<EnvironmentRuntimeInfo> environmentInfos =
-        environmentInfosByEnvironmentId.get(environmentId);
+        snapshot.get().environmentInfosByEnvironmentId.get(environmentId);
     if (environmentInfos == null) {
       return result;
     }
@@ -249,7 +541,7 @@ public class EOSGiVMManager implements Closeable {
     return result;
   }
 
-  private String getShutdownAgentPath() {
+  private synchronized String getShutdownAgentPath() {
     if (shutdownAgentFile != null) {
       return shutdownAgentFile.getAbsolutePath();
     }
@@ -276,8 +568,38 @@ public class EOSGiVMManager implements Closeable {
     }
   }
 
-  public synchronized String getVirtualMachineIdByIUniqueLaunchId(final String uniqueLaunchId) {
-    return vmIdByLaunchId.get(uniqueLaunchId);
+  public String getVirtualMachineIdByIUniqueLaunchId(final String uniqueLaunchId) {
+    return snapshot.get().vmIdByLaunchId.get(uniqueLaunchId);
+  }
+
+  /**
+   * Passes the failure of handling a new VM to the handlers. Called without holding the lock of
+   * the manager.
+   */
+  private void handleAttachFailure(final AttachResult result) {
+    if (result.timedOut) {
+      handleDeadlock(result.vmId);
+      return;
+    }
+    if (result.attachException != null) {
+      if (!handleExceptionByConsumer(result.attachException, result.vmId)) {
+        throw result.attachException;
+      }
+      return;
+    }
+    if (result.failure instanceof Error) {
+      throw (Error) result.failure;
+    }
+    if (result.failure != null) {
+      throw new RuntimeException(result.failure);
+    }
+  }
+
+  private void handleDeadlock(final String vmId) {
+    EOSGiVMManagerEventData eventData = new EOSGiVMManagerEventData();
+    eventData.virtualMachineId = vmId;
+    eventData.vmManager = this;
+    deadlockMessageConsumer.accept(eventData);
   }
 
   private boolean handleExceptionByConsumer(final RuntimeException e, final String vmId) {
@@ -300,13 +622,143 @@ public class EOSGiVMManager implements Closeable {
     return false;
   }
 
-  private void processVirtualMachine(final VirtualMachineReflect virtualMachine) {
-    String vmId = virtualMachine.id();
-    Properties systemProperties = callWithTimeout(() -> virtualMachine.getSystemProperties(), vmId);
+  /**
+   * Checks whether the VMs are processed as their performance data files appear and disappear.
+   *
+   * @return <code>true</code> if the performance data folder is watched, <code>false</code> if the
+   *         VMs are only found by {@link #refresh()}, because the folder could not be watched or
+   *         the watching stopped.
+   */
+  public boolean isWatching() {
+    return perfDataFolderWatcher != null && perfDataFolderWatcher.isAlive();
+  }
+
+  /**
+   * Merges the results of the new VMs into the tracked state and removes the VMs that stopped. The
+   * VMs that were handled meanwhile by another call are skipped.
+   *
+   * @param removedVMIds
+   *          the ids of the VMs that stopped.
+   * @param results
+   *          the results of the new VMs. The VMs that have no result are not marked as processed.
+   */
+  private synchronized void mergeResults(final Set<String> removedVMIds,
+      final List<AttachResult> results) {
+    if (closed) {
+      return;
+    }
+    Set<String> newProcessedVMIds = new HashSet<>(processedVMIds);
+    newProcessedVMIds.removeAll(removedVMIds);
+    for (AttachResult result : results) {
+      if (newProcessedVMIds.add(result.vmId) && !result.timedOut
+          && result.systemProperties != null) {
+        registerVirtualMachine(result.vmId, result.systemProperties, result.jmxURL,
+            result.fromPerfData);
+      }
+    }
+    removeDeadVms(removedVMIds);
+
+    if (!results.isEmpty() || !processedVMIds.equals(newProcessedVMIds)) {
+      publishSnapshot();
+    }
+    updateProcessedVMIds(newProcessedVMIds);
+  }
+
+  /**
+   * Tells whether a new VM must be attached. If it does not, its result is added to the results.
+   */
+  private boolean mustBeAttached(final String vmId, final List<AttachResult> results) {
+    AttachResult perfDataResult = (perfDataDiscovery) ? classifyFromPerfData(vmId) : null;
+    if (perfDataResult != null) {
+      results.add(perfDataResult);
+      return false;
+    }
+    if (eosgiCandidateFilter != null && !eosgiCandidateFilter.test(vmId)) {
+      results.add(new AttachResult(vmId));
+      return false;
+    }
+    return true;
+  }
 
-    if (systemProperties == null) {
+  /**
+   * Processes the VMs that appeared or disappeared without listing all VMs. The new VMs are
+   * attached without holding the lock of the manager.
+   *
+   * @param addedVMIds
+   *          the ids of the VMs that started.
+   * @param removedVMIds
+   *          the ids of the VMs that stopped.
+   */
+  void processChangedVMs(final Set<String> addedVMIds, final Set<String> removedVMIds) {
+    if (closed) {
       return;
     }
+    Set<String> knownVMIds = getProcessedVMIds();
+    List<AttachResult> results = new ArrayList<>();
+    for (String vmId : addedVMIds) {
+      if (!knownVMIds.contains(vmId) && mustBeAttached(vmId, results)) {
+        results.add(attachAndProcessVM(vmId, () -> virtualMachineStatic.attach(vmId)));
+      }
+    }
+    for (AttachResult result : results) {
+      handleAttachFailure(result);
+    }
+    mergeResults(removedVMIds, results);
+  }
+
+  private void publishSnapshot() {
+    snapshot.set(new Snapshot(environmentInfosByEnvironmentId, vmIdByLaunchId));
+  }
+
+  /**
+   * Refreshes the information of EOSGi Environment VMs. The VMs are listed and attached without
+   * holding the lock of the manager, so the other methods do not wait for the refresh. Only one
+   * refresh runs at the same time. In {@link VMDiscoveryMode#PERF_DATA} mode, the VMs that can be
+   * classified from their performance data are not attached. Their runtime information holds only
+   * the system properties that the performance data contains and no JMX service URL, see
+   * {@link #getJmxServiceURL(String)}.
+   */
+  public void refresh() {
+    synchronized (refreshLock) {
+      if (closed) {
+        return;
+      }
+      Set<String> knownVMIds = getProcessedVMIds();
+      Set<String> removedVMIds = new HashSet<>(knownVMIds);
+      List<AttachResult> results = new ArrayList<>();
+      List<VirtualMachineDescriptorReflect> newVirtualMachines = new ArrayList<>();
+      for (VirtualMachineDescriptorReflect virtualMachineDescriptor : virtualMachineStatic
+          .list()) {
+        String vmId = virtualMachineDescriptor.id();
+        removedVMIds.remove(vmId);
+        if (!knownVMIds.contains(vmId) && mustBeAttached(vmId, results)) {
+          newVirtualMachines.add(virtualMachineDescriptor);
+        }
+      }
+
+      if (attachParallelism > 1 && newVirtualMachines.size() > 1) {
+        // The VMs that are not handled due to an interruption are attached by the next refresh
+        results.addAll(attachInParallel(newVirtualMachines));
+      } else {
+        for (VirtualMachineDescriptorReflect virtualMachineDescriptor : newVirtualMachines) {
+          results.add(attachAndProcessVM(virtualMachineDescriptor.id(),
+              () -> virtualMachineStatic.attach(virtualMachineDescriptor)));
+        }
+      }
+      for (AttachResult result : results) {
+        handleAttachFailure(result);
+      }
+      mergeResults(removedVMIds, results);
+    }
+  }
+
+  /**
+   * Registers a VM. An attached VM that runs an environment is only tracked if its management
+   * agent could be started. A VM that was classified from its performance data has no JMX service
+   * URL until {@link #getJmxServiceURL(String)} is called.
+   */
+  private void registerVirtualMachine(final String vmId, final Properties systemProperties,
+      final String jmxURL, final boolean fromPerfData) {
 
     String launchUniqueId = systemProperties.getProperty(DistConstants.SYSPROP_LAUNCH_UNIQUE_ID);
 
@@ -316,13 +768,7 @@ public class EOSGiVMManager implements Closeable {
     }
 
     String environmentId = systemProperties.getProperty(DistConstants.SYSPROP_ENVIRONMENT_ID);
-    if (environmentId == null) {
-      return;
-    }
-
-    String jmxURL = virtualMachine.startLocalManagementAgent();
-
-    if (jmxURL == null) {
+    if (environmentId == null || (jmxURL == null && !fromPerfData)) {
       return;
     }
 
@@ -344,36 +790,9 @@ public class EOSGiVMManager implements Closeable {
     environmentIdByVmId.put(vmId, environmentId);
   }
 
-  /**
-   * Refreshes the information of EOSGi Environment VMs.
-   */
-  public synchronized void refresh() {
-    if (closed) {
-      return;
-    }
-    Set<String> aliveVMIds = new HashSet<>();
-    List<VirtualMachineDescriptorReflect> virtualMachines = virtualMachineStatic.list();
-    for (VirtualMachineDescriptorReflect virtualMachineDescriptor : virtualMachines) {
-      String vmId = virtualMachineDescriptor.id();
-      aliveVMIds.add(vmId);
-      if (!processedVMIds.contains(vmId)) {
-
-        attachAndProcessVM(virtualMachineDescriptor);
-      }
-    }
-    removeDeadVms(aliveVMIds);
-
-    if (!processedVMIds.equals(aliveVMIds)) {
-      processedVMIds = aliveVMIds;
-      for (Runnable listener : stateChangeListeners) {
-        listener.run();
-      }
-    }
-  }
-
-  private void removeDeadVms(final Set<String> aliveVMIds) {
-    for (String vmId : processedVMIds) {
-      if (!aliveVMIds.contains(vmId)) {
+  private void removeDeadVms(final Set<String> deadVMIds) {
+    for (String vmId : deadVMIds) {
+      if (processedVMIds.contains(vmId)) {
         String launchId = launchIdByVmId.remove(vmId);
         if (launchId != null) {
           vmIdByLaunchId.remove(launchId);
@@ -400,10 +819,42 @@ public class EOSGiVMManager implements Closeable {
     }
   }
 
-  public synchronized void removeStateChangeListener(final Runnable listener) {
+  public void removeStateChangeListener(final Runnable listener) {
     stateChangeListeners.remove(listener);
   }
 
+  /**
+   * Replaces the runtime information of a VM with one that holds the JMX service URL. The
+   * published infos are never modified.
+   */
+  private synchronized void setJmxServiceURL(final EnvironmentRuntimeInfo environmentRuntimeInfo,
+      final String jmxURL) {
+    String environmentId = environmentIdByVmId.get(environmentRuntimeInfo.virtualMachineId);
+    Set<EnvironmentRuntimeInfo> environmentInfos =
+        (environmentId != null) ? environmentInfosByEnvironmentId.get(environmentId) : null;
+    EnvironmentRuntimeInfo currentRuntimeInfo = null;
+    if (environmentInfos != null) {
+      for (EnvironmentRuntimeInfo info : environmentInfos) {
+        if (info.virtualMachineId.equals(environmentRuntimeInfo.virtualMachineId)) {
+          currentRuntimeInfo = info;
+        }
+      }
+    }
+    // The VM might have stopped or got its URL from another call meanwhile
+    if (currentRuntimeInfo == null || currentRuntimeInfo.jmxServiceURL != null) {
+      return;
+    }
+
+    EnvironmentRuntimeInfo startedRuntimeInfo = new EnvironmentRuntimeInfo();
+    startedRuntimeInfo.jmxServiceURL = jmxURL;
+    startedRuntimeInfo.systemProperties = environmentRuntimeInfo.systemProperties;
+    startedRuntimeInfo.userDir = environmentRuntimeInfo.userDir;
+    startedRuntimeInfo.virtualMachineId = environmentRuntimeInfo.virtualMachineId;
+    environmentInfos.remove(currentRuntimeInfo);
+    environmentInfos.add(startedRuntimeInfo);
+    publishSnapshot();
+  }
+
   /**
    * Shuts down a Java VirtualMachine.
    *
@@ -415,7 +866,7 @@ public class EOSGiVMManager implements Closeable {
    *          Parameter that tells why and how forced shutdown should be applied or
    *          <code>null</code> if no forced shutdown should be done.
    */
-  public synchronized void shutDownVirtualMachine(final String virtualMachineId, final int exitcode,
+  public void shutDownVirtualMachine(final String virtualMachineId, final int exitcode,
       final ForcedShutdownParameter forcedShutdownParameter) {
     if (closed) {
       return;
@@ -434,4 +885,26 @@ public class EOSGiVMManager implements Closeable {
 
     }
   }
+
+  private PerfDataFolderWatcher startPerfDataFolderWatcher() {
+    Path perfDataFolder = PerfDataReader.getPerfDataFolder();
+    if (perfDataFolder == null) {
+      return null;
+    }
+    try {
+      return new PerfDataFolderWatcher(perfDataFolder, this, vmCallTimeout);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private void updateProcessedVMIds(final Set<String> aliveVMIds) {
+    if (!processedVMIds.equals(aliveVMIds)) {
+      processedVMIds = aliveVMIds;
+      for (Runnable listener : stateChangeListeners) {
+        listener.run();
+      }
+    }
+  }
+
 }
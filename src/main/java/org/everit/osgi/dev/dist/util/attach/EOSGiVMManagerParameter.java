@@ -23,6 +23,13 @@ import java.util.function.Function;
  */
 public class EOSGiVMManagerParameter {
 
+  /**
+   * The maximum number of VMs that are attached at the same time when new VMs are found during a
+   * refresh. With the default value 1, the VMs are attached one after the other on the thread that
+   * calls the refresh.
+   */
+  public int attachParallelism = 1;
+
   /**
    * The classloader that will be used to access attach API. This is necessary as maven replaces the
    * classloaders with plugin-specific ones and the attach API classes are not the same types as the
@@ -36,9 +43,34 @@ public class EOSGiVMManagerParameter {
    */
   public Consumer<EOSGiVMManagerEventData> deadlockEventHandler;
 
+  /**
+   * The way how the manager finds out which virtual machines run EOSGi environments.
+   */
+  public VMDiscoveryMode discoveryMode = VMDiscoveryMode.ATTACH;
+
   /**
    * Consumer that is called if an exception is thrown during attaching a VirtualMachine.
    */
   public Function<EOSGiVMManagerEventData, Boolean> exceptionDuringAttachVMHandler;
 
+  /**
+   * The time in milliseconds that a call on a VM may take before it is considered to be
+   * deadlocked. If the VMs are attached in parallel, the timeout covers attaching the VM, reading
+   * its system properties and starting its management agent.
+   */
+  public long vmCallTimeout = EOSGiVMManager.DEFAULT_VM_CALL_TIMEOUT;
+
+  /**
+   * If <code>true</code>, a background thread watches the <code>hsperfdata_USERNAME</code> folder
+   * and processes the VMs that start or stop as soon as their performance data files appear or
+   * disappear. Only these VMs are attached or removed, and the state change listeners are notified
+   * about them. VMs that run with <code>-XX:-UsePerfData</code> or
+   * <code>-XX:+PerfDisableSharedMem</code> have no such file and are only found by
+   * {@link EOSGiVMManager#refresh()}. The same applies to the removal of killed VMs that could not
+   * delete their file. If the folder cannot be watched or the watching stops, for example because
+   * the folder is deleted, {@link EOSGiVMManager#isWatching()} returns <code>false</code> and the
+   * VMs must be found by polling {@link EOSGiVMManager#refresh()}.
+   */
+  public boolean watchPerfDataFolder = false;
+
 }
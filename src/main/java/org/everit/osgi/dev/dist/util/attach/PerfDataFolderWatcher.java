@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.attach;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Watches the folder of the performance data files and tells {@link EOSGiVMManager} which virtual
+ * machines appeared and disappeared. The file of a virtual machine is created early during its
+ * startup, so a new virtual machine is only reported when its performance data becomes accessible
+ * or its startup timeout expires. While there is no starting virtual machine, the watcher thread
+ * waits for file system events without polling.
+ */
+final class PerfDataFolderWatcher implements Closeable {
+
+  private static final long STARTING_VM_RETRY_MILLIS = 50;
+
+  private static final Pattern VM_ID_PATTERN = Pattern.compile("\\d+");
+
+  /**
+   * Cleared when the watcher thread stops for any reason: the watch key became invalid, the watch
+   * service was closed or an exception escaped.
+   */
+  private volatile boolean alive = true;
+
+  private final EOSGiVMManager manager;
+
+  /**
+   * The deadlines of the virtual machines that are starting by their ids in
+   * {@link System#nanoTime()}. Only accessed by the watcher thread.
+   */
+  private final Map<String, Long> startingVMDeadlines = new HashMap<>();
+
+  private final long startupTimeoutNanos;
+
+  private final Thread thread;
+
+  private final WatchService watchService;
+
+  /**
+   * Starts watching a folder.
+   *
+   * @param folder
+   *          the folder of the performance data files.
+   * @param manager
+   *          the manager that is notified about the changes.
+   * @param startupTimeoutMillis
+   *          the time after a new virtual machine is reported even if its performance data is not
+   *          accessible.
+   * @throws IOException
+   *           if the folder cannot be watched.
+   */
+  PerfDataFolderWatcher(final Path folder, final EOSGiVMManager manager,
+      final long startupTimeoutMillis) throws IOException {
+    this.manager = manager;
+    this.startupTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(startupTimeoutMillis);
+    this.watchService = folder.getFileSystem().newWatchService();
+    try {
+      folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_DELETE);
+    } catch (IOException | RuntimeException e) {
+      watchService.close();
+      throw e;
+    }
+    this.thread = new Thread(this::run, "EOSGiVMManager-hsperfdata-watcher");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  @Override
+  public void close() {
+    try {
+      watchService.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void collectStartedVMs(final Set<String> addedVMIds) {
+    long now = System.nanoTime();
+    Iterator<Map.Entry<String, Long>> iterator = startingVMDeadlines.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<String, Long> entry = iterator.next();
+      if (now - entry.getValue() >= 0 || PerfDataReader.isAccessible(entry.getKey())) {
+        addedVMIds.add(entry.getKey());
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Checks whether the watcher thread still processes the events of the folder.
+   *
+   * @return <code>true</code> if the watcher thread is running.
+   */
+  boolean isAlive() {
+    return alive;
+  }
+
+  private void processEvents(final WatchKey key, final Set<String> removedVMIds) {
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        runSafely(manager::refresh);
+        continue;
+      }
+      String vmId = String.valueOf(event.context());
+      if (!VM_ID_PATTERN.matcher(vmId).matches()) {
+        continue;
+      }
+      if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+        startingVMDeadlines.put(vmId, System.nanoTime() + startupTimeoutNanos);
+      } else if (startingVMDeadlines.remove(vmId) == null) {
+        removedVMIds.add(vmId);
+      }
+    }
+  }
+
+  private void run() {
+    try {
+      // Finds the VMs that started or stopped before the folder was registered
+      runSafely(manager::refresh);
+      while (true) {
+        WatchKey key = startingVMDeadlines.isEmpty()
+            ? watchService.take()
+            : watchService.poll(STARTING_VM_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+
+        Set<String> removedVMIds = new HashSet<>();
+        boolean valid = true;
+        if (key != null) {
+          processEvents(key, removedVMIds);
+          valid = key.reset();
+        }
+
+        Set<String> addedVMIds = new HashSet<>();
+        collectStartedVMs(addedVMIds);
+        if (!addedVMIds.isEmpty() || !removedVMIds.isEmpty()) {
+          runSafely(() -> manager.processChangedVMs(addedVMIds, removedVMIds));
+        }
+        if (!valid) {
+          return;
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      return;
+    } finally {
+      alive = false;
+    }
+  }
+
+  /**
+   * Runs a call on the manager and hands its exception to the uncaught exception handler of the
+   * watcher thread, so one failing virtual machine does not stop the watching.
+   */
+  private void runSafely(final Runnable action) {
+    try {
+      action.run();
+    } catch (RuntimeException e) {
+      thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+    }
+  }
+}
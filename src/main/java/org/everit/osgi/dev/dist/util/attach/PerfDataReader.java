@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.attach;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Reads the performance data file that HotSpot virtual machines share in the
+ * <code>hsperfdata_USERNAME</code> folder of the temporary directory. The file is memory-mapped
+ * read-only, so the virtual machine is not disturbed at all.
+ *
+ * <p>
+ * Only the string counters are read. The <code>java.property.*</code> counters hold some of the
+ * standard system properties, <code>java.rt.vmArgs</code> holds the options of the virtual
+ * machine separated by spaces and <code>sun.rt.javaCommand</code> holds the main class and the
+ * program arguments.
+ */
+final class PerfDataReader {
+
+  private static final int ENTRY_DATA_OFFSET_POSITION = 16;
+
+  private static final int ENTRY_DATA_TYPE_POSITION = 12;
+
+  private static final int ENTRY_NAME_OFFSET_POSITION = 4;
+
+  private static final int ENTRY_VECTOR_LENGTH_POSITION = 8;
+
+  private static final String JAVA_COMMAND_COUNTER = "sun.rt.javaCommand";
+
+  private static final int MAGIC = 0xcafec0c0;
+
+  private static final int PROLOGUE_ACCESSIBLE_POSITION = 7;
+
+  private static final int PROLOGUE_BYTE_ORDER_POSITION = 4;
+
+  private static final int PROLOGUE_ENTRY_OFFSET_POSITION = 24;
+
+  private static final int PROLOGUE_NUM_ENTRIES_POSITION = 28;
+
+  private static final int PROLOGUE_SIZE = 32;
+
+  private static final String PROPERTY_COUNTER_PREFIX = "java.property.";
+
+  private static final String PROPERTY_USER_DIR = "user.dir";
+
+  private static final String SYSTEM_PROPERTY_OPTION_PREFIX = "-D";
+
+  private static final byte TYPE_BYTE = 'B';
+
+  private static final String VM_ARGS_COUNTER = "java.rt.vmArgs";
+
+  /**
+   * Returns the folder of the performance data files of the current user.
+   *
+   * @return the folder or <code>null</code> if it does not exist.
+   */
+  static Path getPerfDataFolder() {
+    String folderName = "hsperfdata_" + System.getProperty("user.name");
+    String[] tmpDirs = { System.getProperty("java.io.tmpdir"), "/tmp" };
+    for (String tmpDir : tmpDirs) {
+      if (tmpDir != null) {
+        Path folder = Paths.get(tmpDir, folderName);
+        if (Files.isDirectory(folder)) {
+          return folder;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Checks whether the performance data file of a virtual machine exists and the virtual machine
+   * has finished its initialization.
+   *
+   * @param virtualMachineId
+   *          the id of the virtual machine.
+   * @return <code>true</code> if the performance data of the virtual machine can be read.
+   */
+  static boolean isAccessible(final String virtualMachineId) {
+    Path folder = getPerfDataFolder();
+    if (folder == null) {
+      return false;
+    }
+    try (FileChannel channel =
+        FileChannel.open(folder.resolve(virtualMachineId), StandardOpenOption.READ)) {
+      ByteBuffer prologue = ByteBuffer.allocate(PROLOGUE_SIZE);
+      channel.read(prologue);
+      return !prologue.hasRemaining() && prologue.getInt(0) == MAGIC
+          && prologue.get(PROLOGUE_ACCESSIBLE_POSITION) != 0;
+    } catch (IOException | RuntimeException e) {
+      return false;
+    }
+  }
+
+  private static String readCString(final ByteBuffer buffer, final int position,
+      final int maxLength) {
+    int end = position;
+    int limit = Math.min(buffer.limit(), position + maxLength);
+    while (end < limit && buffer.get(end) != 0) {
+      end++;
+    }
+    if (end == limit) {
+      return null;
+    }
+    byte[] bytes = new byte[end - position];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = buffer.get(position + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Reads the string counters of a performance data file.
+   *
+   * @param buffer
+   *          the content of the file.
+   * @return the values of the string counters by their names or <code>null</code> if the buffer
+   *         is not a performance data file, the virtual machine has not finished its
+   *         initialization yet or a counter is not terminated within its vector. HotSpot cuts the
+   *         string constants at <code>PerfMaxStringConstLength</code>, so such a counter might
+   *         miss the options that identify the virtual machine.
+   */
+  static Map<String, String> readStringCounters(final ByteBuffer buffer) {
+    // The magic number is always big-endian, the rest is in the byte order of the prologue
+    ByteBuffer data = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+    if (data.limit() < PROLOGUE_SIZE || data.getInt(0) != MAGIC
+        || data.get(PROLOGUE_ACCESSIBLE_POSITION) == 0) {
+      return null;
+    }
+    data.order(
+        (buffer.get(PROLOGUE_BYTE_ORDER_POSITION) == 0)
+            ? ByteOrder.BIG_ENDIAN
+            : ByteOrder.LITTLE_ENDIAN);
+
+    Map<String, String> result = new HashMap<>();
+    int entryPosition = data.getInt(PROLOGUE_ENTRY_OFFSET_POSITION);
+    int entryCount = data.getInt(PROLOGUE_NUM_ENTRIES_POSITION);
+    for (int i = 0; i < entryCount; i++) {
+      if (entryPosition < 0 || entryPosition + ENTRY_DATA_OFFSET_POSITION + 4 > data.limit()) {
+        return null;
+      }
+      int entryLength = data.getInt(entryPosition);
+      if (entryLength <= 0 || entryPosition + entryLength > data.limit()) {
+        return null;
+      }
+      int vectorLength = data.getInt(entryPosition + ENTRY_VECTOR_LENGTH_POSITION);
+      if (vectorLength > 0 && data.get(entryPosition + ENTRY_DATA_TYPE_POSITION) == TYPE_BYTE) {
+        int endPosition = entryPosition + entryLength;
+        int namePosition = entryPosition + data.getInt(entryPosition + ENTRY_NAME_OFFSET_POSITION);
+        int dataPosition = entryPosition + data.getInt(entryPosition + ENTRY_DATA_OFFSET_POSITION);
+        if (namePosition > entryPosition && namePosition < endPosition
+            && dataPosition > entryPosition && dataPosition < endPosition) {
+          String name = readCString(data, namePosition, endPosition - namePosition);
+          String value =
+              readCString(data, dataPosition, Math.min(vectorLength, endPosition - dataPosition));
+          if (name == null || value == null) {
+            return null;
+          }
+          result.put(name, value);
+        }
+      }
+      entryPosition += entryLength;
+    }
+    return result;
+  }
+
+  /**
+   * Collects the system properties of a virtual machine that can be found in its performance data
+   * file. The properties are the <code>java.property.*</code> counters, the <code>-D</code>
+   * options of the virtual machine and <code>sun.java.command</code>. If there is no
+   * <code>user.dir</code> option, it is the working directory of the process on systems that
+   * have the <code>/proc</code> file system.
+   *
+   * <p>
+   * The options are stored in one counter separated by spaces, so values that contain spaces are
+   * cut at the first space.
+   *
+   * @param virtualMachineId
+   *          the id of the virtual machine.
+   * @return the system properties or <code>null</code> if the performance data file does not
+   *         exist, cannot be read or one of its string counters is truncated.
+   */
+  static Properties readSystemProperties(final String virtualMachineId) {
+    Path folder = getPerfDataFolder();
+    if (folder == null) {
+      return null;
+    }
+    Map<String, String> counters;
+    try (FileChannel channel =
+        FileChannel.open(folder.resolve(virtualMachineId), StandardOpenOption.READ)) {
+      counters = readStringCounters(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    } catch (IOException | RuntimeException e) {
+      return null;
+    }
+    if (counters == null) {
+      return null;
+    }
+
+    Properties result = toSystemProperties(counters);
+    if (!result.containsKey(PROPERTY_USER_DIR)) {
+      try {
+        Path cwd = Paths.get("/proc", virtualMachineId, "cwd");
+        if (Files.isSymbolicLink(cwd)) {
+          result.setProperty(PROPERTY_USER_DIR, Files.readSymbolicLink(cwd).toString());
+        }
+      } catch (IOException | RuntimeException e) {
+        // The working directory stays unknown
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Converts the string counters of a performance data file to system properties.
+   *
+   * @param counters
+   *          the string counters by their names.
+   * @return the system properties that the counters hold.
+   */
+  static Properties toSystemProperties(final Map<String, String> counters) {
+    Properties result = new Properties();
+    for (Map.Entry<String, String> counter : counters.entrySet()) {
+      if (counter.getKey().startsWith(PROPERTY_COUNTER_PREFIX)) {
+        result.setProperty(counter.getKey().substring(PROPERTY_COUNTER_PREFIX.length()),
+            counter.getValue());
+      }
+    }
+    String javaCommand = counters.get(JAVA_COMMAND_COUNTER);
+    if (javaCommand != null) {
+      result.setProperty("sun.java.command", javaCommand);
+    }
+    String vmArgs = counters.get(VM_ARGS_COUNTER);
+    if (vmArgs != null) {
+      for (String option : vmArgs.trim().split("\\s+")) {
+        if (option.startsWith(SYSTEM_PROPERTY_OPTION_PREFIX)
+            && option.length() > SYSTEM_PROPERTY_OPTION_PREFIX.length()) {
+          int separatorIndex = option.indexOf('=');
+          if (separatorIndex < 0) {
+            result.setProperty(option.substring(SYSTEM_PROPERTY_OPTION_PREFIX.length()), "");
+          } else if (separatorIndex > SYSTEM_PROPERTY_OPTION_PREFIX.length()) {
+            result.setProperty(
+                option.substring(SYSTEM_PROPERTY_OPTION_PREFIX.length(), separatorIndex),
+                option.substring(separatorIndex + 1));
+          }
+        }
+      }
+    }
+    return result;
+  }
+
+  private PerfDataReader() {
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.attach;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.everit.osgi.dev.dist.util.DistConstants;
+
+/**
+ * Finds out from the <code>/proc</code> file system of Linux whether a process might run an EOSGi
+ * environment, without attaching to it. A process is a candidate if one of its command line
+ * arguments or one of the environment variables that the JVM reads options from sets the
+ * environment id or the launch unique id system property.
+ */
+final class ProcCmdlineScanner {
+
+  private static final String[] JAVA_OPTIONS_VARIABLES =
+      { "JAVA_TOOL_OPTIONS=", "JDK_JAVA_OPTIONS=", "_JAVA_OPTIONS=" };
+
+  private static final Path PROC_FOLDER = Paths.get("/proc");
+
+  private static final String[] SYSTEM_PROPERTY_OPTIONS = {
+      "-D" + DistConstants.SYSPROP_ENVIRONMENT_ID,
+      "-D" + DistConstants.SYSPROP_LAUNCH_UNIQUE_ID };
+
+  /**
+   * Checks whether the command line of a process sets one of the EOSGi system properties.
+   *
+   * @param content
+   *          the content of a <code>cmdline</code> file that holds the arguments separated by zero
+   *          bytes.
+   * @return <code>true</code> if there is an EOSGi system property among the arguments.
+   */
+  static boolean hasEOSGiArgument(final byte[] content) {
+    for (String argument : split(content)) {
+      if (isEOSGiOption(argument)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks whether the Java options environment variables of a process set one of the EOSGi
+   * system properties.
+   *
+   * @param content
+   *          the content of an <code>environ</code> file that holds the variables separated by zero
+   *          bytes.
+   * @return <code>true</code> if there is an EOSGi system property in the Java options.
+   */
+  static boolean hasEOSGiJavaOptions(final byte[] content) {
+    for (String variable : split(content)) {
+      for (String javaOptionsVariable : JAVA_OPTIONS_VARIABLES) {
+        if (variable.startsWith(javaOptionsVariable)) {
+          String[] options = variable.substring(javaOptionsVariable.length()).split("\\s+");
+          for (String option : options) {
+            if (isEOSGiOption(option)) {
+              return true;
+            }
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Checks whether the <code>/proc</code> file system is available.
+   *
+   * @return <code>true</code> if the command line of the current process can be read from
+   *         <code>/proc</code>.
+   */
+  static boolean isAvailable() {
+    return Files.isReadable(PROC_FOLDER.resolve("self").resolve("cmdline"));
+  }
+
+  /**
+   * Checks whether a process might run an EOSGi environment.
+   *
+   * @param pid
+   *          the id of the process that is the same as the id of the virtual machine.
+   * @return <code>false</code> if the process certainly does not get any EOSGi system property
+   *         from the command line or from the Java options environment variables,
+   *         <code>true</code> otherwise, including when the files of the process cannot be read.
+   */
+  static boolean isEOSGiCandidate(final String pid) {
+    Path processFolder;
+    try {
+      processFolder = PROC_FOLDER.resolve(pid);
+    } catch (RuntimeException e) {
+      return true;
+    }
+    try {
+      if (hasEOSGiArgument(Files.readAllBytes(processFolder.resolve("cmdline")))) {
+        return true;
+      }
+    } catch (IOException e) {
+      return true;
+    }
+    try {
+      return hasEOSGiJavaOptions(Files.readAllBytes(processFolder.resolve("environ")));
+    } catch (IOException e) {
+      // The environment of processes of other users cannot be read
+      return true;
+    }
+  }
+
+  private static boolean isEOSGiOption(final String option) {
+    for (String systemPropertyOption : SYSTEM_PROPERTY_OPTIONS) {
+      if (option.startsWith(systemPropertyOption)
+          && (option.length() == systemPropertyOption.length()
+              || option.charAt(systemPropertyOption.length()) == '=')) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String[] split(final byte[] content) {
+    return new String(content, StandardCharsets.UTF_8).split("\0");
+  }
+
+  private ProcCmdlineScanner() {
+  }
+}
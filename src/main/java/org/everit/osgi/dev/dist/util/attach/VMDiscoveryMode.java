@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.attach;
+
+/**
+ * The ways how {@link EOSGiVMManager} finds out whether a virtual machine runs an EOSGi
+ * environment.
+ */
+public enum VMDiscoveryMode {
+
+  /**
+   * Every virtual machine is attached and its system properties are checked.
+   */
+  ATTACH,
+
+  /**
+   * The command line and the Java options environment variables of the process are read from
+   * <code>/proc/&lt;pid&gt;/cmdline</code> and <code>/proc/&lt;pid&gt;/environ</code> and only the
+   * virtual machines that get the environment id or the launch unique id system property are
+   * attached. Processes that cannot be read are attached. On systems without <code>/proc</code>,
+   * this mode works like {@link #ATTACH}.
+   */
+  PROC_CMDLINE,
+
+  /**
+   * The system properties and the command line are read from the memory-mapped performance data
+   * file of the virtual machine in the <code>hsperfdata_USERNAME</code> folder of the temporary
+   * directory. The virtual machines are not attached during the refresh, the management agent of
+   * an environment is only started when its JMX service URL is requested via
+   * {@link EOSGiVMManager#getJmxServiceURL(String)}. Virtual machines that have no readable
+   * performance data file, e.g. because they run with <code>-XX:-UsePerfData</code>, are
+   * attached.
+   */
+  PERF_DATA
+
+}
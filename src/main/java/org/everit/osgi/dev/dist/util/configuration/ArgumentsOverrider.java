@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.everit.osgi.dev.dist.util.configuration.schema.ArgumentsType;
+import org.everit.osgi.dev.dist.util.configuration.schema.EntryType;
+
+/**
+ * Applies any number of override layers on a list of arguments in time linear to the number of
+ * the arguments and overrides. The arguments are indexed by their key, so an override does not
+ * need to scan the list. The rules of an override are:
+ * <ul>
+ * <li>if the value of the override is <code>null</code>, all arguments with the same key are
+ * deleted,</li>
+ * <li>if the value is not <code>null</code>, the value of the first argument with the same key is
+ * replaced,</li>
+ * <li>if there is no argument with the key, the override is appended.</li>
+ * </ul>
+ * The original entries are never modified, a replaced value goes into a new {@link EntryType}.
+ */
+final class ArgumentsOverrider {
+
+  private static final Comparator<EntryType> ENTRY_COMPARATOR = new Comparator<EntryType>() {
+    @Override
+    public int compare(final EntryType o1, final EntryType o2) {
+      return o1.getKey().compareTo(o2.getKey());
+    }
+  };
+
+  /**
+   * The current arguments. Deleted arguments are set to <code>null</code> to keep the indexes
+   * stable.
+   */
+  private final List<EntryType> entries;
+
+  /**
+   * The indexes of the arguments in {@link #entries} by their key in ascending order.
+   */
+  private final Map<String, List<Integer>> indexesByKey;
+
+  private boolean present;
+
+  /**
+   * Constructor.
+   *
+   * @param original
+   *          the arguments that the overrides are applied on. Might be <code>null</code>.
+   */
+  ArgumentsOverrider(final ArgumentsType original) {
+    List<EntryType> originalEntries = (original != null)
+        ? original.getArgument()
+        : Collections.<EntryType> emptyList();
+
+    this.present = original != null;
+    this.entries = new ArrayList<>(originalEntries.size());
+    this.indexesByKey = new HashMap<>(originalEntries.size() * 2);
+    for (EntryType entry : originalEntries) {
+      if (entry != null) {
+        append(entry);
+      }
+    }
+  }
+
+  private void append(final EntryType entry) {
+    List<Integer> indexes = indexesByKey.get(entry.getKey());
+    if (indexes == null) {
+      indexes = new ArrayList<>(1);
+      indexesByKey.put(entry.getKey(), indexes);
+    }
+    indexes.add(entries.size());
+    entries.add(entry);
+  }
+
+  /**
+   * Applies an override layer.
+   *
+   * @param overrides
+   *          the overriding arguments. Might be <code>null</code>.
+   */
+  public void override(final ArgumentsType overrides) {
+    present = true;
+    if (overrides == null) {
+      return;
+    }
+
+    for (EntryType override : overrides.getArgument()) {
+      if (override == null) {
+        continue;
+      }
+
+      String overridingKey = override.getKey();
+      String overridingValue = override.getValue();
+      List<Integer> indexes = indexesByKey.get(overridingKey);
+
+      if (indexes == null) {
+        append(override);
+      } else if (overridingValue == null) {
+        for (Integer index : indexes) {
+          entries.set(index, null);
+        }
+        indexes.clear();
+        // The deleting entry is kept until normalization just like a new key
+        indexes.add(entries.size());
+        entries.add(override);
+      } else {
+        EntryType overriddenEntry = new EntryType();
+        overriddenEntry.setKey(overridingKey);
+        overriddenEntry.setValue(overridingValue);
+        entries.set(indexes.get(0), overriddenEntry);
+      }
+    }
+  }
+
+  /**
+   * Returns the result of the overrides without the arguments that have <code>null</code> or
+   * blank values, sorted by key.
+   *
+   * @return the arguments or <code>null</code> if there were no original arguments and no override
+   *         was applied.
+   */
+  public ArgumentsType toNormalizedArguments() {
+    if (!present) {
+      return null;
+    }
+
+    ArgumentsType result = new ArgumentsType();
+    List<EntryType> resultEntries = result.getArgument();
+    for (EntryType entry : entries) {
+      if (entry != null) {
+        String value = entry.getValue();
+        if (value != null && !"".equals(value.trim())) {
+          resultEntries.add(entry);
+        }
+      }
+    }
+    Collections.sort(resultEntries, ENTRY_COMPARATOR);
+    return result;
+  }
+
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import org.everit.osgi.dev.dist.util.configuration.schema.ArtifactType;
+
+/**
+ * Parsed, immutable Maven artifact coordinates. The raw format of the coordinates in the
+ * distribution configuration is <code>groupId:artifactId[:extension[:classifier]]:version</code>.
+ *
+ * <p>
+ * The instances are interned by {@link #parse(String)}, so equal coordinates are usually the same
+ * instance and the coordinates that are already in their canonical form are not split again. The
+ * hash code is calculated only once.
+ */
+public final class ArtifactCoordinates {
+
+  /**
+   * The extension that is used if the coordinates do not specify one.
+   */
+  public static final String DEFAULT_EXTENSION = "jar";
+
+  private static final int MAX_PARTS = 5;
+
+  private static final int MIN_PARTS = 3;
+
+  private static final char SEPARATOR = ':';
+
+  /**
+   * Returns the parsed coordinates of an artifact.
+   *
+   * @param artifact
+   *          the artifact.
+   * @return the coordinates or <code>null</code> if the artifact has no coordinates.
+   * @throws IllegalArgumentException
+   *           if the coordinates of the artifact are not in the expected format.
+   */
+  public static ArtifactCoordinates of(final ArtifactType artifact) {
+    String coordinates = artifact.getCoordinates();
+    return (coordinates != null) ? parse(coordinates) : null;
+  }
+
+  /**
+   * Parses coordinates in the format
+   * <code>groupId:artifactId[:extension[:classifier]]:version</code>. Whitespace around the
+   * coordinates is ignored.
+   *
+   * @param coordinates
+   *          the raw coordinates.
+   * @return the interned instance of the coordinates.
+   * @throws IllegalArgumentException
+   *           if the coordinates are not in the expected format.
+   */
+  public static ArtifactCoordinates parse(final String coordinates) {
+    ArtifactCoordinates result = tryParse(coordinates);
+    if (result == null) {
+      throw new IllegalArgumentException("Invalid artifact coordinates: " + coordinates
+          + ". Expected format is groupId:artifactId[:extension[:classifier]]:version");
+    }
+    return result;
+  }
+
+  /**
+   * Parses coordinates like {@link #parse(String)}, but returns <code>null</code> instead of
+   * throwing an exception if the coordinates are not valid.
+   */
+  static ArtifactCoordinates tryParse(final String coordinates) {
+    String trimmed = coordinates.trim();
+    ArtifactCoordinates interned = DistConfigInterner.SHARED.getCoordinates(trimmed);
+    if (interned != null) {
+      return interned;
+    }
+
+    String[] parts = trimmed.split(String.valueOf(SEPARATOR), -1);
+    if (parts.length < MIN_PARTS || parts.length > MAX_PARTS) {
+      return null;
+    }
+    String groupId = parts[0];
+    String artifactId = parts[1];
+    String version = parts[parts.length - 1];
+    if (groupId.isEmpty() || artifactId.isEmpty() || version.isEmpty()) {
+      return null;
+    }
+    String extension = (parts.length > MIN_PARTS) ? parts[2] : "";
+    String classifier = (parts.length > MIN_PARTS + 1) ? parts[3] : "";
+    return DistConfigInterner.SHARED.intern(new ArtifactCoordinates(groupId, artifactId,
+        extension.isEmpty() ? DEFAULT_EXTENSION : extension,
+        classifier.isEmpty() ? null : classifier, version));
+  }
+
+  /**
+   * The id of the artifact.
+   */
+  public final String artifactId;
+
+  private final String canonicalForm;
+
+  /**
+   * The classifier or <code>null</code> if the artifact has no classifier.
+   */
+  public final String classifier;
+
+  /**
+   * The extension of the artifact. It is {@value #DEFAULT_EXTENSION} if the coordinates do not
+   * specify one.
+   */
+  public final String extension;
+
+  /**
+   * The id of the group of the artifact.
+   */
+  public final String groupId;
+
+  private final int hashCode;
+
+  /**
+   * The version of the artifact.
+   */
+  public final String version;
+
+  private ArtifactCoordinates(final String groupId, final String artifactId,
+      final String extension, final String classifier, final String version) {
+    this.groupId = groupId;
+    this.artifactId = artifactId;
+    this.extension = extension;
+    this.classifier = classifier;
+    this.version = version;
+
+    StringBuilder sb = new StringBuilder().append(groupId).append(SEPARATOR).append(artifactId);
+    if (classifier != null) {
+      sb.append(SEPARATOR).append(extension).append(SEPARATOR).append(classifier);
+    } else if (!DEFAULT_EXTENSION.equals(extension)) {
+      sb.append(SEPARATOR).append(extension);
+    }
+    this.canonicalForm = sb.append(SEPARATOR).append(version).toString();
+    this.hashCode = canonicalForm.hashCode();
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof ArtifactCoordinates)) {
+      return false;
+    }
+    ArtifactCoordinates other = (ArtifactCoordinates) obj;
+    return hashCode == other.hashCode && canonicalForm.equals(other.canonicalForm);
+  }
+
+  /**
+   * Returns the name of the artifact file in the Maven repositories:
+   * <code>artifactId-version[-classifier].extension</code>.
+   *
+   * @return the file name.
+   */
+  public String getFileName() {
+    StringBuilder sb = new StringBuilder(artifactId).append('-').append(version);
+    if (classifier != null) {
+      sb.append('-').append(classifier);
+    }
+    return sb.append('.').append(extension).toString();
+  }
+
+  /**
+   * Returns the path of the artifact file relative to the root of a Maven repository, e.g.
+   * <code>org/example/bundle/1.0.0/bundle-1.0.0.jar</code>.
+   *
+   * @return the path with slash separators.
+   */
+  public String getRepositoryPath() {
+    return groupId.replace('.', '/') + '/' + artifactId + '/' + version + '/' + getFileName();
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  /**
+   * Returns the canonical form of the coordinates. The extension is only included if it is not
+   * the default one or if there is a classifier.
+   */
+  @Override
+  public String toString() {
+    return canonicalForm;
+  }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.everit.osgi.dev.dist.util.configuration.schema.ArtifactType;
+
+/**
+ * Iterates through the artifacts of a distribution configuration file while the file is being
+ * parsed. Only one artifact is held in the memory at a time, so the memory need of the iteration
+ * does not depend on the number of artifacts. The elements after the artifacts are not read at
+ * all.
+ *
+ * <p>
+ * The cursor holds the file open until it reaches the end of the artifacts or it is closed, so it
+ * should be used in a try-with-resources block. Instances are not thread-safe.
+ */
+public final class ArtifactCursor implements Iterator<ArtifactType>, Closeable {
+
+  private final StaxEnvironmentBinder binder = new StaxEnvironmentBinder();
+
+  private final File distConfigFile;
+
+  private boolean finished;
+
+  private InputStream in;
+
+  private ArtifactType nextArtifact;
+
+  private XMLStreamReader reader;
+
+  /**
+   * Opens the distribution configuration file and moves to its first artifact.
+   *
+   * @param distConfigFile
+   *          the distribution configuration file. If it does not exist, the cursor has no
+   *          elements.
+   */
+  ArtifactCursor(final File distConfigFile) {
+    this.distConfigFile = distConfigFile;
+    if (!distConfigFile.exists()) {
+      finished = true;
+      return;
+    }
+
+    try {
+      in = new FileInputStream(distConfigFile);
+      reader = binder.openEnvironment(in);
+      if (!binder.moveToArtifacts(reader)) {
+        close();
+      }
+    } catch (IOException e) {
+      closeQuietly();
+      throw new UncheckedIOException(
+          "Can't read distribution configuration file: " + distConfigFile.getAbsolutePath(), e);
+    } catch (XMLStreamException | RuntimeException e) {
+      closeQuietly();
+      throw processingFailed(e);
+    }
+  }
+
+  /**
+   * Closes the underlying file. The cursor has no more elements after it is closed.
+   *
+   * @throws IOException
+   *           if the file cannot be closed.
+   */
+  @Override
+  public void close() throws IOException {
+    finished = true;
+    nextArtifact = null;
+    try {
+      if (reader != null) {
+        reader.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new IOException(e);
+    } finally {
+      reader = null;
+      if (in != null) {
+        InputStream inToClose = in;
+        in = null;
+        inToClose.close();
+      }
+    }
+  }
+
+  private void closeQuietly() {
+    try {
+      close();
+    } catch (IOException | RuntimeException e) {
+      // The original exception is more important
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (nextArtifact != null) {
+      return true;
+    }
+    if (finished) {
+      return false;
+    }
+
+    try {
+      nextArtifact = binder.nextArtifact(reader);
+      if (nextArtifact == null) {
+        close();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          "Can't read distribution configuration file: " + distConfigFile.getAbsolutePath(), e);
+    } catch (XMLStreamException | RuntimeException e) {
+      closeQuietly();
+      throw processingFailed(e);
+    }
+    return nextArtifact != null;
+  }
+
+  @Override
+  public ArtifactType next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    ArtifactType result = nextArtifact;
+    nextArtifact = null;
+    return result;
+  }
+
+  private IllegalStateException processingFailed(final Exception cause) {
+    return new IllegalStateException(
+        "Failed to process already existing distribution configuration file: "
+            + distConfigFile.getAbsolutePath(),
+        cause);
+  }
+
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.everit.osgi.dev.dist.util.configuration.schema.ArtifactType;
+import org.everit.osgi.dev.dist.util.configuration.schema.ArtifactsType;
+import org.everit.osgi.dev.dist.util.configuration.schema.EntryType;
+import org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType;
+
+/**
+ * Immutable index of the artifacts of an environment that answers lookups by coordinates, by
+ * target path and by property in constant time. The index is built once, the artifacts must not be
+ * modified while it is used.
+ *
+ * <p>
+ * The target path of an artifact is its target folder and target file separated by a slash. If the
+ * target file is not specified, the name of the Maven artifact file is used. Artifacts that have
+ * neither a target file nor valid coordinates are not indexed by target path. If several artifacts
+ * have the same target path, they are reported by {@link #getDuplicateTargets()} and the lookup
+ * returns the first one.
+ *
+ * <p>
+ * The coordinates are indexed in their parsed form, see {@link ArtifactCoordinates}.
+ */
+public final class ArtifactIndex {
+
+  private static final char PATH_SEPARATOR = '/';
+
+  private static <K, V> Map<K, List<V>> freeze(final Map<K, List<V>> map) {
+    for (Map.Entry<K, List<V>> entry : map.entrySet()) {
+      entry.setValue(Collections.unmodifiableList(entry.getValue()));
+    }
+    return Collections.unmodifiableMap(map);
+  }
+
+  private static boolean isDotSegment(final StringBuilder sb, final int segmentStart) {
+    int segmentLength = sb.length() - segmentStart;
+    return (segmentLength == 1 || segmentLength == 2) && sb.charAt(segmentStart) == '.'
+        && sb.charAt(sb.length() - 1) == '.';
+  }
+
+  /**
+   * Normalizes a target path: backslashes are replaced with slashes, repeated slashes are
+   * collapsed, the <code>.</code> and <code>..</code> segments are resolved and the leading and
+   * trailing slashes are removed. The <code>..</code> segments that point out of the root folder
+   * are kept.
+   *
+   * @param targetPath
+   *          the path relative to the root folder of the distribution.
+   * @return the normalized path.
+   */
+  static String normalizeTargetPath(final String targetPath) {
+    StringBuilder sb = new StringBuilder(targetPath.length());
+    boolean dotSegmentFound = false;
+    int segmentStart = 0;
+    for (int i = 0, n = targetPath.length(); i < n; i++) {
+      char c = targetPath.charAt(i);
+      if (c == '\\' || c == PATH_SEPARATOR) {
+        dotSegmentFound = dotSegmentFound || isDotSegment(sb, segmentStart);
+        if (sb.length() > 0 && sb.charAt(sb.length() - 1) != PATH_SEPARATOR) {
+          sb.append(PATH_SEPARATOR);
+        }
+        segmentStart = sb.length();
+      } else {
+        sb.append(c);
+      }
+    }
+    dotSegmentFound = dotSegmentFound || isDotSegment(sb, segmentStart);
+    if (sb.length() > 0 && sb.charAt(sb.length() - 1) == PATH_SEPARATOR) {
+      sb.setLength(sb.length() - 1);
+    }
+    return (dotSegmentFound) ? resolveDotSegments(sb.toString()) : sb.toString();
+  }
+
+  private static String resolveDotSegments(final String path) {
+    Deque<String> segments = new ArrayDeque<>();
+    for (String segment : path.split(String.valueOf(PATH_SEPARATOR))) {
+      if ("..".equals(segment) && !segments.isEmpty() && !"..".equals(segments.peekLast())) {
+        segments.removeLast();
+      } else if (!".".equals(segment)) {
+        segments.addLast(segment);
+      }
+    }
+    return String.join(String.valueOf(PATH_SEPARATOR), segments);
+  }
+
+  /**
+   * Returns the target path of an artifact.
+   *
+   * @param artifact
+   *          the artifact.
+   * @return the normalized target path or <code>null</code> if it cannot be determined.
+   */
+  static String targetPath(final ArtifactType artifact) {
+    String targetFile = artifact.getTargetFile();
+    if (targetFile == null) {
+      String coordinates = artifact.getCoordinates();
+      ArtifactCoordinates parsedCoordinates =
+          (coordinates != null) ? ArtifactCoordinates.tryParse(coordinates) : null;
+      if (parsedCoordinates == null) {
+        return null;
+      }
+      targetFile = parsedCoordinates.getFileName();
+    }
+    String targetFolder = artifact.getTargetFolder();
+    if (targetFolder == null || targetFolder.isEmpty()) {
+      return normalizeTargetPath(targetFile);
+    }
+    return normalizeTargetPath(targetFolder + PATH_SEPARATOR + targetFile);
+  }
+
+  private final List<ArtifactType> artifacts;
+
+  private final Map<ArtifactCoordinates, ArtifactType> artifactsByCoordinates;
+
+  private final Map<String, Map<String, List<ArtifactType>>> artifactsByProperty;
+
+  private final Map<String, ArtifactType> artifactsByTargetPath;
+
+  private final Map<String, List<ArtifactType>> duplicateTargets;
+
+  /**
+   * Builds the index of the artifacts of an environment.
+   *
+   * @param environment
+   *          the environment configuration. It might have no artifacts.
+   */
+  public ArtifactIndex(final EnvironmentType environment) {
+    this(environment.getArtifacts());
+  }
+
+  /**
+   * Builds the index of artifacts.
+   *
+   * @param artifacts
+   *          the artifacts, might be <code>null</code>.
+   */
+  public ArtifactIndex(final ArtifactsType artifacts) {
+    List<ArtifactType> artifactList = new ArrayList<>();
+    if (artifacts != null) {
+      for (ArtifactType artifact : artifacts.getArtifact()) {
+        if (artifact != null) {
+          artifactList.add(artifact);
+        }
+      }
+    }
+    this.artifacts = Collections.unmodifiableList(artifactList);
+
+    Map<ArtifactCoordinates, ArtifactType> byCoordinates = new HashMap<>();
+    Map<String, ArtifactType> byTargetPath = new HashMap<>();
+    Map<String, List<ArtifactType>> duplicates = new LinkedHashMap<>();
+    Map<String, Map<String, List<ArtifactType>>> byProperty = new HashMap<>();
+    for (ArtifactType artifact : artifactList) {
+      String coordinates = artifact.getCoordinates();
+      ArtifactCoordinates parsedCoordinates =
+          (coordinates != null) ? ArtifactCoordinates.tryParse(coordinates) : null;
+      if (parsedCoordinates != null) {
+        byCoordinates.putIfAbsent(parsedCoordinates, artifact);
+      }
+
+      String targetPath = targetPath(artifact);
+      if (targetPath != null) {
+        ArtifactType existing = byTargetPath.putIfAbsent(targetPath, artifact);
+        if (existing != null) {
+          List<ArtifactType> duplicateList = duplicates.get(targetPath);
+          if (duplicateList == null) {
+            duplicateList = new ArrayList<>();
+            duplicateList.add(existing);
+            duplicates.put(targetPath, duplicateList);
+          }
+          duplicateList.add(artifact);
+        }
+      }
+
+      if (artifact.getProperties() != null) {
+        for (EntryType property : artifact.getProperties().getProperty()) {
+          if (property != null && property.getKey() != null) {
+            byProperty.computeIfAbsent(property.getKey(), (key) -> new HashMap<>())
+                .computeIfAbsent(property.getValue(), (value) -> new ArrayList<>(1))
+                .add(artifact);
+          }
+        }
+      }
+    }
+
+    for (Map.Entry<String, Map<String, List<ArtifactType>>> entry : byProperty.entrySet()) {
+      entry.setValue(freeze(entry.getValue()));
+    }
+    this.artifactsByCoordinates = Collections.unmodifiableMap(byCoordinates);
+    this.artifactsByTargetPath = Collections.unmodifiableMap(byTargetPath);
+    this.artifactsByProperty = Collections.unmodifiableMap(byProperty);
+    this.duplicateTargets = freeze(duplicates);
+  }
+
+  /**
+   * Returns all indexed artifacts.
+   *
+   * @return the artifacts in the order of the distribution configuration.
+   */
+  public List<ArtifactType> getArtifacts() {
+    return artifacts;
+  }
+
+  /**
+   * Returns the artifact with the given coordinates.
+   *
+   * @param coordinates
+   *          the coordinates.
+   * @return the first artifact with the coordinates or <code>null</code> if there is no such
+   *         artifact.
+   */
+  public ArtifactType getByCoordinates(final ArtifactCoordinates coordinates) {
+    return artifactsByCoordinates.get(coordinates);
+  }
+
+  /**
+   * Returns the artifact with the given coordinates. The coordinates match if they are equal after
+   * parsing, e.g. <code>g:a:1</code> and <code>g:a:jar:1</code> are the same.
+   *
+   * @param coordinates
+   *          the raw coordinates.
+   * @return the first artifact with the coordinates or <code>null</code> if there is no such
+   *         artifact or the coordinates are not valid.
+   */
+  public ArtifactType getByCoordinates(final String coordinates) {
+    ArtifactCoordinates parsedCoordinates = ArtifactCoordinates.tryParse(coordinates);
+    return (parsedCoordinates != null) ? artifactsByCoordinates.get(parsedCoordinates) : null;
+  }
+
+  /**
+   * Returns the artifacts that have a property with the given value, e.g. the bundle with a
+   * <code>bundle.symbolicName</code>.
+   *
+   * @param key
+   *          the key of the property.
+   * @param value
+   *          the value of the property, might be <code>null</code>.
+   * @return the artifacts in the order of the distribution configuration or an empty list.
+   */
+  public List<ArtifactType> getByProperty(final String key, final String value) {
+    Map<String, List<ArtifactType>> artifactsByValue = artifactsByProperty.get(key);
+    if (artifactsByValue == null) {
+      return Collections.emptyList();
+    }
+    List<ArtifactType> result = artifactsByValue.get(value);
+    return (result != null) ? result : Collections.<ArtifactType> emptyList();
+  }
+
+  /**
+   * Returns the artifact that is copied to a target path.
+   *
+   * @param targetFolder
+   *          the target folder, might be <code>null</code> for the root of the distribution.
+   * @param targetFile
+   *          the name of the target file.
+   * @return the first artifact with the target path or <code>null</code> if there is no such
+   *         artifact.
+   */
+  public ArtifactType getByTarget(final String targetFolder, final String targetFile) {
+    if (targetFolder == null || targetFolder.isEmpty()) {
+      return getByTargetPath(targetFile);
+    }
+    return getByTargetPath(targetFolder + PATH_SEPARATOR + targetFile);
+  }
+
+  /**
+   * Returns the artifact that is copied to a target path.
+   *
+   * @param targetPath
+   *          the path relative to the root folder of the distribution, e.g.
+   *          <code>lib/example.jar</code>. Both slashes and backslashes are accepted.
+   * @return the first artifact with the target path or <code>null</code> if there is no such
+   *         artifact.
+   */
+  public ArtifactType getByTargetPath(final String targetPath) {
+    return artifactsByTargetPath.get(normalizeTargetPath(targetPath));
+  }
+
+  /**
+   * Returns the target paths that more than one artifact is copied to.
+   *
+   * @return the artifacts by their target path in the order the duplicates were found.
+   */
+  public Map<String, List<ArtifactType>> getDuplicateTargets() {
+    return duplicateTargets;
+  }
+
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType;
+
+/**
+ * A bounded cache of parsed distribution configuration files. The entries are identified by the
+ * path, the last modification time and the size of the file and optionally by the hash of its
+ * content. When the cache is full, the least recently used entry is evicted.
+ *
+ * <p>
+ * The cache stores its own instance of the parsed model and every caller gets a deep copy of it,
+ * so modifying a returned object does not affect the cached one or the result of other calls.
+ *
+ * <p>
+ * Without content hashing a file that is rewritten within the resolution of the file system
+ * timestamp and has the same size as before is not noticed. Turn on content hashing if that might
+ * happen.
+ */
+public class DistConfigCache {
+
+  /**
+   * Identity of a distribution configuration file at the time it was read.
+   */
+  private static final class FileKey {
+
+    private final byte[] contentHash;
+
+    private final int hashCode;
+
+    private final long lastModified;
+
+    private final String path;
+
+    private final Set<DistConfigSection> sections;
+
+    private final long size;
+
+    private final boolean validated;
+
+    FileKey(final String path, final long lastModified, final long size,
+        final byte[] contentHash, final Set<DistConfigSection> sections, final boolean validated) {
+      this.path = path;
+      this.lastModified = lastModified;
+      this.size = size;
+      this.contentHash = contentHash;
+      this.sections = sections;
+      this.validated = validated;
+      this.hashCode = Objects.hash(path, lastModified, size, Arrays.hashCode(contentHash),
+          sections, validated);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof FileKey)) {
+        return false;
+      }
+      FileKey other = (FileKey) obj;
+      return lastModified == other.lastModified && size == other.size
+          && path.equals(other.path) && Arrays.equals(contentHash, other.contentHash)
+          && sections.equals(other.sections) && validated == other.validated;
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private static final String CONTENT_HASH_ALGORITHM = "SHA-256";
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private static final float LOAD_FACTOR = 0.75f;
+
+  private final boolean contentHashEnabled;
+
+  private final Map<FileKey, EnvironmentType> entries;
+
+  private final AtomicLong hitCount = new AtomicLong();
+
+  private final int maximumSize;
+
+  private final AtomicLong missCount = new AtomicLong();
+
+  /**
+   * Creates a cache that identifies the files by their path, last modification time and size.
+   *
+   * @param maximumSize
+   *          the maximum number of parsed files that are kept in the cache.
+   */
+  public DistConfigCache(final int maximumSize) {
+    this(maximumSize, false);
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param maximumSize
+   *          the maximum number of parsed files that are kept in the cache.
+   * @param contentHashEnabled
+   *          whether the hash of the file content should be part of the identity of the file. In
+   *          case it is <code>true</code>, the file is read on every lookup.
+   */
+  public DistConfigCache(final int maximumSize, final boolean contentHashEnabled) {
+    if (maximumSize < 1) {
+      throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+    }
+    this.maximumSize = maximumSize;
+    this.contentHashEnabled = contentHashEnabled;
+    this.entries = new LinkedHashMap<FileKey, EnvironmentType>(
+        INITIAL_CAPACITY, LOAD_FACTOR, true) {
+
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<FileKey, EnvironmentType> eldest) {
+        return size() > DistConfigCache.this.maximumSize;
+      }
+    };
+  }
+
+  /**
+   * Removes all entries from the cache. The hit and miss counters are not reset.
+   */
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  private byte[] digest(final byte[] content) {
+    try {
+      return MessageDigest.getInstance(CONTENT_HASH_ALGORITHM).digest(content);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Returns a copy of the parsed configuration file from the cache or parses it with the loader
+   * and stores the result.
+   *
+   * @param distConfigFile
+   *          the distribution configuration file.
+   * @param sections
+   *          the sections that the loader reads. The results of different section sets are cached
+   *          separately. The set must not be modified after it is passed to this method.
+   * @param validated
+   *          whether the loader validates the file. Validated results are cached separately, so a
+   *          file that was read without validation is not handed out as a validated one.
+   * @param loader
+   *          parses the content of the file that is passed as an {@link InputStream}.
+   * @return a copy of the parsed configuration that the caller is free to modify.
+   */
+  EnvironmentType get(final File distConfigFile, final Set<DistConfigSection> sections,
+      final boolean validated, final Function<InputStream, EnvironmentType> loader) {
+
+    Path path = distConfigFile.toPath().toAbsolutePath().normalize();
+    byte[] content = null;
+    FileKey key;
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+      byte[] contentHash = null;
+      if (contentHashEnabled) {
+        content = Files.readAllBytes(path);
+        contentHash = digest(content);
+      }
+      key = new FileKey(path.toString(), attributes.lastModifiedTime().toMillis(),
+          attributes.size(), contentHash, sections, validated);
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          "Can't read distribution configuration file: " + distConfigFile.getAbsolutePath(), e);
+    }
+
+    EnvironmentType cached;
+    synchronized (this) {
+      cached = entries.get(key);
+    }
+    if (cached != null) {
+      hitCount.incrementAndGet();
+      return EnvironmentCopyUtil.deepCopy(cached);
+    }
+    missCount.incrementAndGet();
+
+    EnvironmentType loaded;
+    try (InputStream in = (content != null)
+        ? new ByteArrayInputStream(content)
+        : new FileInputStream(distConfigFile)) {
+      loaded = loader.apply(in);
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          "Can't read distribution configuration file: " + distConfigFile.getAbsolutePath(), e);
+    }
+
+    if (loaded == null) {
+      return null;
+    }
+
+    EnvironmentType result = EnvironmentCopyUtil.deepCopy(loaded);
+    // Hits might copy the cached instance from several threads at the same time
+    EnvironmentCopyUtil.initializeLists(loaded);
+    // The cached instance is never modified, so it can share its entries with other models
+    DistConfigInterner.SHARED.internEntries(loaded);
+    synchronized (this) {
+      entries.put(key, loaded);
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of lookups that could be served from the cache.
+   *
+   * @return the number of cache hits since the cache was created.
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  public int getMaximumSize() {
+    return maximumSize;
+  }
+
+  /**
+   * Returns the number of lookups where the file had to be parsed.
+   *
+   * @return the number of cache misses since the cache was created.
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  public boolean isContentHashEnabled() {
+    return contentHashEnabled;
+  }
+
+  /**
+   * Returns the number of parsed files that are currently in the cache.
+   *
+   * @return the number of cached entries.
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.File;
+
+import org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType;
+
+/**
+ * Event data that is passed by the {@link DistConfigWatcher} to its listeners when the content of
+ * a distribution configuration file changed.
+ */
+public class DistConfigChangeEventData {
+
+  /**
+   * The exception that occurred while the changed file was read or <code>null</code> if the file
+   * was read successfully.
+   */
+  public Throwable cause;
+
+  public File distConfigFile;
+
+  /**
+   * The overridden environment configuration or <code>null</code> if the file was deleted or it
+   * could not be read.
+   */
+  public EnvironmentType environment;
+
+  /**
+   * The launch configuration of the environment or <code>null</code> if the environment has no
+   * launch configuration.
+   */
+  public LaunchConfigurationDTO launchConfiguration;
+
+  public DistConfigWatcher watcher;
+
+}
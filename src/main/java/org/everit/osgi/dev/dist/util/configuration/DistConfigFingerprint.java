@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * The fingerprint of the content of a distribution configuration file: its size and the SHA-256
+ * hash of its content. Two fingerprints are equal if the content of the file is the same,
+ * independently from the modification time.
+ */
+final class DistConfigFingerprint {
+
+  private static final String CONTENT_HASH_ALGORITHM = "SHA-256";
+
+  static final int CONTENT_HASH_LENGTH = 32;
+
+  final byte[] contentHash;
+
+  final long size;
+
+  DistConfigFingerprint(final long size, final byte[] contentHash) {
+    this.size = size;
+    this.contentHash = contentHash;
+  }
+
+  /**
+   * Calculates the fingerprint of a file.
+   *
+   * @param distConfigFile
+   *          the distribution configuration file.
+   * @return the fingerprint or <code>null</code> if the file does not exist.
+   * @throws IOException
+   *           if the file cannot be read.
+   */
+  static DistConfigFingerprint of(final File distConfigFile) throws IOException {
+    byte[] content;
+    try {
+      content = Files.readAllBytes(distConfigFile.toPath());
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+    try {
+      return new DistConfigFingerprint(content.length,
+          MessageDigest.getInstance(CONTENT_HASH_ALGORITHM).digest(content));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof DistConfigFingerprint)) {
+      return false;
+    }
+    DistConfigFingerprint other = (DistConfigFingerprint) obj;
+    return size == other.size && Arrays.equals(contentHash, other.contentHash);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(contentHash);
+  }
+
+}
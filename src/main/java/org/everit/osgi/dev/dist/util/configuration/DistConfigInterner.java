@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.lang.ref.WeakReference;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiPredicate;
+
+import org.everit.osgi.dev.dist.util.configuration.schema.ArgumentsType;
+import org.everit.osgi.dev.dist.util.configuration.schema.ArtifactType;
+import org.everit.osgi.dev.dist.util.configuration.schema.EntryType;
+import org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType;
+import org.everit.osgi.dev.dist.util.configuration.schema.LaunchConfigOverrideType;
+import org.everit.osgi.dev.dist.util.configuration.schema.LaunchConfigType;
+import org.everit.osgi.dev.dist.util.configuration.schema.ParsableType;
+
+/**
+ * Canonicalizes the repeated strings, entries and artifact coordinates of parsed distribution
+ * configurations, so the models of several environments that contain the same property keys,
+ * coordinates or arguments share the same instances on the heap.
+ *
+ * <p>
+ * Every kind of value has a fixed size table of weak references, so the interner never holds more
+ * than a bounded number of references and it does not keep anything alive. When two values compete
+ * for the same slots, the older one is replaced. Interning is therefore best-effort: equal values
+ * might still be different instances. Instances are thread-safe.
+ *
+ * <p>
+ * Strings and coordinates are immutable, so they can be shared by any model. {@link EntryType}s are
+ * mutable, so they must only be shared by models that are never modified, like the instances
+ * stored in {@link DistConfigCache}.
+ */
+final class DistConfigInterner {
+
+  private static final int DEFAULT_SLOT_COUNT = 8192;
+
+  /**
+   * The interner that is used by the read path of the distribution configuration files.
+   */
+  static final DistConfigInterner SHARED = new DistConfigInterner(DEFAULT_SLOT_COUNT);
+
+  private static boolean entryEquals(final EntryType entry1, final EntryType entry2) {
+    return Objects.equals(entry1.getKey(), entry2.getKey())
+        && Objects.equals(entry1.getValue(), entry2.getValue());
+  }
+
+  private static int entryHash(final EntryType entry) {
+    return Objects.hashCode(entry.getKey()) * 31 + Objects.hashCode(entry.getValue());
+  }
+
+  private static int spread(final int hashCode) {
+    return hashCode ^ (hashCode >>> 16);
+  }
+
+  private final AtomicReferenceArray<WeakReference<ArtifactCoordinates>> coordinates;
+
+  private final AtomicReferenceArray<WeakReference<EntryType>> entries;
+
+  private final int mask;
+
+  private final AtomicReferenceArray<WeakReference<String>> strings;
+
+  /**
+   * Constructor.
+   *
+   * @param slotCount
+   *          the number of slots of the tables of the strings, the entries and the artifact
+   *          coordinates. It is rounded up to a power of two.
+   */
+  DistConfigInterner(final int slotCount) {
+    if (slotCount < 2) {
+      throw new IllegalArgumentException("Slot count must be at least 2: " + slotCount);
+    }
+    int tableSize = Integer.highestOneBit(slotCount - 1) << 1;
+    this.mask = tableSize - 1;
+    this.strings = new AtomicReferenceArray<>(tableSize);
+    this.coordinates = new AtomicReferenceArray<>(tableSize);
+    this.entries = new AtomicReferenceArray<>(tableSize);
+  }
+
+  /**
+   * Returns the interned coordinates with the given canonical form.
+   *
+   * @param canonicalForm
+   *          the canonical form of the coordinates, see {@link ArtifactCoordinates#toString()}.
+   * @return the coordinates or <code>null</code> if they are not in the table.
+   */
+  ArtifactCoordinates getCoordinates(final String canonicalForm) {
+    int slot = spread(canonicalForm.hashCode()) & mask;
+    for (int i = 0; i < 2; i++) {
+      WeakReference<ArtifactCoordinates> reference = coordinates.get(slot ^ i);
+      ArtifactCoordinates canonical = (reference != null) ? reference.get() : null;
+      if (canonical != null && canonical.toString().equals(canonicalForm)) {
+        return canonical;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the canonical instance of artifact coordinates.
+   *
+   * @param value
+   *          the coordinates.
+   * @return equal coordinates that were seen before or the coordinates themselves.
+   */
+  ArtifactCoordinates intern(final ArtifactCoordinates value) {
+    return intern(coordinates, value, value.hashCode(), Object::equals);
+  }
+
+  private <T> T intern(final AtomicReferenceArray<WeakReference<T>> table, final T value,
+      final int hashCode, final BiPredicate<T, T> equality) {
+    // Every value is tried at two positions, the second one is the pair of the first one
+    int slot = spread(hashCode) & mask;
+    int freeSlot = slot;
+    for (int i = 0; i < 2; i++) {
+      int currentSlot = slot ^ i;
+      WeakReference<T> reference = table.get(currentSlot);
+      T canonical = (reference != null) ? reference.get() : null;
+      if (canonical == null) {
+        freeSlot = currentSlot;
+      } else if (equality.test(canonical, value)) {
+        return canonical;
+      }
+    }
+    table.set(freeSlot, new WeakReference<>(value));
+    return value;
+  }
+
+  /**
+   * Returns the canonical instance of an entry.
+   *
+   * @param entry
+   *          the entry, might be <code>null</code>.
+   * @return an entry with the same key and value that was seen before or the entry itself.
+   */
+  EntryType intern(final EntryType entry) {
+    if (entry == null) {
+      return null;
+    }
+    return intern(entries, entry, entryHash(entry), DistConfigInterner::entryEquals);
+  }
+
+  /**
+   * Returns the canonical instance of a string.
+   *
+   * @param value
+   *          the string, might be <code>null</code>.
+   * @return an equal string that was seen before or the string itself.
+   */
+  String intern(final String value) {
+    if (value == null) {
+      return null;
+    }
+    return intern(strings, value, value.hashCode(), Object::equals);
+  }
+
+  private void internArgumentEntries(final ArgumentsType arguments) {
+    if (arguments != null) {
+      internEntries(arguments.getArgument());
+    }
+  }
+
+  /**
+   * Replaces the entries of an environment configuration with their canonical instances. The
+   * environment configuration must not be modified afterwards, as its entries might be shared
+   * with other models.
+   *
+   * @param environment
+   *          the environment configuration, might be <code>null</code>.
+   */
+  void internEntries(final EnvironmentType environment) {
+    if (environment == null) {
+      return;
+    }
+    if (environment.getArtifacts() != null) {
+      for (ArtifactType artifact : environment.getArtifacts().getArtifact()) {
+        if (artifact != null && artifact.getProperties() != null) {
+          internEntries(artifact.getProperties().getProperty());
+        }
+      }
+    }
+    if (environment.getRuntimePathRegexes() != null) {
+      internEntries(environment.getRuntimePathRegexes().getEntry());
+    }
+    LaunchConfigType launchConfig = environment.getLaunchConfig();
+    if (launchConfig != null) {
+      internArgumentEntries(launchConfig.getVmArguments());
+      internArgumentEntries(launchConfig.getProgramArguments());
+      if (launchConfig.getOverrides() != null) {
+        for (LaunchConfigOverrideType override : launchConfig.getOverrides().getOverride()) {
+          if (override != null) {
+            internArgumentEntries(override.getVmArguments());
+            internArgumentEntries(override.getProgramArguments());
+          }
+        }
+      }
+    }
+  }
+
+  private void internEntries(final List<EntryType> entryList) {
+    ListIterator<EntryType> iterator = entryList.listIterator();
+    while (iterator.hasNext()) {
+      EntryType entry = iterator.next();
+      EntryType canonical = intern(entry);
+      if (canonical != entry) {
+        iterator.set(canonical);
+      }
+    }
+  }
+
+  /**
+   * Replaces the strings of an object of the parsed model with their canonical instances. The
+   * objects that the object contains are not processed, so the method should be called on every
+   * object after it is filled during the read.
+   *
+   * @param modelObject
+   *          an object of the parsed model, might be <code>null</code>.
+   */
+  void internStrings(final Object modelObject) {
+    if (modelObject instanceof EntryType) {
+      EntryType entry = (EntryType) modelObject;
+      entry.setKey(intern(entry.getKey()));
+      entry.setValue(intern(entry.getValue()));
+    } else if (modelObject instanceof ArtifactType) {
+      ArtifactType artifact = (ArtifactType) modelObject;
+      artifact.setCoordinates(intern(artifact.getCoordinates()));
+      artifact.setDownloadURL(intern(artifact.getDownloadURL()));
+      artifact.setTargetFile(intern(artifact.getTargetFile()));
+      artifact.setTargetFolder(intern(artifact.getTargetFolder()));
+    } else if (modelObject instanceof ParsableType) {
+      ParsableType parsable = (ParsableType) modelObject;
+      parsable.setEncoding(intern(parsable.getEncoding()));
+      parsable.setPath(intern(parsable.getPath()));
+    } else if (modelObject instanceof LaunchConfigType) {
+      LaunchConfigType launchConfig = (LaunchConfigType) modelObject;
+      launchConfig.setClassPath(intern(launchConfig.getClassPath()));
+      launchConfig.setMainClass(intern(launchConfig.getMainClass()));
+    } else if (modelObject instanceof EnvironmentType) {
+      EnvironmentType environment = (EnvironmentType) modelObject;
+      environment.setId(intern(environment.getId()));
+    }
+  }
+
+}
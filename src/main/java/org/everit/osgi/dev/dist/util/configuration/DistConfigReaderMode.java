@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+/**
+ * The way how {@link DistributedEnvironmentConfigurationProvider} reads the distribution
+ * configuration files.
+ */
+public enum DistConfigReaderMode {
+
+  /**
+   * Unmarshals the file with JAXB. The JAXB context is created when the first file is read.
+   */
+  JAXB,
+
+  /**
+   * Binds the file to the schema classes with a streaming StAX reader. No JAXB context is created,
+   * that makes the first read much faster.
+   */
+  STAX
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.net.URL;
+
+import javax.xml.XMLConstants;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Access to the compiled XML schema of the distribution configuration files. The schema is
+ * compiled when it is first needed and it is shared by all the validations of the class loader that
+ * loaded this class, as a {@link Schema} is thread-safe.
+ */
+final class DistConfigSchema {
+
+  /**
+   * Holder of the compiled schema, so it is only compiled when the first validation runs.
+   */
+  private static final class SchemaHolder {
+
+    private static final Schema SCHEMA = compile();
+
+    private static Schema compile() {
+      URL schemaURL = DistConfigSchema.class.getResource(SCHEMA_RESOURCE);
+      if (schemaURL == null) {
+        throw new IllegalStateException(
+            "Distribution configuration schema not found: " + SCHEMA_RESOURCE);
+      }
+      try {
+        return SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(schemaURL);
+      } catch (SAXException e) {
+        throw new IllegalStateException(
+            "Could not compile distribution configuration schema: " + schemaURL, e);
+      }
+    }
+  }
+
+  /**
+   * The classpath resource of the schema.
+   */
+  private static final String SCHEMA_RESOURCE = "/META-INF/eosgi-dist.xsd";
+
+  /**
+   * Returns the compiled schema.
+   *
+   * @return the schema.
+   */
+  static Schema getSchema() {
+    return SchemaHolder.SCHEMA;
+  }
+
+  private DistConfigSchema() {
+  }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+/**
+ * The top level sections of a distribution configuration file. Callers that need only some of the
+ * sections can ask {@link DistributedEnvironmentConfigurationProvider} to read only those, the
+ * other sections are skipped without creating any object for them.
+ */
+public enum DistConfigSection {
+
+  /**
+   * The <code>artifacts</code> element, see
+   * {@link org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType#getArtifacts()}.
+   */
+  ARTIFACTS,
+
+  /**
+   * The <code>launchConfig</code> element, see
+   * {@link org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType#getLaunchConfig()}.
+   */
+  LAUNCH_CONFIG,
+
+  /**
+   * The <code>parsables</code> element, see
+   * {@link org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType#getParsables()}.
+   */
+  PARSABLES,
+
+  /**
+   * The <code>runtimePathRegexes</code> element, see {@link
+   * org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType#getRuntimePathRegexes()}.
+   */
+  RUNTIME_PATH_REGEXES
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown if a distribution configuration file is not valid against the schema. The message and
+ * {@link #getValidationErrors()} contain all the errors that were found during the read.
+ */
+public class DistConfigValidationException extends IllegalStateException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final List<String> validationErrors;
+
+  /**
+   * Constructor.
+   *
+   * @param message
+   *          the message of the exception.
+   * @param validationErrors
+   *          the errors in the order they were found.
+   * @param cause
+   *          the cause if the file could not be processed at all, otherwise <code>null</code>.
+   */
+  public DistConfigValidationException(final String message, final List<String> validationErrors,
+      final Throwable cause) {
+    super(message, cause);
+    this.validationErrors = Collections.unmodifiableList(validationErrors);
+  }
+
+  /**
+   * Returns the errors that were found. Every error starts with its line and column number.
+   *
+   * @return the errors in the order they were found.
+   */
+  public List<String> getValidationErrors() {
+    return validationErrors;
+  }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.everit.osgi.dev.dist.util.DistConstants;
+import org.everit.osgi.dev.dist.util.configuration.schema.UseByType;
+
+/**
+ * Watches the distribution configuration files of distribution folders and notifies the listeners
+ * when the content of a file changes. The watcher is based on a {@link WatchService}, so there is
+ * no need to poll and re-read the files.
+ *
+ * <p>
+ * Bursts of writes are debounced: a file is read only after no change was reported for it during
+ * the debounce time. The file is parsed only if the hash of its content differs from the one that
+ * was seen the last time, so touching or rewriting a file with the same content does not cause any
+ * notification.
+ *
+ * <p>
+ * The listeners are called on the thread of the watcher. They should return quickly, exceptions
+ * that they throw are ignored.
+ */
+public class DistConfigWatcher implements Closeable {
+
+  public static final long DEFAULT_DEBOUNCE_MILLIS = 200;
+
+  private boolean closed = false;
+
+  private final long debounceNanos;
+
+  /**
+   * The fingerprints of the distribution configuration files by their folders. The value is
+   * <code>null</code> if the file does not exist.
+   */
+  private final Map<Path, DistConfigFingerprint> fingerprints = new HashMap<>();
+
+  private final List<Consumer<DistConfigChangeEventData>> listeners =
+      new CopyOnWriteArrayList<>();
+
+  private final DistributedEnvironmentConfigurationProvider provider;
+
+  private final UseByType useBy;
+
+  private final Thread watcherThread;
+
+  private final Map<Path, WatchKey> watchKeys = new HashMap<>();
+
+  private final WatchService watchService;
+
+  /**
+   * Constructor. The watcher starts its thread immediately, but it does not watch any folder until
+   * {@link #watch(File)} is called.
+   *
+   * @param parameter
+   *          The parameters how the watcher is instantiated. See the doc in the
+   *          {@link DistConfigWatcherParameter} class.
+   */
+  public DistConfigWatcher(final DistConfigWatcherParameter parameter) {
+    Objects.requireNonNull(parameter);
+    Objects.requireNonNull(parameter.useBy);
+    if (parameter.debounceMillis < 0) {
+      throw new IllegalArgumentException(
+          "Debounce time must not be negative: " + parameter.debounceMillis);
+    }
+    this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(parameter.debounceMillis);
+    this.provider = (parameter.provider != null)
+        ? parameter.provider
+        : new DistributedEnvironmentConfigurationProvider();
+    this.useBy = parameter.useBy;
+
+    try {
+      this.watchService = FileSystems.getDefault().newWatchService();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not create watch service", e);
+    }
+
+    this.watcherThread = new Thread(this::watchLoop, "EOSGi distribution configuration watcher");
+    watcherThread.setDaemon(true);
+    watcherThread.start();
+  }
+
+  public void addChangeListener(final Consumer<DistConfigChangeEventData> listener) {
+    listeners.add(Objects.requireNonNull(listener));
+  }
+
+  /**
+   * Stops watching all folders and stops the thread of the watcher.
+   */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    watchKeys.clear();
+    fingerprints.clear();
+    try {
+      watchService.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      watcherThread.interrupt();
+    }
+  }
+
+  private DistConfigFingerprint fingerprintOrNull(final File distConfigFile) {
+    try {
+      return DistConfigFingerprint.of(distConfigFile);
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private void notifyListeners(final DistConfigChangeEventData eventData) {
+    for (Consumer<DistConfigChangeEventData> listener : listeners) {
+      try {
+        listener.accept(eventData);
+      } catch (RuntimeException e) {
+        // A failing listener must not stop the watcher or the other listeners
+      }
+    }
+  }
+
+  private void processChange(final Path folder) {
+    File distConfigFile = folder.resolve(DistConstants.FILE_NAME_EOSGI_DIST_CONFIG).toFile();
+
+    DistConfigChangeEventData eventData = new DistConfigChangeEventData();
+    eventData.watcher = this;
+    eventData.distConfigFile = distConfigFile;
+
+    DistConfigFingerprint fingerprint;
+    try {
+      fingerprint = DistConfigFingerprint.of(distConfigFile);
+    } catch (IOException e) {
+      // The previous fingerprint is kept, so the next change of the file is reported again
+      eventData.cause = e;
+      notifyListeners(eventData);
+      return;
+    }
+
+    synchronized (this) {
+      if (!watchKeys.containsKey(folder)
+          || Objects.equals(fingerprints.get(folder), fingerprint)) {
+        return;
+      }
+      fingerprints.put(folder, fingerprint);
+    }
+
+    if (fingerprint != null) {
+      try {
+        eventData.environment =
+            provider.getOverriddenDistributedEnvironmentConfig(distConfigFile, useBy);
+        eventData.launchConfiguration = provider.getLaunchConfiguration(eventData.environment);
+      } catch (RuntimeException e) {
+        eventData.environment = null;
+        eventData.cause = e;
+      }
+    }
+    notifyListeners(eventData);
+  }
+
+  public void removeChangeListener(final Consumer<DistConfigChangeEventData> listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Stops watching a distribution folder.
+   *
+   * @param distFolder
+   *          the folder that contains the distribution configuration file.
+   */
+  public synchronized void unwatch(final File distFolder) {
+    Path folder = distFolder.toPath().toAbsolutePath().normalize();
+    WatchKey watchKey = watchKeys.remove(folder);
+    if (watchKey != null) {
+      watchKey.cancel();
+      fingerprints.remove(folder);
+    }
+  }
+
+  /**
+   * Starts watching the distribution configuration file of a folder. The current content of the
+   * file is the base of the comparison, so the listeners are notified only after the file changes.
+   * The folder must exist, but the distribution configuration file may be created later.
+   *
+   * @param distFolder
+   *          the folder that contains the distribution configuration file.
+   * @throws UncheckedIOException
+   *           if the folder cannot be watched.
+   * @throws IllegalStateException
+   *           if the watcher is already closed.
+   */
+  public synchronized void watch(final File distFolder) {
+    if (closed) {
+      throw new IllegalStateException("Watcher is closed");
+    }
+    Path folder = distFolder.toPath().toAbsolutePath().normalize();
+    if (watchKeys.containsKey(folder)) {
+      return;
+    }
+
+    try {
+      WatchKey watchKey = folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+      watchKeys.put(folder, watchKey);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not watch folder: " + folder, e);
+    }
+    fingerprints.put(folder,
+        fingerprintOrNull(folder.resolve(DistConstants.FILE_NAME_EOSGI_DIST_CONFIG).toFile()));
+  }
+
+  private void watchLoop() {
+    Map<Path, Long> deadlines = new HashMap<>();
+    while (true) {
+      WatchKey watchKey;
+      try {
+        if (deadlines.isEmpty()) {
+          watchKey = watchService.take();
+        } else {
+          long timeout = Long.MAX_VALUE;
+          long now = System.nanoTime();
+          for (Long deadline : deadlines.values()) {
+            timeout = Math.min(timeout, deadline - now);
+          }
+          watchKey = watchService.poll(Math.max(0, timeout), TimeUnit.NANOSECONDS);
+        }
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        return;
+      }
+
+      if (watchKey != null) {
+        boolean changed = false;
+        for (WatchEvent<?> event : watchKey.pollEvents()) {
+          changed |= event.kind() == StandardWatchEventKinds.OVERFLOW
+              || DistConstants.FILE_NAME_EOSGI_DIST_CONFIG.equals(String.valueOf(event.context()));
+        }
+        watchKey.reset();
+        if (changed) {
+          deadlines.put((Path) watchKey.watchable(), System.nanoTime() + debounceNanos);
+        }
+      }
+
+      long now = System.nanoTime();
+      Iterator<Entry<Path, Long>> iterator = deadlines.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Entry<Path, Long> deadline = iterator.next();
+        if (deadline.getValue() - now <= 0) {
+          iterator.remove();
+          processChange(deadline.getKey());
+        }
+      }
+    }
+  }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import org.everit.osgi.dev.dist.util.configuration.schema.UseByType;
+
+/**
+ * Parameters of {@link DistConfigWatcher}.
+ */
+public class DistConfigWatcherParameter {
+
+  /**
+   * The time in milliseconds that the watcher waits after the last change of a file before it
+   * reads the file. Bursts of writes that follow each other within this time cause only one read.
+   */
+  public long debounceMillis = DistConfigWatcher.DEFAULT_DEBOUNCE_MILLIS;
+
+  /**
+   * The provider that reads the changed files. If <code>null</code>, a provider with the default
+   * settings is used.
+   */
+  public DistributedEnvironmentConfigurationProvider provider;
+
+  /**
+   * The type of the usage that the overrides of the changed files are applied for. Mandatory.
+   */
+  public UseByType useBy;
+
+}
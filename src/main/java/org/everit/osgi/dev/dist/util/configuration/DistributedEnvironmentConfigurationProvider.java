@@ -18,17 +18,30 @@ package org.everit.osgi.dev.dist.util.configuration;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
-import java.util.Iterator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLStreamException;
 
 import org.everit.osgi.dev.dist.util.configuration.schema.ArgumentsType;
 import org.everit.osgi.dev.dist.util.configuration.schema.EntryType;
@@ -41,27 +54,168 @@ import org.everit.osgi.dev.dist.util.configuration.schema.UseByType;
 
 /**
  * Provider of the configuration of an environment.
+ *
+ * <p>
+ * Instances of this class are thread-safe. When several threads read the same distribution
+ * configuration file at the same time, even via different provider instances, the file is parsed
+ * only once and every thread gets its own copy of the result.
+ *
+ * <p>
+ * The repeated strings of the parsed files, like property keys and argument keys, are
+ * canonicalized, so they are shared by the models of all the read files.
  */
 public class DistributedEnvironmentConfigurationProvider {
 
-  private static final Comparator<EntryType> ENTRY_COMPARATOR = new Comparator<EntryType>() {
+  /**
+   * Holder of the JAXB context so it is only created when the first file is read in
+   * {@link DistConfigReaderMode#JAXB} mode. As {@link Unmarshaller}s are not thread-safe, but
+   * expensive to create, the idle ones are kept in a pool.
+   */
+  private static final class JAXBContextHolder {
+
+    private static final JAXBContext JAXB_CONTEXT;
+
+    private static final int MAX_IDLE_UNMARSHALLERS = 16;
+
+    private static final BlockingQueue<Unmarshaller> UNMARSHALLER_POOL =
+        new ArrayBlockingQueue<>(MAX_IDLE_UNMARSHALLERS);
+
+    static {
+      try {
+        JAXB_CONTEXT = JAXBContext.newInstance(
+            ObjectFactory.class.getPackage().getName(),
+            ObjectFactory.class.getClassLoader());
+      } catch (JAXBException e) {
+        throw new RuntimeException(
+            "Could not create JAXB Context for distribution configuration file", e);
+      }
+    }
+
+    static Unmarshaller borrowUnmarshaller() throws JAXBException {
+      Unmarshaller unmarshaller = UNMARSHALLER_POOL.poll();
+      if (unmarshaller == null) {
+        unmarshaller = JAXB_CONTEXT.createUnmarshaller();
+        unmarshaller.setListener(new Unmarshaller.Listener() {
+          @Override
+          public void afterUnmarshal(final Object target, final Object parent) {
+            DistConfigInterner.SHARED.internStrings(target);
+          }
+        });
+      }
+      return unmarshaller;
+    }
+
+    static void returnUnmarshaller(final Unmarshaller unmarshaller) {
+      UNMARSHALLER_POOL.offer(unmarshaller);
+    }
+  }
+
+  /**
+   * Identifies a read of a distribution configuration file together with all settings of the
+   * provider that influence the result, so only providers with the same settings share a read.
+   * The caches are compared by identity.
+   */
+  private static final class ReadKey {
+
+    private final DistConfigCache cache;
+
+    private final int hashCode;
+
+    private final String path;
+
+    private final DistConfigReaderMode readerMode;
+
+    private final Set<DistConfigSection> sections;
+
+    private final boolean validating;
+
+    ReadKey(final String path, final Set<DistConfigSection> sections,
+        final DistConfigReaderMode readerMode, final boolean validating,
+        final DistConfigCache cache) {
+      this.path = path;
+      this.sections = sections;
+      this.readerMode = readerMode;
+      this.validating = validating;
+      this.cache = cache;
+      this.hashCode = Objects.hash(path, sections, readerMode, validating,
+          System.identityHashCode(cache));
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof ReadKey)) {
+        return false;
+      }
+      ReadKey other = (ReadKey) obj;
+      return hashCode == other.hashCode && cache == other.cache
+          && validating == other.validating && readerMode == other.readerMode
+          && path.equals(other.path) && sections.equals(other.sections);
+    }
+
     @Override
-    public int compare(final EntryType o1, final EntryType o2) {
-      return o1.getKey().compareTo(o2.getKey());
+    public int hashCode() {
+      return hashCode;
     }
-  };
+  }
 
-  private static final JAXBContext JAXB_CONTEXT;
+  private static final Set<DistConfigSection> ALL_SECTIONS =
+      Collections.unmodifiableSet(EnumSet.allOf(DistConfigSection.class));
 
-  static {
-    try {
-      JAXB_CONTEXT = JAXBContext.newInstance(
-          ObjectFactory.class.getPackage().getName(),
-          ObjectFactory.class.getClassLoader());
-    } catch (JAXBException e) {
-      throw new RuntimeException(
-          "Could not create JAXB Context for distribution configuration file", e);
+  private static final SingleFlightLoader<ReadKey, EnvironmentType> IN_FLIGHT_READS =
+      new SingleFlightLoader<>(EnvironmentCopyUtil::deepCopy);
+
+  private static final Set<DistConfigSection> LAUNCH_CONFIG_SECTION =
+      Collections.unmodifiableSet(EnumSet.of(DistConfigSection.LAUNCH_CONFIG));
+
+  private static ValidatingStreamReader createValidatingReader(final InputStream in,
+      final ValidationErrorCollector errorCollector) throws XMLStreamException {
+    return new ValidatingStreamReader(StaxEnvironmentBinder.createXMLStreamReader(in),
+        DistConfigSchema.getSchema(), errorCollector);
+  }
+
+  private final DistConfigCache cache;
+
+  private final boolean launchConfigSidecarEnabled;
+
+  private final DistConfigReaderMode readerMode;
+
+  private final boolean validating;
+
+  /**
+   * Creates a provider that parses the distribution configuration file on every call.
+   */
+  public DistributedEnvironmentConfigurationProvider() {
+    this(new DistributedEnvironmentConfigurationProviderParameter());
+  }
+
+  /**
+   * Constructor.
+   *
+   * @param parameter
+   *          The parameters how the provider is instantiated. See the doc in the
+   *          {@link DistributedEnvironmentConfigurationProviderParameter} class.
+   */
+  public DistributedEnvironmentConfigurationProvider(
+      final DistributedEnvironmentConfigurationProviderParameter parameter) {
+    Objects.requireNonNull(parameter);
+    this.cache = parameter.cache;
+    this.launchConfigSidecarEnabled = parameter.launchConfigSidecarEnabled;
+    this.readerMode = (parameter.readerMode != null)
+        ? parameter.readerMode
+        : DistConfigReaderMode.JAXB;
+    this.validating = parameter.validating;
+  }
+
+  private ArgumentsType copyArguments(final ArgumentsType arguments) {
+    if (arguments == null) {
+      return null;
     }
+    ArgumentsType result = new ArgumentsType();
+    result.getArgument().addAll(arguments.getArgument());
+    return result;
   }
 
   /**
@@ -110,194 +264,392 @@ public class DistributedEnvironmentConfigurationProvider {
   }
 
   /**
-   * Returns the overrided distribution package read from the eosgi.dist.xml. The overrides section
-   * is processed based on the given useBy argument. This means that the returned objects
-   * {@link LaunchConfigType#getOverrides()} will return <code>null</code>.
+   * Returns the {@link LaunchConfigurationDTO} of a distribution configuration file for a
+   * {@link UseByType}. If {@link
+   * DistributedEnvironmentConfigurationProviderParameter#launchConfigSidecarEnabled} is set, the
+   * result is read from a binary sidecar file if it belongs to the current content of the
+   * distribution configuration file, otherwise the sidecar is written after the launch
+   * configuration is resolved. A sidecar that cannot be read or written is ignored.
    *
    * @param distConfigFile
    *          the file of the eosgi.dist.xml
    * @param useBy
    *          the type of the usage
-   * @return the distribution package
+   * @return the launch configuration or <code>null</code> if the file does not exist or it has no
+   *         launch configuration.
    */
-  public EnvironmentType getOverriddenDistributedEnvironmentConfig(
-      final File distConfigFile, final UseByType useBy) {
+  public LaunchConfigurationDTO getLaunchConfiguration(final File distConfigFile,
+      final UseByType useBy) {
 
-    EnvironmentType distributionPackageType = readDistConfig(distConfigFile);
+    if (!launchConfigSidecarEnabled) {
+      return getLaunchConfiguration(getOverriddenDistributedEnvironmentConfig(distConfigFile,
+          useBy, LAUNCH_CONFIG_SECTION));
+    }
 
-    if (distributionPackageType == null) {
+    DistConfigFingerprint fingerprint;
+    try {
+      fingerprint = DistConfigFingerprint.of(distConfigFile);
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          "Can't read distribution configuration file: " + distConfigFile.getAbsolutePath(), e);
+    }
+    if (fingerprint == null) {
       return null;
     }
 
-    LaunchConfigType launchConfig = distributionPackageType.getLaunchConfig();
-    if (launchConfig == null) {
-      return distributionPackageType;
+    File sidecarFile = LaunchConfigurationSidecar.getSidecarFile(distConfigFile, useBy);
+    try {
+      LaunchConfigurationDTO launchConfiguration =
+          LaunchConfigurationSidecar.read(sidecarFile, fingerprint);
+      if (launchConfiguration != null) {
+        return launchConfiguration;
+      }
+    } catch (IOException e) {
+      // Fall back to the distribution configuration file
     }
 
-    LaunchConfigOverridesType launchConfigOverrides = launchConfig.getOverrides();
-    if (launchConfigOverrides == null) {
-      return distributionPackageType;
+    LaunchConfigurationDTO launchConfiguration = getLaunchConfiguration(
+        getOverriddenDistributedEnvironmentConfig(distConfigFile, useBy, LAUNCH_CONFIG_SECTION));
+    if (launchConfiguration != null) {
+      try {
+        // The sidecar is only written if the file did not change while it was processed
+        if (fingerprint.equals(DistConfigFingerprint.of(distConfigFile))) {
+          LaunchConfigurationSidecar.write(sidecarFile, fingerprint, launchConfiguration);
+        }
+      } catch (IOException e) {
+        // The sidecar is only an optimization, e.g. the folder might be read-only
+      }
     }
+    return launchConfiguration;
+  }
 
-    for (LaunchConfigOverrideType launchConfigOverride : launchConfigOverrides.getOverride()) {
-      if (launchConfigOverride.getUseBy().equals(useBy)) {
+  /**
+   * Returns the launch configurations of all {@link UseByType}s from one read of the
+   * eosgi.dist.xml. Only the launch configuration section of the file is read.
+   *
+   * @param distConfigFile
+   *          the file of the eosgi.dist.xml
+   * @return the launch configurations in the order of {@link UseByType}. The map is empty if the
+   *         file does not exist or it has no launch configuration.
+   */
+  public Map<UseByType, LaunchConfigurationDTO> getLaunchConfigurations(
+      final File distConfigFile) {
 
-        launchConfig.setVmArguments(
-            overrideVmArguments(
-                launchConfig.getVmArguments(), launchConfigOverride.getVmArguments()));
+    Map<UseByType, LaunchConfigurationDTO> result = new EnumMap<>(UseByType.class);
+    for (Map.Entry<UseByType, EnvironmentType> entry : overrideAll(
+        readDistConfig(distConfigFile, LAUNCH_CONFIG_SECTION)).entrySet()) {
 
-        launchConfig.setProgramArguments(
-            overridePropgramArguments(
-                launchConfig.getProgramArguments(), launchConfigOverride.getProgramArguments()));
+      LaunchConfigurationDTO launchConfiguration = getLaunchConfiguration(entry.getValue());
+      if (launchConfiguration != null) {
+        result.put(entry.getKey(), launchConfiguration);
       }
     }
-
-    launchConfig.setOverrides(null);
-
-    normalizeArguments(launchConfig.getProgramArguments());
-    normalizeArguments(launchConfig.getVmArguments());
-
-    return distributionPackageType;
+    return result;
   }
 
-  private void normalizeArguments(final ArgumentsType arguments) {
-    if (arguments == null) {
-      return;
-    }
-    removeNullOrEmptyValues(arguments.getArgument());
-    Collections.sort(arguments.getArgument(), ENTRY_COMPARATOR);
+  /**
+   * Returns the overrided distribution package read from the eosgi.dist.xml. The overrides section
+   * is processed based on the given useBy argument. This means that the returned objects
+   * {@link LaunchConfigType#getOverrides()} will return <code>null</code>.
+   *
+   * @param distConfigFile
+   *          the file of the eosgi.dist.xml
+   * @param useBy
+   *          the type of the usage
+   * @return the distribution package
+   */
+  public EnvironmentType getOverriddenDistributedEnvironmentConfig(
+      final File distConfigFile, final UseByType useBy) {
+    return getOverriddenDistributedEnvironmentConfig(distConfigFile, useBy, ALL_SECTIONS);
   }
 
-  private List<EntryType> override(final List<EntryType> originals,
-      final List<EntryType> overrides) {
+  /**
+   * Returns the overrided distribution package read from the eosgi.dist.xml like
+   * {@link #getOverriddenDistributedEnvironmentConfig(File, UseByType)}, but only the given
+   * sections are read. The elements of the other sections are skipped while the file is read, so
+   * the time and the memory that the call needs depend only on the size of the selected sections.
+   * The parts of the returned environment that belong to the other sections are <code>null</code>.
+   *
+   * @param distConfigFile
+   *          the file of the eosgi.dist.xml
+   * @param useBy
+   *          the type of the usage
+   * @param sections
+   *          the sections to read.
+   * @return the distribution package
+   */
+  public EnvironmentType getOverriddenDistributedEnvironmentConfig(
+      final File distConfigFile, final UseByType useBy, final Set<DistConfigSection> sections) {
 
-    List<EntryType> rvals = new ArrayList<>(originals);
+    EnvironmentType distributionPackageType = readDistConfig(distConfigFile, sections);
 
-    for (EntryType override : overrides) {
+    if (distributionPackageType == null) {
+      return null;
+    }
 
-      String overridingKey = override.getKey();
-      String overridingValue = override.getValue();
+    return override(distributionPackageType, useBy);
+  }
 
-      boolean keyShouldBeDeleted = false;
-      boolean overridden = false;
+  /**
+   * Returns the overrided distribution packages of all {@link UseByType}s from one read of the
+   * eosgi.dist.xml. The returned environments have their own launch configuration, but they share
+   * the artifacts, parsables and runtime path regexes, so a modification on those parts is visible
+   * in all of the environments.
+   *
+   * @param distConfigFile
+   *          the file of the eosgi.dist.xml
+   * @return the distribution packages in the order of {@link UseByType} or an empty map if the file
+   *         does not exist.
+   * @see #getOverriddenDistributedEnvironmentConfig(File, UseByType)
+   */
+  public Map<UseByType, EnvironmentType> getOverriddenDistributedEnvironmentConfigs(
+      final File distConfigFile) {
+    return overrideAll(readDistConfig(distConfigFile, ALL_SECTIONS));
+  }
 
-      for (EntryType rval : rvals) {
-        String rvalKey = rval.getKey();
+  /**
+   * Returns the overrided distribution packages of several eosgi.dist.xml files. The files are
+   * processed concurrently on a fork-join pool that is created for this call and shut down before
+   * the method returns. If a file cannot be processed, its exception is collected and the other
+   * files are processed anyway.
+   *
+   * @param distConfigFiles
+   *          the eosgi.dist.xml files. A file that is listed more than once is processed only once.
+   * @param useBy
+   *          the type of the usage
+   * @param parallelism
+   *          the maximum number of files that are processed at the same time.
+   * @return the distribution packages and the failures by file.
+   * @see #getOverriddenDistributedEnvironmentConfig(File, UseByType)
+   */
+  public EnvironmentConfigBatchResult getOverriddenDistributedEnvironmentConfigs(
+      final Collection<File> distConfigFiles, final UseByType useBy, final int parallelism) {
 
-        if (overridingKey.equals(rvalKey)) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+    }
 
-          if (overridingValue == null) {
-            keyShouldBeDeleted = true;
-            break;
-          } else {
-            rval.setValue(overridingValue);
-            overridden = true;
-            break;
-          }
+    EnvironmentConfigBatchResult result = new EnvironmentConfigBatchResult();
+    result.environments = new LinkedHashMap<>();
+    result.failures = new LinkedHashMap<>();
+    if (distConfigFiles.isEmpty()) {
+      return result;
+    }
 
+    Map<File, RuntimeException> failures = new ConcurrentHashMap<>();
+    Map<File, ForkJoinTask<EnvironmentType>> tasks = new LinkedHashMap<>();
+    ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, distConfigFiles.size()));
+    try {
+      for (File distConfigFile : distConfigFiles) {
+        if (!tasks.containsKey(distConfigFile)) {
+          tasks.put(distConfigFile, pool.submit(() -> {
+            try {
+              return getOverriddenDistributedEnvironmentConfig(distConfigFile, useBy);
+            } catch (RuntimeException e) {
+              failures.put(distConfigFile, e);
+              return null;
+            }
+          }));
         }
-
-      }
-
-      if (keyShouldBeDeleted) {
-        removeKey(rvals, overridingKey);
       }
 
-      if (!overridden) {
-        rvals.add(override);
+      for (Entry<File, ForkJoinTask<EnvironmentType>> task : tasks.entrySet()) {
+        File distConfigFile = task.getKey();
+        EnvironmentType environment = task.getValue().join();
+        RuntimeException failure = failures.get(distConfigFile);
+        if (failure != null) {
+          result.failures.put(distConfigFile, failure);
+        } else {
+          result.environments.put(distConfigFile, environment);
+        }
       }
+    } finally {
+      pool.shutdown();
     }
+    return result;
+  }
 
-    return rvals;
+  /**
+   * Opens a cursor that iterates through the artifacts of the eosgi.dist.xml while the file is
+   * being parsed. The cursor always reads the file directly, it does not use the cache of the
+   * provider and the overrides do not affect the artifacts.
+   *
+   * @param distConfigFile
+   *          the file of the eosgi.dist.xml
+   * @return the cursor that must be closed by the caller. If the file does not exist, the cursor
+   *         has no elements.
+   */
+  public ArtifactCursor openArtifactCursor(final File distConfigFile) {
+    return new ArtifactCursor(distConfigFile);
   }
 
-  private ArgumentsType overridePropgramArguments(final ArgumentsType original,
-      final ArgumentsType override) {
+  /**
+   * Creates the overridden variant of an environment without modifying it. The returned
+   * environment has its own launch configuration and argument lists, all other parts are shared
+   * with the original environment.
+   */
+  private EnvironmentType override(final EnvironmentType environment, final UseByType useBy) {
+    EnvironmentType result = new EnvironmentType();
+    result.setId(environment.getId());
+    result.setFrameworkStartLevel(environment.getFrameworkStartLevel());
+    result.setInitialBundleStartLevel(environment.getInitialBundleStartLevel());
+    result.setArtifacts(environment.getArtifacts());
+    result.setParsables(environment.getParsables());
+    result.setRuntimePathRegexes(environment.getRuntimePathRegexes());
+
+    LaunchConfigType launchConfig = environment.getLaunchConfig();
+    if (launchConfig == null) {
+      return result;
+    }
 
-    List<EntryType> any = override(
-        original == null ? new ArrayList<EntryType>() : original.getArgument(),
-        override == null ? new ArrayList<EntryType>() : override.getArgument());
+    LaunchConfigType resultLaunchConfig = new LaunchConfigType();
+    resultLaunchConfig.setMainClass(launchConfig.getMainClass());
+    resultLaunchConfig.setClassPath(launchConfig.getClassPath());
+    result.setLaunchConfig(resultLaunchConfig);
 
-    ArgumentsType rval = new ArgumentsType();
-    rval.getArgument().addAll(any);
-    return rval;
-  }
+    LaunchConfigOverridesType launchConfigOverrides = launchConfig.getOverrides();
+    if (launchConfigOverrides == null) {
+      resultLaunchConfig.setVmArguments(copyArguments(launchConfig.getVmArguments()));
+      resultLaunchConfig.setProgramArguments(copyArguments(launchConfig.getProgramArguments()));
+      return result;
+    }
 
-  private ArgumentsType overrideVmArguments(final ArgumentsType original,
-      final ArgumentsType override) {
+    ArgumentsOverrider vmArguments = new ArgumentsOverrider(launchConfig.getVmArguments());
+    ArgumentsOverrider programArguments =
+        new ArgumentsOverrider(launchConfig.getProgramArguments());
 
-    List<EntryType> any = override(
-        original == null ? new ArrayList<EntryType>() : original.getArgument(),
-        override == null ? new ArrayList<EntryType>() : override.getArgument());
+    for (LaunchConfigOverrideType launchConfigOverride : launchConfigOverrides.getOverride()) {
+      if (launchConfigOverride.getUseBy().equals(useBy)) {
+        vmArguments.override(launchConfigOverride.getVmArguments());
+        programArguments.override(launchConfigOverride.getProgramArguments());
+      }
+    }
 
-    ArgumentsType rval = new ArgumentsType();
-    rval.getArgument().addAll(any);
-    return rval;
+    resultLaunchConfig.setVmArguments(vmArguments.toNormalizedArguments());
+    resultLaunchConfig.setProgramArguments(programArguments.toNormalizedArguments());
+    return result;
+  }
+
+  private Map<UseByType, EnvironmentType> overrideAll(final EnvironmentType environment) {
+    Map<UseByType, EnvironmentType> result = new EnumMap<>(UseByType.class);
+    if (environment == null) {
+      return result;
+    }
+
+    for (UseByType useBy : UseByType.values()) {
+      result.put(useBy, override(environment, useBy));
+    }
+    return result;
   }
 
   /**
-   * Returns the original distribution package read from the eosgi.dist.xml.
+   * Returns the original distribution package read from the eosgi.dist.xml. The returned object is
+   * not shared with any other caller, so it is free to modify. If not all sections are needed, the
+   * file is read with {@link StaxEnvironmentBinder} regardless of the reader mode, as that is the
+   * only way to skip the other sections.
    */
-  private EnvironmentType readDistConfig(final File distConfigFile) {
+  private EnvironmentType readDistConfig(final File distConfigFile,
+      final Set<DistConfigSection> sections) {
+
     if (!distConfigFile.exists()) {
       return null;
     }
 
-    try (FileInputStream fin = new FileInputStream(distConfigFile)) {
-      Unmarshaller unmarshaller = JAXB_CONTEXT.createUnmarshaller();
-
-      Object distributionPackage = unmarshaller.unmarshal(fin);
-      if (distributionPackage instanceof JAXBElement) {
+    Set<DistConfigSection> sectionsCopy = EnumSet.noneOf(DistConfigSection.class);
+    sectionsCopy.addAll(sections);
+    ReadKey key = new ReadKey(distConfigFile.toPath().toAbsolutePath().normalize().toString(),
+        sectionsCopy, readerMode, validating, cache);
+    return IN_FLIGHT_READS.load(key, () -> {
+      if (cache != null) {
+        return cache.get(distConfigFile, sectionsCopy, validating,
+            (in) -> unmarshal(in, distConfigFile, sectionsCopy));
+      }
 
-        @SuppressWarnings("unchecked")
-        JAXBElement<EnvironmentType> jaxbDistPack =
-            (JAXBElement<EnvironmentType>) distributionPackage;
-        distributionPackage = jaxbDistPack.getValue();
+      try (FileInputStream fin = new FileInputStream(distConfigFile)) {
+        return unmarshal(fin, distConfigFile, sectionsCopy);
+      } catch (IOException e) {
+        throw new UncheckedIOException(
+            "Can't read distribution configuration file: " + distConfigFile.getAbsolutePath(), e);
       }
-      if (distributionPackage instanceof EnvironmentType) {
-        return (EnvironmentType) distributionPackage;
+    });
+  }
+
+  private EnvironmentType unmarshal(final InputStream in, final File distConfigFile,
+      final Set<DistConfigSection> sections) {
+
+    ValidationErrorCollector errorCollector = validating ? new ValidationErrorCollector() : null;
+    EnvironmentType result;
+    try {
+      if (readerMode == DistConfigReaderMode.STAX || !sections.containsAll(ALL_SECTIONS)) {
+        result = unmarshalWithStax(in, sections, errorCollector);
       } else {
-        throw new IllegalStateException(
-            "The root element in the provided distribution configuration file "
-                + "is not the expected DistributionPackage element");
+        result = unmarshalWithJAXB(in, errorCollector);
+      }
+    } catch (XMLStreamException | JAXBException e) {
+      if (errorCollector != null) {
+        errorCollector.throwIfErrors(distConfigFile, e);
       }
-    } catch (
-
-    JAXBException e) {
       throw new IllegalStateException(
           "Failed to process already existing distribution configuration file: "
               + distConfigFile.getAbsolutePath(),
           e);
-    } catch (IOException e) {
-      throw new UncheckedIOException(
-          "Can't read distribution configuration file: " + distConfigFile.getAbsolutePath(), e);
     }
+    if (errorCollector != null) {
+      errorCollector.throwIfErrors(distConfigFile, null);
+    }
+    return result;
   }
 
-  private void removeKey(final List<EntryType> rvals, final String overridingKey) {
-    Iterator<EntryType> rvalIterator = rvals.iterator();
-    while (rvalIterator.hasNext()) {
-
-      EntryType rval = rvalIterator.next();
-      String rvalKey = rval.getKey();
-
-      if (rvalKey.equals(overridingKey)) {
-        rvalIterator.remove();
+  private EnvironmentType unmarshalWithJAXB(final InputStream in,
+      final ValidationErrorCollector errorCollector) throws JAXBException, XMLStreamException {
+
+    Unmarshaller unmarshaller = JAXBContextHolder.borrowUnmarshaller();
+    Object distributionPackage;
+    if (errorCollector == null) {
+      distributionPackage = unmarshaller.unmarshal(in);
+    } else {
+      // The schema of the unmarshaller would stop at the first error
+      ValidatingStreamReader reader = createValidatingReader(in, errorCollector);
+      try {
+        distributionPackage = unmarshaller.unmarshal(reader);
+        reader.finish();
+      } finally {
+        reader.close();
       }
     }
-  }
+    JAXBContextHolder.returnUnmarshaller(unmarshaller);
+    if (distributionPackage instanceof JAXBElement) {
 
-  private void removeNullOrEmptyValues(final List<EntryType> rvals) {
+      @SuppressWarnings("unchecked")
+      JAXBElement<EnvironmentType> jaxbDistPack =
+          (JAXBElement<EnvironmentType>) distributionPackage;
+      distributionPackage = jaxbDistPack.getValue();
+    }
+    if (distributionPackage instanceof EnvironmentType) {
+      return (EnvironmentType) distributionPackage;
+    } else {
+      throw new IllegalStateException(
+          "The root element in the provided distribution configuration file "
+              + "is not the expected DistributionPackage element");
+    }
+  }
 
-    Iterator<EntryType> rvalIterator = rvals.iterator();
-    while (rvalIterator.hasNext()) {
+  private EnvironmentType unmarshalWithStax(final InputStream in,
+      final Set<DistConfigSection> sections, final ValidationErrorCollector errorCollector)
+      throws XMLStreamException {
 
-      EntryType rval = rvalIterator.next();
-      String rvalValue = rval.getValue();
+    StaxEnvironmentBinder binder = new StaxEnvironmentBinder(sections);
+    if (errorCollector == null) {
+      return binder.read(in);
+    }
 
-      if (rvalValue == null || "".equals(rvalValue.trim())) {
-        rvalIterator.remove();
-      }
+    ValidatingStreamReader reader = createValidatingReader(in, errorCollector);
+    try {
+      EnvironmentType result = binder.read(reader);
+      reader.finish();
+      return result;
+    } finally {
+      reader.close();
     }
   }
 
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+/**
+ * Parameters of {@link DistributedEnvironmentConfigurationProvider}.
+ */
+public class DistributedEnvironmentConfigurationProviderParameter {
+
+  /**
+   * Optional cache of the parsed distribution configuration files. The same cache instance can be
+   * shared between several providers. If <code>null</code>, the file is parsed on every call.
+   */
+  public DistConfigCache cache;
+
+  /**
+   * Whether {@link DistributedEnvironmentConfigurationProvider#getLaunchConfiguration(java.io.File,
+   * org.everit.osgi.dev.dist.util.configuration.schema.UseByType)} should store the resolved launch
+   * configurations in binary sidecar files next to the distribution configuration file and read
+   * them from there as long as the distribution configuration file does not change.
+   */
+  public boolean launchConfigSidecarEnabled;
+
+  /**
+   * The way how the distribution configuration files are read. If <code>null</code>,
+   * {@link DistConfigReaderMode#JAXB} is used.
+   */
+  public DistConfigReaderMode readerMode;
+
+  /**
+   * Whether the distribution configuration files should be validated against the schema while
+   * they are read. An invalid file causes a {@link DistConfigValidationException} that lists all
+   * the errors with their line numbers. The schema is compiled only once and it is shared by all
+   * providers.
+   */
+  public boolean validating;
+
+}
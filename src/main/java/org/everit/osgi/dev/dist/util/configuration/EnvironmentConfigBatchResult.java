@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.File;
+import java.util.Map;
+
+import org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType;
+
+/**
+ * The result of reading several distribution configuration files at once. A file that could not
+ * be read does not prevent the processing of the other files, its exception is collected instead.
+ */
+public class EnvironmentConfigBatchResult {
+
+  /**
+   * The overridden environment configurations by their distribution configuration files in the
+   * order of the files in the request. A file that does not exist is mapped to <code>null</code>.
+   */
+  public Map<File, EnvironmentType> environments;
+
+  /**
+   * The exceptions of the distribution configuration files that could not be processed in the
+   * order of the files in the request.
+   */
+  public Map<File, RuntimeException> failures;
+
+  /**
+   * Checks whether all files were processed without an error.
+   *
+   * @return <code>true</code> if there are no failures, otherwise <code>false</code>.
+   */
+  public boolean isSuccessful() {
+    return failures.isEmpty();
+  }
+
+}
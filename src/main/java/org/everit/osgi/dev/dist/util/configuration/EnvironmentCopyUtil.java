@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.util.List;
+
+import org.everit.osgi.dev.dist.util.configuration.schema.AbstractLaunchConfigType;
+import org.everit.osgi.dev.dist.util.configuration.schema.ArgumentsType;
+import org.everit.osgi.dev.dist.util.configuration.schema.ArtifactType;
+import org.everit.osgi.dev.dist.util.configuration.schema.ArtifactsType;
+import org.everit.osgi.dev.dist.util.configuration.schema.EntryType;
+import org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType;
+import org.everit.osgi.dev.dist.util.configuration.schema.LaunchConfigOverrideType;
+import org.everit.osgi.dev.dist.util.configuration.schema.LaunchConfigOverridesType;
+import org.everit.osgi.dev.dist.util.configuration.schema.LaunchConfigType;
+import org.everit.osgi.dev.dist.util.configuration.schema.ParsableType;
+import org.everit.osgi.dev.dist.util.configuration.schema.ParsablesType;
+import org.everit.osgi.dev.dist.util.configuration.schema.PropertiesType;
+import org.everit.osgi.dev.dist.util.configuration.schema.RuntimePathRegexesType;
+
+/**
+ * Creates deep copies of the parsed distribution configuration model so the same parsed instance
+ * can be handed out several times without the callers seeing each other's modifications.
+ *
+ * <p>
+ * The getters of the lists in the schema classes create the list on their first call, so reading
+ * an instance might modify it. A copy leaves a list <code>null</code> if it is empty in the source,
+ * just like the unmarshaller does. An instance that is copied from several threads at the same
+ * time must be passed to {@link #initializeLists(EnvironmentType)} first.
+ */
+final class EnvironmentCopyUtil {
+
+  private static ArgumentsType copy(final ArgumentsType source) {
+    if (source == null) {
+      return null;
+    }
+    ArgumentsType result = new ArgumentsType();
+    if (!source.getArgument().isEmpty()) {
+      copyEntries(source.getArgument(), result.getArgument());
+    }
+    return result;
+  }
+
+  private static ArtifactType copy(final ArtifactType source) {
+    if (source == null) {
+      return null;
+    }
+    ArtifactType result = new ArtifactType();
+    result.setCoordinates(source.getCoordinates());
+    result.setDownloadURL(source.getDownloadURL());
+    result.setTargetFile(source.getTargetFile());
+    result.setTargetFolder(source.getTargetFolder());
+    PropertiesType properties = source.getProperties();
+    if (properties != null) {
+      PropertiesType propertiesCopy = new PropertiesType();
+      if (!properties.getProperty().isEmpty()) {
+        copyEntries(properties.getProperty(), propertiesCopy.getProperty());
+      }
+      result.setProperties(propertiesCopy);
+    }
+    return result;
+  }
+
+  private static ArtifactsType copy(final ArtifactsType source) {
+    if (source == null) {
+      return null;
+    }
+    ArtifactsType result = new ArtifactsType();
+    if (source.getArtifact().isEmpty()) {
+      return result;
+    }
+    List<ArtifactType> artifacts = result.getArtifact();
+    for (ArtifactType artifact : source.getArtifact()) {
+      artifacts.add(copy(artifact));
+    }
+    return result;
+  }
+
+  private static EntryType copy(final EntryType source) {
+    if (source == null) {
+      return null;
+    }
+    EntryType result = new EntryType();
+    result.setKey(source.getKey());
+    result.setValue(source.getValue());
+    return result;
+  }
+
+  private static LaunchConfigOverridesType copy(final LaunchConfigOverridesType source) {
+    if (source == null) {
+      return null;
+    }
+    LaunchConfigOverridesType result = new LaunchConfigOverridesType();
+    if (source.getOverride().isEmpty()) {
+      return result;
+    }
+    List<LaunchConfigOverrideType> overrides = result.getOverride();
+    for (LaunchConfigOverrideType override : source.getOverride()) {
+      if (override == null) {
+        overrides.add(null);
+      } else {
+        LaunchConfigOverrideType overrideCopy = new LaunchConfigOverrideType();
+        copyArguments(override, overrideCopy);
+        overrideCopy.setUseBy(override.getUseBy());
+        overrides.add(overrideCopy);
+      }
+    }
+    return result;
+  }
+
+  private static ParsablesType copy(final ParsablesType source) {
+    if (source == null) {
+      return null;
+    }
+    ParsablesType result = new ParsablesType();
+    if (source.getParsable().isEmpty()) {
+      return result;
+    }
+    List<ParsableType> parsables = result.getParsable();
+    for (ParsableType parsable : source.getParsable()) {
+      if (parsable == null) {
+        parsables.add(null);
+      } else {
+        ParsableType parsableCopy = new ParsableType();
+        parsableCopy.setEncoding(parsable.getEncoding());
+        parsableCopy.setPath(parsable.getPath());
+        parsableCopy.setTemplateEngine(parsable.getTemplateEngine());
+        parsables.add(parsableCopy);
+      }
+    }
+    return result;
+  }
+
+  private static RuntimePathRegexesType copy(final RuntimePathRegexesType source) {
+    if (source == null) {
+      return null;
+    }
+    RuntimePathRegexesType result = new RuntimePathRegexesType();
+    if (!source.getEntry().isEmpty()) {
+      copyEntries(source.getEntry(), result.getEntry());
+    }
+    return result;
+  }
+
+  private static void copyArguments(final AbstractLaunchConfigType source,
+      final AbstractLaunchConfigType target) {
+    target.setVmArguments(copy(source.getVmArguments()));
+    target.setProgramArguments(copy(source.getProgramArguments()));
+  }
+
+  private static void copyEntries(final List<EntryType> source, final List<EntryType> target) {
+    for (EntryType entry : source) {
+      target.add(copy(entry));
+    }
+  }
+
+  /**
+   * Creates a deep copy of an environment configuration.
+   *
+   * @param source
+   *          the environment configuration to copy, might be <code>null</code>.
+   * @return the copy that does not share any mutable object with the source or <code>null</code>
+   *         if the source was <code>null</code>.
+   */
+  public static EnvironmentType deepCopy(final EnvironmentType source) {
+    if (source == null) {
+      return null;
+    }
+    EnvironmentType result = new EnvironmentType();
+    result.setId(source.getId());
+    result.setFrameworkStartLevel(source.getFrameworkStartLevel());
+    result.setInitialBundleStartLevel(source.getInitialBundleStartLevel());
+    result.setArtifacts(copy(source.getArtifacts()));
+    result.setParsables(copy(source.getParsables()));
+    result.setRuntimePathRegexes(copy(source.getRuntimePathRegexes()));
+    result.setLaunchConfig(deepCopy(source.getLaunchConfig()));
+    return result;
+  }
+
+  /**
+   * Creates a deep copy of a launch configuration including its overrides.
+   *
+   * @param source
+   *          the launch configuration to copy, might be <code>null</code>.
+   * @return the copy or <code>null</code> if the source was <code>null</code>.
+   */
+  public static LaunchConfigType deepCopy(final LaunchConfigType source) {
+    if (source == null) {
+      return null;
+    }
+    LaunchConfigType result = new LaunchConfigType();
+    result.setMainClass(source.getMainClass());
+    result.setClassPath(source.getClassPath());
+    copyArguments(source, result);
+    result.setOverrides(copy(source.getOverrides()));
+    return result;
+  }
+
+  private static void initializeArgumentLists(final AbstractLaunchConfigType launchConfig) {
+    if (launchConfig.getVmArguments() != null) {
+      launchConfig.getVmArguments().getArgument();
+    }
+    if (launchConfig.getProgramArguments() != null) {
+      launchConfig.getProgramArguments().getArgument();
+    }
+  }
+
+  /**
+   * Creates all lazily created lists of an environment configuration, so later reads, including
+   * copying, do not modify it.
+   *
+   * @param environment
+   *          the environment configuration, might be <code>null</code>.
+   * @return the same environment configuration.
+   */
+  public static EnvironmentType initializeLists(final EnvironmentType environment) {
+    if (environment == null) {
+      return null;
+    }
+    if (environment.getArtifacts() != null) {
+      for (ArtifactType artifact : environment.getArtifacts().getArtifact()) {
+        if (artifact != null && artifact.getProperties() != null) {
+          artifact.getProperties().getProperty();
+        }
+      }
+    }
+    if (environment.getParsables() != null) {
+      environment.getParsables().getParsable();
+    }
+    if (environment.getRuntimePathRegexes() != null) {
+      environment.getRuntimePathRegexes().getEntry();
+    }
+    LaunchConfigType launchConfig = environment.getLaunchConfig();
+    if (launchConfig != null) {
+      initializeArgumentLists(launchConfig);
+      if (launchConfig.getOverrides() != null) {
+        for (LaunchConfigOverrideType override : launchConfig.getOverrides().getOverride()) {
+          if (override != null) {
+            initializeArgumentLists(override);
+          }
+        }
+      }
+    }
+    return environment;
+  }
+
+  private EnvironmentCopyUtil() {
+  }
+}
@@ -15,13 +15,102 @@
  */
 package org.everit.osgi.dev.dist.util.configuration;
 
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
 
 /**
  * Arguments that can be used to launch an environment.
+ *
+ * <p>
+ * The fingerprint of the configuration is calculated from the current values of the fields on
+ * every call and is meant to be persisted, for example by {@link LaunchFingerprintStore}. A
+ * <code>null</code> classpath or argument list has the same fingerprint as an empty one, just like
+ * {@link #diff(LaunchConfigurationDTO)} does not see a difference between them.
  */
 public class LaunchConfigurationDTO {
 
+  private static final String FINGERPRINT_HASH_ALGORITHM = "SHA-256";
+
+  private static List<String> classpathEntries(final String classpath) {
+    if (classpath == null || classpath.isEmpty()) {
+      return Collections.emptyList();
+    }
+    return Arrays.asList(classpath.split(Pattern.quote(File.pathSeparator)));
+  }
+
+  /**
+   * Calculates the multiset difference of two lists in both directions.
+   *
+   * @return whether the two lists have the same elements in a different order.
+   */
+  private static boolean diff(final List<String> existing, final List<String> current,
+      final List<String> added, final List<String> removed) {
+
+    List<String> existingList = (existing != null) ? existing : Collections.<String> emptyList();
+    List<String> currentList = (current != null) ? current : Collections.<String> emptyList();
+
+    subtract(currentList, existingList, added);
+    subtract(existingList, currentList, removed);
+    return added.isEmpty() && removed.isEmpty() && !existingList.equals(currentList);
+  }
+
+  /**
+   * Collects the elements of the minuend that are not in the subtrahend, taking the number of
+   * occurrences into account.
+   */
+  private static void subtract(final List<String> minuend, final List<String> subtrahend,
+      final List<String> result) {
+
+    Map<String, Integer> remainingCounts = new HashMap<>();
+    for (String element : subtrahend) {
+      remainingCounts.merge(element, 1, Integer::sum);
+    }
+    for (String element : minuend) {
+      Integer remainingCount = remainingCounts.get(element);
+      if (remainingCount == null || remainingCount == 0) {
+        result.add(element);
+      } else {
+        remainingCounts.put(element, remainingCount - 1);
+      }
+    }
+  }
+
+  private static void updateDigest(final MessageDigest digest, final int value) {
+    digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(value).array());
+  }
+
+  private static void updateDigest(final MessageDigest digest, final List<String> values) {
+    if (values == null) {
+      updateDigest(digest, 0);
+      return;
+    }
+    updateDigest(digest, values.size());
+    for (String value : values) {
+      updateDigest(digest, value);
+    }
+  }
+
+  private static void updateDigest(final MessageDigest digest, final String value) {
+    if (value == null) {
+      updateDigest(digest, -1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    updateDigest(digest, bytes.length);
+    digest.update(bytes);
+  }
+
   public String classpath;
 
   public String mainClass;
@@ -52,9 +141,68 @@ public class LaunchConfigurationDTO {
     this.programArguments = programArguments;
   }
 
+  private LaunchConfigurationFingerprint calculateFingerprint() {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance(FINGERPRINT_HASH_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    updateDigest(digest, mainClass);
+    updateDigest(digest, (classpath != null) ? classpath : "");
+    updateDigest(digest, vmArguments);
+    updateDigest(digest, programArguments);
+
+    ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+    return new LaunchConfigurationFingerprint(hash.getLong(), hash.getLong());
+  }
+
+  /**
+   * Lists the differences of this (the new) configuration compared to the existing one. The
+   * classpath is split into entries by {@link File#pathSeparator}.
+   *
+   * @param existingConfig
+   *          the existing configuration checked against this configuration. If <code>null</code>,
+   *          the configuration is compared to an empty one.
+   * @return the differences.
+   */
+  public LaunchConfigurationDiff diff(final LaunchConfigurationDTO existingConfig) {
+    LaunchConfigurationDTO existing = (existingConfig != null)
+        ? existingConfig
+        : new LaunchConfigurationDTO(null, null, null, null);
+
+    LaunchConfigurationDiff result = new LaunchConfigurationDiff();
+    result.mainClassChanged = !Objects.equals(existing.mainClass, mainClass);
+
+    result.addedClasspathEntries = new ArrayList<>();
+    result.removedClasspathEntries = new ArrayList<>();
+    result.classpathReordered = diff(classpathEntries(existing.classpath),
+        classpathEntries(classpath), result.addedClasspathEntries, result.removedClasspathEntries);
+
+    result.addedVmArguments = new ArrayList<>();
+    result.removedVmArguments = new ArrayList<>();
+    result.vmArgumentsReordered = diff(existing.vmArguments, vmArguments,
+        result.addedVmArguments, result.removedVmArguments);
+
+    result.addedProgramArguments = new ArrayList<>();
+    result.removedProgramArguments = new ArrayList<>();
+    result.programArgumentsReordered = diff(existing.programArguments, programArguments,
+        result.addedProgramArguments, result.removedProgramArguments);
+    return result;
+  }
+
+  /**
+   * Returns the fingerprint of the current values of the configuration.
+   *
+   * @return the fingerprint.
+   */
+  public LaunchConfigurationFingerprint getFingerprint() {
+    return calculateFingerprint();
+  }
+
   /**
-   * Checks if this (the new) configuration is changed compared to the existing. The jacoco
-   * configuration is ignored.
+   * Checks if this (the new) configuration is changed compared to the existing. The fields are
+   * compared directly, use {@link #diff(LaunchConfigurationDTO)} to find out what changed.
    *
    * @param existingConfig
    *          the existing configuration checked against this configrutaion
@@ -78,19 +226,19 @@ public class LaunchConfigurationDTO {
   }
 
   private boolean isClasspathChanged(final LaunchConfigurationDTO existingConfig) {
-    return !existingConfig.classpath.equals(classpath);
+    return !Objects.equals(existingConfig.classpath, classpath);
   }
 
   private boolean isMainClassChanged(final LaunchConfigurationDTO existingConfig) {
-    return !existingConfig.mainClass.equals(mainClass);
+    return !Objects.equals(existingConfig.mainClass, mainClass);
   }
 
   private boolean isPorgramArgumentsChanged(final LaunchConfigurationDTO existingConfig) {
-    return !existingConfig.programArguments.equals(programArguments);
+    return !Objects.equals(existingConfig.programArguments, programArguments);
   }
 
   private boolean isVmArgumentsChanged(final LaunchConfigurationDTO existingConfig) {
-    return !existingConfig.vmArguments.equals(vmArguments);
+    return !Objects.equals(existingConfig.vmArguments, vmArguments);
   }
 
 }
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.util.List;
+
+/**
+ * The differences between two {@link LaunchConfigurationDTO}s. The lists of added and removed
+ * elements are calculated as multiset differences in the order of the elements, so an element
+ * that occurs twice in the new configuration, but only once in the existing one, is listed once
+ * as added. The reordered flags show if the lists contain the same elements, but in another
+ * order.
+ *
+ * @see LaunchConfigurationDTO#diff(LaunchConfigurationDTO)
+ */
+public class LaunchConfigurationDiff {
+
+  public List<String> addedClasspathEntries;
+
+  public List<String> addedProgramArguments;
+
+  public List<String> addedVmArguments;
+
+  /**
+   * Whether the classpath entries are the same, but their order is different.
+   */
+  public boolean classpathReordered;
+
+  public boolean mainClassChanged;
+
+  /**
+   * Whether the program arguments are the same, but their order is different.
+   */
+  public boolean programArgumentsReordered;
+
+  public List<String> removedClasspathEntries;
+
+  public List<String> removedProgramArguments;
+
+  public List<String> removedVmArguments;
+
+  /**
+   * Whether the VM arguments are the same, but their order is different.
+   */
+  public boolean vmArgumentsReordered;
+
+  /**
+   * Checks whether the two launch configurations were the same.
+   *
+   * @return <code>true</code> if there is no difference, otherwise <code>false</code>.
+   */
+  public boolean isEmpty() {
+    return !mainClassChanged && !classpathReordered && !programArgumentsReordered
+        && !vmArgumentsReordered && addedClasspathEntries.isEmpty()
+        && addedProgramArguments.isEmpty() && addedVmArguments.isEmpty()
+        && removedClasspathEntries.isEmpty() && removedProgramArguments.isEmpty()
+        && removedVmArguments.isEmpty();
+  }
+
+}
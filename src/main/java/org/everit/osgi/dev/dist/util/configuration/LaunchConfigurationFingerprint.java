@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+/**
+ * A 128 bit fingerprint of a {@link LaunchConfigurationDTO}. The fingerprint is derived from the
+ * SHA-256 hash of the content of the launch configuration, so it is stable between JVMs and it can
+ * be persisted. Two launch configurations with the same content have the same fingerprint, while
+ * the chance that two different launch configurations have the same fingerprint is negligible.
+ */
+public final class LaunchConfigurationFingerprint {
+
+  private static final int HEX_LENGTH_OF_LONG = 16;
+
+  public final long high;
+
+  public final long low;
+
+  /**
+   * Constructor.
+   *
+   * @param high
+   *          the upper 64 bits of the fingerprint.
+   * @param low
+   *          the lower 64 bits of the fingerprint.
+   */
+  public LaunchConfigurationFingerprint(final long high, final long low) {
+    this.high = high;
+    this.low = low;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof LaunchConfigurationFingerprint)) {
+      return false;
+    }
+    LaunchConfigurationFingerprint other = (LaunchConfigurationFingerprint) obj;
+    return high == other.high && low == other.low;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (low ^ (low >>> Integer.SIZE));
+  }
+
+  private String toHex(final long value) {
+    String hex = Long.toHexString(value);
+    StringBuilder sb = new StringBuilder(HEX_LENGTH_OF_LONG);
+    for (int i = hex.length(); i < HEX_LENGTH_OF_LONG; i++) {
+      sb.append('0');
+    }
+    return sb.append(hex).toString();
+  }
+
+  /**
+   * Returns the fingerprint as 32 hexadecimal digits.
+   */
+  @Override
+  public String toString() {
+    return toHex(high) + toHex(low);
+  }
+
+}
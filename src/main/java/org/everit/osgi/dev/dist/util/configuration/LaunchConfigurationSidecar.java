@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.everit.osgi.dev.dist.util.DistConstants;
+import org.everit.osgi.dev.dist.util.configuration.schema.UseByType;
+
+/**
+ * Binary file next to the eosgi.dist.xml that holds the resolved {@link LaunchConfigurationDTO} of
+ * one {@link UseByType}. Reading the sidecar is much cheaper than parsing the XML and applying the
+ * overrides.
+ *
+ * <p>
+ * The sidecar starts with a magic number, a format version and the fingerprint of the XML it was
+ * created from: the size and the SHA-256 hash of the content. If the XML changes, the fingerprint
+ * does not match anymore and the sidecar is ignored. After the header come the main class, the
+ * classpath and the argument lists. Strings are written as a length and the UTF-8 bytes, a
+ * <code>null</code> string has the length -1.
+ *
+ * <p>
+ * The sidecar is written into a temporary file that is moved to its final place, so readers never
+ * see a half-written sidecar.
+ */
+final class LaunchConfigurationSidecar {
+
+  private static final int FORMAT_VERSION = 1;
+
+  private static final int MAGIC = 0x454F5347;
+
+  /**
+   * Returns the sidecar file of a distribution configuration file for a {@link UseByType}.
+   *
+   * @param distConfigFile
+   *          the distribution configuration file.
+   * @param useBy
+   *          the type of the usage.
+   * @return the sidecar file in the same folder as the distribution configuration file.
+   */
+  static File getSidecarFile(final File distConfigFile, final UseByType useBy) {
+    return new File(distConfigFile.getAbsoluteFile().getParentFile(), distConfigFile.getName()
+        + "." + useBy.name() + DistConstants.FILE_EXTENSION_LAUNCH_CONFIG_SIDECAR);
+  }
+
+  /**
+   * Reads the launch configuration from a sidecar file via a memory mapped buffer.
+   *
+   * @param sidecarFile
+   *          the sidecar file.
+   * @param fingerprint
+   *          the current fingerprint of the distribution configuration file.
+   * @return the launch configuration or <code>null</code> if the sidecar does not exist, it is
+   *         invalid or it belongs to another version of the distribution configuration file.
+   * @throws IOException
+   *           if the sidecar file exists but cannot be read.
+   */
+  static LaunchConfigurationDTO read(final File sidecarFile,
+      final DistConfigFingerprint fingerprint) throws IOException {
+
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(sidecarFile.toPath(), StandardOpenOption.READ)) {
+      buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+
+    try {
+      if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION
+          || buffer.getLong() != fingerprint.size) {
+        return null;
+      }
+      byte[] contentHash = new byte[DistConfigFingerprint.CONTENT_HASH_LENGTH];
+      buffer.get(contentHash);
+      if (!Arrays.equals(contentHash, fingerprint.contentHash)) {
+        return null;
+      }
+
+      String mainClass = readString(buffer);
+      String classpath = readString(buffer);
+      List<String> vmArguments = readStringList(buffer);
+      List<String> programArguments = readStringList(buffer);
+      if (buffer.hasRemaining()) {
+        return null;
+      }
+      return new LaunchConfigurationDTO(mainClass, classpath, vmArguments, programArguments);
+    } catch (BufferUnderflowException | IllegalArgumentException e) {
+      // Truncated or corrupt sidecar
+      return null;
+    }
+  }
+
+  private static String readString(final ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0) {
+      return null;
+    }
+    if (length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static List<String> readStringList(final ByteBuffer buffer) {
+    int size = buffer.getInt();
+    if (size < 0 || size > buffer.remaining() / Integer.BYTES) {
+      throw new BufferUnderflowException();
+    }
+    List<String> result = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      result.add(readString(buffer));
+    }
+    return result;
+  }
+
+  /**
+   * Writes the launch configuration into a sidecar file atomically.
+   *
+   * @param sidecarFile
+   *          the sidecar file.
+   * @param fingerprint
+   *          the fingerprint of the distribution configuration file that the launch configuration
+   *          was resolved from.
+   * @param launchConfiguration
+   *          the launch configuration.
+   * @throws IOException
+   *           if the sidecar file cannot be written.
+   */
+  static void write(final File sidecarFile, final DistConfigFingerprint fingerprint,
+      final LaunchConfigurationDTO launchConfiguration) throws IOException {
+
+    ByteArrayOutputStream bout = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bout)) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeLong(fingerprint.size);
+      out.write(fingerprint.contentHash);
+      writeString(out, launchConfiguration.mainClass);
+      writeString(out, launchConfiguration.classpath);
+      writeStringList(out, launchConfiguration.vmArguments);
+      writeStringList(out, launchConfiguration.programArguments);
+    }
+
+    Path target = sidecarFile.toPath();
+    Path tmpFile = Files.createTempFile(target.toAbsolutePath().getParent(),
+        sidecarFile.getName(), ".tmp");
+    try {
+      Files.write(tmpFile, bout.toByteArray());
+      try {
+        Files.move(tmpFile, target, StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmpFile, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tmpFile);
+    }
+  }
+
+  private static void writeString(final DataOutputStream out, final String value)
+      throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static void writeStringList(final DataOutputStream out, final List<String> values)
+      throws IOException {
+    if (values == null) {
+      out.writeInt(0);
+      return;
+    }
+    out.writeInt(values.size());
+    for (String value : values) {
+      writeString(out, value);
+    }
+  }
+
+  private LaunchConfigurationSidecar() {
+  }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persistent store of the fingerprints of the launch configurations that the environments were
+ * last launched with. The store makes it possible to decide whether a running environment is stale
+ * without parsing the distribution configuration and without attaching to the virtual machine of
+ * the environment, e.g. by comparing the stored fingerprint with the one of the launch
+ * configuration that is read from its sidecar file.
+ *
+ * <p>
+ * The records are keyed by the environment id (see
+ * {@link org.everit.osgi.dev.dist.util.DistConstants#SYSPROP_ENVIRONMENT_ID}) and the launch
+ * unique id (see {@link org.everit.osgi.dev.dist.util.DistConstants#SYSPROP_LAUNCH_UNIQUE_ID}).
+ * Only a 127 bit hash of the key is stored.
+ *
+ * <p>
+ * The file is memory mapped and it holds an open addressing hash table with linear probing: a
+ * header (magic number, format version, capacity, number of occupied slots) is followed by slots
+ * of the key hash and the fingerprint. The table grows in place when it becomes too full. Every
+ * operation locks the file, so the store can be used from several processes at the same time.
+ * Within one JVM, only one instance should be opened on the same file. Instances are thread-safe.
+ *
+ * <p>
+ * The changes are not forced to the disk, the store is a cache that may lose its last changes if
+ * the operating system crashes.
+ */
+public class LaunchFingerprintStore implements Closeable {
+
+  private static final int DEFAULT_CAPACITY = 256;
+
+  private static final int FORMAT_VERSION = 1;
+
+  private static final int HEADER_SIZE = 16;
+
+  private static final String KEY_HASH_ALGORITHM = "SHA-256";
+
+  private static final int MAGIC = 0x454C4650;
+
+  private static final int MAX_LOAD_PERCENTAGE = 75;
+
+  private static final int OFFSET_CAPACITY = 8;
+
+  private static final int OFFSET_OCCUPIED = 12;
+
+  private static final int PERCENT = 100;
+
+  private static final int SLOT_SIZE = 32;
+
+  /**
+   * Keys never have the highest bit of their upper half set to zero, so the key of empty slots
+   * (0, 0) and of deleted slots (0, 1) cannot collide with a real key.
+   */
+  private static final long TOMBSTONE_KEY_LOW = 1;
+
+  private static long[] hashKey(final String environmentId, final String launchUniqueId) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance(KEY_HASH_ALGORITHM);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    for (String part : new String[] { environmentId, launchUniqueId }) {
+      byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+      digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+      digest.update(bytes);
+    }
+    ByteBuffer hash = ByteBuffer.wrap(digest.digest());
+    return new long[] { hash.getLong() | Long.MIN_VALUE, hash.getLong() };
+  }
+
+  private static int slotOffset(final int slot) {
+    return HEADER_SIZE + slot * SLOT_SIZE;
+  }
+
+  private MappedByteBuffer buffer;
+
+  private final FileChannel channel;
+
+  private final File storeFile;
+
+  /**
+   * Opens the store. The file is created if it does not exist.
+   *
+   * @param storeFile
+   *          the file of the store, normally
+   *          {@link org.everit.osgi.dev.dist.util.DistConstants#FILE_NAME_LAUNCH_FINGERPRINT_STORE}
+   *          in the root folder of the distributions.
+   * @throws UncheckedIOException
+   *           if the file cannot be opened.
+   */
+  public LaunchFingerprintStore(final File storeFile) {
+    this.storeFile = storeFile;
+    try {
+      this.channel = FileChannel.open(storeFile.toPath(), StandardOpenOption.CREATE,
+          StandardOpenOption.READ, StandardOpenOption.WRITE);
+    } catch (IOException e) {
+      throw new UncheckedIOException(
+          "Could not open launch fingerprint store: " + storeFile.getAbsolutePath(), e);
+    }
+  }
+
+  private int capacity() {
+    return buffer.getInt(OFFSET_CAPACITY);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    buffer = null;
+    channel.close();
+  }
+
+  /**
+   * Maps the file if it is not mapped yet or if another process changed its size.
+   *
+   * @return <code>false</code> if the file is empty and it was not initialized.
+   */
+  private boolean ensureMapped(final boolean initialize) throws IOException {
+    long size = channel.size();
+    if (size == 0) {
+      if (!initialize) {
+        return false;
+      }
+      map(DEFAULT_CAPACITY);
+      buffer.putInt(0, MAGIC);
+      buffer.putInt(Integer.BYTES, FORMAT_VERSION);
+      buffer.putInt(OFFSET_CAPACITY, DEFAULT_CAPACITY);
+      buffer.putInt(OFFSET_OCCUPIED, 0);
+      return true;
+    }
+
+    if (buffer == null || buffer.capacity() != size) {
+      if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+        throw invalidStore();
+      }
+      buffer = channel.map(MapMode.READ_WRITE, 0, size);
+    }
+    if (buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != FORMAT_VERSION
+        || buffer.capacity() != slotOffset(capacity())) {
+      throw invalidStore();
+    }
+    return true;
+  }
+
+  /**
+   * Returns the slot of a key or a negative value if the key is not in the table.
+   */
+  private int find(final long[] key) {
+    int capacity = capacity();
+    int mask = capacity - 1;
+    int slot = (int) key[1] & mask;
+    for (int i = 0; i < capacity; i++) {
+      int offset = slotOffset(slot);
+      long keyHigh = buffer.getLong(offset);
+      long keyLow = buffer.getLong(offset + Long.BYTES);
+      if (keyHigh == 0 && keyLow == 0) {
+        return -1;
+      }
+      if (keyHigh == key[0] && keyLow == key[1]) {
+        return slot;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the fingerprint of the launch configuration that an environment was last launched
+   * with.
+   *
+   * @param environmentId
+   *          the id of the environment.
+   * @param launchUniqueId
+   *          the launch unique id of the environment.
+   * @return the fingerprint or <code>null</code> if there is no record for the environment.
+   */
+  public synchronized LaunchConfigurationFingerprint get(final String environmentId,
+      final String launchUniqueId) {
+
+    long[] key = hashKey(environmentId, launchUniqueId);
+    try {
+      FileLock lock = channel.lock(0, Long.MAX_VALUE, true);
+      try {
+        if (!ensureMapped(false)) {
+          return null;
+        }
+        int slot = find(key);
+        if (slot < 0) {
+          return null;
+        }
+        int offset = slotOffset(slot);
+        return new LaunchConfigurationFingerprint(buffer.getLong(offset + 2 * Long.BYTES),
+            buffer.getLong(offset + 3 * Long.BYTES));
+      } finally {
+        lock.release();
+      }
+    } catch (IOException e) {
+      throw storeFailed(e);
+    }
+  }
+
+  /**
+   * Rebuilds the table with a new capacity. Deleted slots are dropped.
+   */
+  private void grow(final int newCapacity) throws IOException {
+    List<long[]> entries = new ArrayList<>();
+    for (int slot = 0, n = capacity(); slot < n; slot++) {
+      int offset = slotOffset(slot);
+      long keyHigh = buffer.getLong(offset);
+      if (keyHigh != 0) {
+        entries.add(new long[] { keyHigh, buffer.getLong(offset + Long.BYTES),
+            buffer.getLong(offset + 2 * Long.BYTES), buffer.getLong(offset + 3 * Long.BYTES) });
+      }
+    }
+
+    map(newCapacity);
+    for (int offset = HEADER_SIZE; offset < buffer.capacity(); offset += Long.BYTES) {
+      buffer.putLong(offset, 0);
+    }
+    buffer.putInt(OFFSET_CAPACITY, newCapacity);
+    buffer.putInt(OFFSET_OCCUPIED, 0);
+    for (long[] entry : entries) {
+      insert(new long[] { entry[0], entry[1] },
+          new LaunchConfigurationFingerprint(entry[2], entry[3]));
+    }
+  }
+
+  /**
+   * Inserts a key that is not in the table yet into the first empty or deleted slot.
+   */
+  private void insert(final long[] key, final LaunchConfigurationFingerprint fingerprint) {
+    int mask = capacity() - 1;
+    int slot = (int) key[1] & mask;
+    while (true) {
+      int offset = slotOffset(slot);
+      long keyHigh = buffer.getLong(offset);
+      if (keyHigh == 0) {
+        if (buffer.getLong(offset + Long.BYTES) == 0) {
+          buffer.putInt(OFFSET_OCCUPIED, buffer.getInt(OFFSET_OCCUPIED) + 1);
+        }
+        writeSlot(offset, key[0], key[1], fingerprint);
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private IllegalStateException invalidStore() {
+    return new IllegalStateException(
+        "Invalid launch fingerprint store file: " + storeFile.getAbsolutePath());
+  }
+
+  /**
+   * Checks whether an environment was launched with another launch configuration than the current
+   * one.
+   *
+   * @param environmentId
+   *          the id of the environment.
+   * @param launchUniqueId
+   *          the launch unique id of the environment.
+   * @param currentLaunchConfiguration
+   *          the current launch configuration of the environment.
+   * @return <code>true</code> if the fingerprint of the current launch configuration differs from
+   *         the stored one or if there is no stored fingerprint for the environment.
+   */
+  public boolean isStale(final String environmentId, final String launchUniqueId,
+      final LaunchConfigurationDTO currentLaunchConfiguration) {
+    return !currentLaunchConfiguration.getFingerprint()
+        .equals(get(environmentId, launchUniqueId));
+  }
+
+  private void map(final int capacity) throws IOException {
+    buffer = channel.map(MapMode.READ_WRITE, 0, slotOffset(capacity));
+  }
+
+  /**
+   * Stores the fingerprint of the launch configuration that an environment was launched with.
+   *
+   * @param environmentId
+   *          the id of the environment.
+   * @param launchUniqueId
+   *          the launch unique id of the environment.
+   * @param fingerprint
+   *          the fingerprint of the launch configuration.
+   */
+  public synchronized void put(final String environmentId, final String launchUniqueId,
+      final LaunchConfigurationFingerprint fingerprint) {
+
+    long[] key = hashKey(environmentId, launchUniqueId);
+    try {
+      FileLock lock = channel.lock();
+      try {
+        ensureMapped(true);
+        int slot = find(key);
+        if (slot >= 0) {
+          writeSlot(slotOffset(slot), key[0], key[1], fingerprint);
+          return;
+        }
+
+        int capacity = capacity();
+        if ((buffer.getInt(OFFSET_OCCUPIED) + 1) * PERCENT > capacity * MAX_LOAD_PERCENTAGE) {
+          grow(capacity * 2);
+        }
+        insert(key, fingerprint);
+      } finally {
+        lock.release();
+      }
+    } catch (IOException e) {
+      throw storeFailed(e);
+    }
+  }
+
+  /**
+   * Removes the record of an environment.
+   *
+   * @param environmentId
+   *          the id of the environment.
+   * @param launchUniqueId
+   *          the launch unique id of the environment.
+   * @return <code>true</code> if there was a record for the environment.
+   */
+  public synchronized boolean remove(final String environmentId, final String launchUniqueId) {
+    long[] key = hashKey(environmentId, launchUniqueId);
+    try {
+      FileLock lock = channel.lock();
+      try {
+        if (!ensureMapped(false)) {
+          return false;
+        }
+        int slot = find(key);
+        if (slot < 0) {
+          return false;
+        }
+        writeSlot(slotOffset(slot), 0, TOMBSTONE_KEY_LOW, new LaunchConfigurationFingerprint(0, 0));
+        return true;
+      } finally {
+        lock.release();
+      }
+    } catch (IOException e) {
+      throw storeFailed(e);
+    }
+  }
+
+  private UncheckedIOException storeFailed(final IOException cause) {
+    return new UncheckedIOException(
+        "Could not access launch fingerprint store: " + storeFile.getAbsolutePath(), cause);
+  }
+
+  private void writeSlot(final int offset, final long keyHigh, final long keyLow,
+      final LaunchConfigurationFingerprint fingerprint) {
+    buffer.putLong(offset, keyHigh);
+    buffer.putLong(offset + Long.BYTES, keyLow);
+    buffer.putLong(offset + 2 * Long.BYTES, fingerprint.high);
+    buffer.putLong(offset + 3 * Long.BYTES, fingerprint.low);
+  }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.util.Map;
+
+/**
+ * One layer of a configuration stack that is merged with
+ * {@link MergeUtil#mergeOverrides(Map, java.util.List)}.
+ */
+public class MergeLayer {
+
+  /**
+   * The default values of the layer. The keys of this map are removed from the result of the
+   * layers below. Might be <code>null</code>.
+   */
+  public final Map<String, String> defaults;
+
+  /**
+   * The overriding values of the layer. Might be <code>null</code>.
+   */
+  public final Map<String, String> overrides;
+
+  public MergeLayer(final Map<String, String> defaults, final Map<String, String> overrides) {
+    this.defaults = defaults;
+    this.overrides = overrides;
+  }
+}
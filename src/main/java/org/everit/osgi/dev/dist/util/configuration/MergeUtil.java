@@ -15,12 +15,22 @@
  */
 package org.everit.osgi.dev.dist.util.configuration;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
 
 /**
- * Utility to merge "default" and "override" maps.
+ * Utility to merge "default" and "override" maps. The <code>merge*</code> methods return new
+ * sorted maps, while the <code>*View</code> methods return read-only views with the same content
+ * that resolve the lookups from the source maps and only build the sorted content when they are
+ * iterated. The views are cheaper if only a few keys are read from the result. The source maps must
+ * not be modified while a view is used.
+ *
+ * <p>
+ * Stacks of more than two layers can be merged in one pass with {@link #mergeDefaults(List)} and
+ * {@link #mergeOverrides(Map, List)}, which build only the result map. If all the layers are
+ * {@link java.util.SortedMap}s with natural ordering, the layers are merged with a k-way merge.
  */
 public final class MergeUtil {
 
@@ -51,6 +61,39 @@ public final class MergeUtil {
     return rval;
   }
 
+  /**
+   * Merges any number of default maps. The result is the same as if the maps were merged pairwise
+   * with {@link #mergeDefaults(Map, Map)} from the first one to the last one.
+   *
+   * @param defaults
+   *          the default maps from the lowest to the highest priority. The list might contain
+   *          <code>null</code> elements.
+   * @return the new map.
+   */
+  public static Map<String, String> mergeDefaults(final List<Map<String, String>> defaults) {
+    OverlayMap overlayMap = new OverlayMap();
+    for (Map<String, String> defaultMap : defaults) {
+      overlayMap.overlay(defaultMap);
+    }
+    return overlayMap.toTreeMap();
+  }
+
+  /**
+   * Returns a read-only view of the result of {@link #mergeDefaults(Map, Map)}.
+   *
+   * @param default1
+   *          map one
+   * @param default2
+   *          map two
+   * @return the view that has the same content as the result of {@link #mergeDefaults(Map, Map)}.
+   */
+  public static Map<String, String> mergeDefaultsView(
+      final Map<String, String> default1,
+      final Map<String, String> default2) {
+
+    return new OverlayMap().overlay(default1).overlay(default2);
+  }
+
   /**
    * Merges two override map with a default map.
    *
@@ -93,6 +136,52 @@ public final class MergeUtil {
     return MergeUtil.mergeDefaults(cleaned, override2);
   }
 
+  /**
+   * Merges an override map with any number of layers. The result is the same as if the layers were
+   * merged one after the other with {@link #mergeOverrides(Map, Map, Map)}, passing the result of
+   * the previous step as the first override map.
+   *
+   * @param override
+   *          the override map of the lowest layer. Might be <code>null</code>.
+   * @param layers
+   *          the layers from the lowest to the highest priority.
+   * @return the new map.
+   */
+  public static Map<String, String> mergeOverrides(final Map<String, String> override,
+      final List<MergeLayer> layers) {
+
+    OverlayMap overlayMap = new OverlayMap().overlay(override);
+    for (MergeLayer layer : layers) {
+      overlayMap.mask(layer.defaults).overlay(layer.overrides);
+    }
+    return overlayMap.toTreeMap();
+  }
+
+  /**
+   * Returns a read-only view of the result of {@link #mergeOverrides(Map, Map, Map)}.
+   *
+   * @param override1
+   *          overriding map one
+   * @param default2
+   *          default values map
+   * @param override2
+   *          overriging map two
+   * @return the view that has the same content as the result of
+   *         {@link #mergeOverrides(Map, Map, Map)}.
+   */
+  public static Map<String, String> mergeOverridesView(
+      final Map<String, String> override1,
+      final Map<String, String> default2,
+      final Map<String, String> override2) {
+
+    // Every key of the default map is removed from the first override map, either because its
+    // default value is empty or because the first override map contains it.
+    return new OverlayMap()
+        .overlay(override1)
+        .mask(default2)
+        .overlay(override2);
+  }
+
   private MergeUtil() {
   }
 
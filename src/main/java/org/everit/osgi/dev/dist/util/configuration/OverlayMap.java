@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Read-only view that stacks layers of maps. A lookup checks the layers from the top to the bottom
+ * and stops at the first layer that decides about the key: a value layer decides if it contains the
+ * key, a mask layer hides the key of all the layers below it. The sorted content of the view is
+ * only built when the view is iterated or its size is queried.
+ *
+ * <p>
+ * If all layers are {@link SortedMap}s with natural ordering, the content is built with a k-way
+ * merge of the layers, otherwise the layers are applied on a {@link TreeMap} one after the other.
+ *
+ * <p>
+ * The layers must not be modified while the view is used.
+ */
+final class OverlayMap extends AbstractMap<String, String> {
+
+  /**
+   * One layer of the view.
+   */
+  private static final class Layer {
+
+    /**
+     * The position of the layer from the bottom.
+     */
+    private final int index;
+
+    /**
+     * Whether the layer hides the keys of its map instead of providing values.
+     */
+    private final boolean mask;
+
+    private final Map<String, String> map;
+
+    Layer(final int index, final Map<String, String> map, final boolean mask) {
+      this.index = index;
+      this.map = map;
+      this.mask = mask;
+    }
+  }
+
+  /**
+   * Iterates the entries of a sorted layer during the k-way merge.
+   */
+  private static final class LayerCursor {
+
+    private Entry<String, String> current;
+
+    private final Iterator<Entry<String, String>> iterator;
+
+    private final Layer layer;
+
+    LayerCursor(final Layer layer) {
+      this.layer = layer;
+      this.iterator = layer.map.entrySet().iterator();
+    }
+
+    boolean advance() {
+      if (!iterator.hasNext()) {
+        return false;
+      }
+      current = iterator.next();
+      return true;
+    }
+  }
+
+  /**
+   * Orders the cursors by their current key and the upper layer first if the keys are the same.
+   */
+  private static int compareCursors(final LayerCursor cursor1, final LayerCursor cursor2) {
+    int result = cursor1.current.getKey().compareTo(cursor2.current.getKey());
+    if (result != 0) {
+      return result;
+    }
+    return Integer.compare(cursor2.layer.index, cursor1.layer.index);
+  }
+
+  private static void requeue(final PriorityQueue<LayerCursor> queue, final LayerCursor cursor) {
+    if (cursor.advance()) {
+      queue.add(cursor);
+    }
+  }
+
+  /**
+   * The layers from the bottom to the top.
+   */
+  private final List<Layer> layers = new ArrayList<>();
+
+  private SortedMap<String, String> materialized;
+
+  private OverlayMap addLayer(final Map<String, String> map, final boolean mask) {
+    if (map != null && !map.isEmpty()) {
+      layers.add(new Layer(layers.size(), map, mask));
+    }
+    return this;
+  }
+
+  @Override
+  public boolean containsKey(final Object key) {
+    return resolve(key) != null;
+  }
+
+  @Override
+  public Set<Entry<String, String>> entrySet() {
+    return materialize().entrySet();
+  }
+
+  @Override
+  public String get(final Object key) {
+    Layer layer = resolve(key);
+    return (layer != null) ? layer.map.get(key) : null;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return materialize().isEmpty();
+  }
+
+  private boolean isSorted() {
+    for (Layer layer : layers) {
+      if (!(layer.map instanceof SortedMap) || ((SortedMap<?, ?>) layer.map).comparator() != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Adds a layer on the top that hides the keys of the layers below it.
+   *
+   * @param maskingMap
+   *          the map whose keys are hidden. Might be <code>null</code>.
+   * @return this view.
+   */
+  OverlayMap mask(final Map<String, String> maskingMap) {
+    return addLayer(maskingMap, true);
+  }
+
+  private SortedMap<String, String> materialize() {
+    if (materialized == null) {
+      materialized = Collections.unmodifiableSortedMap(toTreeMap());
+    }
+    return materialized;
+  }
+
+  private TreeMap<String, String> mergeSorted() {
+    PriorityQueue<LayerCursor> queue =
+        new PriorityQueue<>(Math.max(1, layers.size()), OverlayMap::compareCursors);
+    for (Layer layer : layers) {
+      requeue(queue, new LayerCursor(layer));
+    }
+
+    TreeMap<String, String> result = new TreeMap<>();
+    while (!queue.isEmpty()) {
+      LayerCursor top = queue.poll();
+      String key = top.current.getKey();
+      if (!top.layer.mask) {
+        result.put(key, top.current.getValue());
+      }
+      requeue(queue, top);
+      while (!queue.isEmpty() && key.equals(queue.peek().current.getKey())) {
+        requeue(queue, queue.poll());
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Adds a layer on the top whose values override the values of the layers below it.
+   *
+   * @param values
+   *          the values of the layer. Might be <code>null</code>.
+   * @return this view.
+   */
+  OverlayMap overlay(final Map<String, String> values) {
+    return addLayer(values, false);
+  }
+
+  /**
+   * Returns the value layer that decides about a key or <code>null</code> if the key is not in
+   * the view.
+   */
+  private Layer resolve(final Object key) {
+    // A sorted layer would throw an exception for a null or non-String key
+    if (!(key instanceof String)) {
+      return null;
+    }
+    for (int i = layers.size() - 1; i >= 0; i--) {
+      Layer layer = layers.get(i);
+      if (layer.map.containsKey(key)) {
+        return layer.mask ? null : layer;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public int size() {
+    return materialize().size();
+  }
+
+  /**
+   * Builds a new map with the content of the view.
+   *
+   * @return the new map that is not connected to the view.
+   */
+  TreeMap<String, String> toTreeMap() {
+    if (isSorted()) {
+      return mergeSorted();
+    }
+    TreeMap<String, String> result = new TreeMap<>();
+    for (Layer layer : layers) {
+      if (layer.mask) {
+        result.keySet().removeAll(layer.map.keySet());
+      } else {
+        result.putAll(layer.map);
+      }
+    }
+    return result;
+  }
+
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.everit.osgi.dev.dist.util.configuration.schema.EntryType;
+import org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType;
+import org.everit.osgi.dev.dist.util.configuration.schema.RuntimePathRegexesType;
+
+/**
+ * Matches paths against all runtime path regular expressions of an environment in one call. A
+ * path matches a rule if the whole path matches its regular expression. The rules are tried in
+ * the order of their definition and the key of the first matching rule is reported.
+ *
+ * <p>
+ * The compiled patterns are shared between the matchers in a cache that evicts the least recently
+ * used pattern when it is full. The literal prefix and suffix of the
+ * expressions are extracted when it can be done safely, and a path is only handed to the regular
+ * expression engine if it starts and ends with them. Expressions without any special character
+ * are looked up by the path directly. The matcher is immutable and can be used from several
+ * threads.
+ */
+public final class RuntimePathMatcher {
+
+  /**
+   * A runtime path rule with its prefilter.
+   */
+  private static final class Rule {
+
+    private final String key;
+
+    private final Pattern pattern;
+
+    private final String prefix;
+
+    private final String suffix;
+
+    Rule(final String key, final Pattern pattern, final String prefix, final String suffix) {
+      this.key = key;
+      this.pattern = pattern;
+      this.prefix = prefix;
+      this.suffix = suffix;
+    }
+
+    boolean matches(final String path) {
+      return path.startsWith(prefix) && path.endsWith(suffix)
+          && pattern.matcher(path).matches();
+    }
+  }
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private static final float LOAD_FACTOR = 0.75f;
+
+  private static final int MAX_CACHED_PATTERN_COUNT = 1024;
+
+  private static final String METACHARACTERS = "\\[]{}()*+?.^$|";
+
+  /**
+   * The compiled patterns by their regular expressions in access order. Guarded by itself.
+   */
+  private static final Map<String, Pattern> PATTERN_CACHE =
+      new LinkedHashMap<String, Pattern>(INITIAL_CAPACITY, LOAD_FACTOR, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Pattern> eldest) {
+          return size() > MAX_CACHED_PATTERN_COUNT;
+        }
+      };
+
+  /**
+   * The escaped letters that stand for exactly one non-literal token.
+   */
+  private static final String SIMPLE_ESCAPES = "aAbBdDeGfhHnrRsStvVwWXzZ";
+
+  private static Pattern compile(final String regex) {
+    Pattern pattern;
+    synchronized (PATTERN_CACHE) {
+      pattern = PATTERN_CACHE.get(regex);
+    }
+    if (pattern == null) {
+      // Compiled outside of the lock, a concurrent compilation of the same expression is harmless
+      pattern = Pattern.compile(regex);
+      synchronized (PATTERN_CACHE) {
+        PATTERN_CACHE.put(regex, pattern);
+      }
+    }
+    return pattern;
+  }
+
+  private static boolean isLiteral(final String regex) {
+    for (int i = 0, n = regex.length(); i < n; i++) {
+      if (METACHARACTERS.indexOf(regex.charAt(i)) >= 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String literalPrefix(final List<Character> tokens) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0, n = tokens.size(); i < n && tokens.get(i) != null; i++) {
+      sb.append(tokens.get(i).charValue());
+    }
+    return sb.toString();
+  }
+
+  private static String literalSuffix(final List<Character> tokens) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = tokens.size() - 1; i >= 0 && tokens.get(i) != null; i--) {
+      sb.append(tokens.get(i).charValue());
+    }
+    return sb.reverse().toString();
+  }
+
+  private static int skipCharacterClass(final String regex, final int start) {
+    int i = start + 1;
+    if (i < regex.length() && regex.charAt(i) == '^') {
+      i++;
+    }
+    if (i < regex.length() && regex.charAt(i) == ']') {
+      i++;
+    }
+    int depth = 1;
+    while (i < regex.length()) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        i++;
+      } else if (c == '[') {
+        depth++;
+      } else if (c == ']') {
+        depth--;
+        if (depth == 0) {
+          return i;
+        }
+      }
+      i++;
+    }
+    return -1;
+  }
+
+  /**
+   * Splits a regular expression into tokens. A token is either the character that it matches
+   * literally or <code>null</code>. A quantified token becomes non-literal, as it might
+   * match zero or several times.
+   *
+   * @param regex
+   *          the regular expression.
+   * @return the tokens or <code>null</code> if the expression uses a construct that the tokenizer
+   *         does not understand.
+   */
+  static List<Character> tokenize(final String regex) {
+    if (regex.indexOf('|') >= 0 || regex.contains("(?") || regex.contains("\\Q")) {
+      return null;
+    }
+    List<Character> tokens = new ArrayList<>(regex.length());
+    int n = regex.length();
+    int i = 0;
+    if (n > 0 && regex.charAt(0) == '^') {
+      i++;
+    }
+    while (i < n) {
+      char c = regex.charAt(i);
+      if (c == '\\') {
+        if (i + 1 >= n) {
+          return null;
+        }
+        char escaped = regex.charAt(i + 1);
+        if (!Character.isLetterOrDigit(escaped)) {
+          tokens.add(escaped);
+        } else if (SIMPLE_ESCAPES.indexOf(escaped) >= 0) {
+          tokens.add(null);
+        } else {
+          return null;
+        }
+        i += 2;
+      } else if (c == '[') {
+        int end = skipCharacterClass(regex, i);
+        if (end < 0) {
+          return null;
+        }
+        tokens.add(null);
+        i = end + 1;
+      } else if (c == '*' || c == '+' || c == '?' || c == '{') {
+        if (!tokens.isEmpty()) {
+          tokens.set(tokens.size() - 1, null);
+        }
+        if (c == '{') {
+          int end = regex.indexOf('}', i);
+          if (end < 0) {
+            return null;
+          }
+          i = end;
+        }
+        tokens.add(null);
+        i++;
+      } else if (c == '$' && i == n - 1) {
+        i++;
+      } else {
+        tokens.add((METACHARACTERS.indexOf(c) >= 0) ? null : Character.valueOf(c));
+        i++;
+      }
+    }
+    return tokens;
+  }
+
+  private final Map<String, Integer> literalRuleIndexes;
+
+  private final Rule[] rules;
+
+  /**
+   * Creates the matcher of the runtime path regular expressions of an environment.
+   *
+   * @param environment
+   *          the environment configuration. It might have no runtime path regular expressions.
+   * @throws IllegalArgumentException
+   *           if one of the regular expressions is invalid.
+   */
+  public RuntimePathMatcher(final EnvironmentType environment) {
+    this(environment.getRuntimePathRegexes());
+  }
+
+  /**
+   * Creates the matcher of runtime path regular expressions. The entries without a value are
+   * ignored.
+   *
+   * @param runtimePathRegexes
+   *          the regular expressions by their keys, might be <code>null</code>.
+   * @throws IllegalArgumentException
+   *           if one of the regular expressions is invalid.
+   */
+  public RuntimePathMatcher(final RuntimePathRegexesType runtimePathRegexes) {
+    List<Rule> ruleList = new ArrayList<>();
+    Map<String, Integer> literalIndexes = new HashMap<>();
+    if (runtimePathRegexes != null) {
+      for (EntryType entry : runtimePathRegexes.getEntry()) {
+        if (entry == null || entry.getValue() == null) {
+          continue;
+        }
+        String regex = entry.getValue();
+        Pattern pattern;
+        try {
+          pattern = compile(regex);
+        } catch (PatternSyntaxException e) {
+          throw new IllegalArgumentException(
+              "Invalid runtime path regular expression with key '" + entry.getKey() + "': "
+                  + regex,
+              e);
+        }
+        if (isLiteral(regex)) {
+          literalIndexes.putIfAbsent(regex, ruleList.size());
+        }
+        List<Character> tokens = tokenize(regex);
+        String prefix = (tokens != null) ? literalPrefix(tokens) : "";
+        String suffix = (tokens != null) ? literalSuffix(tokens) : "";
+        ruleList.add(new Rule(entry.getKey(), pattern, prefix, suffix));
+      }
+    }
+    this.rules = ruleList.toArray(new Rule[ruleList.size()]);
+    this.literalRuleIndexes = literalIndexes;
+  }
+
+  /**
+   * Returns the key of the first rule that matches a path.
+   *
+   * @param path
+   *          the path relative to the root folder of the distribution with slash separators.
+   * @return the key of the first matching rule or <code>null</code> if no rule matches.
+   */
+  public String match(final String path) {
+    Integer literalRuleIndex = literalRuleIndexes.get(path);
+    int end = (literalRuleIndex != null) ? literalRuleIndex : rules.length;
+    for (int i = 0; i < end; i++) {
+      if (rules[i].matches(path)) {
+        return rules[i].key;
+      }
+    }
+    return (literalRuleIndex != null) ? rules[literalRuleIndex].key : null;
+  }
+
+  /**
+   * Returns the keys of all rules that match a path.
+   *
+   * @param path
+   *          the path relative to the root folder of the distribution with slash separators.
+   * @return the keys of the matching rules in the order of their definition.
+   */
+  public List<String> matchAll(final String path) {
+    List<String> result = null;
+    for (Rule rule : rules) {
+      if (rule.matches(path)) {
+        if (result == null) {
+          result = new ArrayList<>(1);
+        }
+        result.add(rule.key);
+      }
+    }
+    return (result != null) ? result : Collections.<String> emptyList();
+  }
+
+  /**
+   * Checks whether any rule matches a path.
+   *
+   * @param path
+   *          the path relative to the root folder of the distribution with slash separators.
+   * @return <code>true</code> if the path is a runtime path.
+   */
+  public boolean matches(final String path) {
+    return match(path) != null;
+  }
+
+}
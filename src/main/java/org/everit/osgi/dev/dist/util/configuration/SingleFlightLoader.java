@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Makes sure that concurrent loads of the same key share one computation. The thread that comes
+ * first runs the loader, the threads that arrive while it is running wait for its result.
+ *
+ * <p>
+ * As the loaded values are mutable, the thread that ran the loader creates a copy for every caller
+ * if other threads waited for the value, so the callers never share any object. The original is
+ * only accessed by the thread that ran the loader.
+ *
+ * @param <K>
+ *          the type of the keys.
+ * @param <V>
+ *          the type of the loaded values.
+ */
+final class SingleFlightLoader<K, V> {
+
+  /**
+   * A running load.
+   */
+  private static final class Flight<V> {
+
+    private boolean closed = false;
+
+    private final Queue<V> copies = new ConcurrentLinkedQueue<>();
+
+    private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+    private int waitingCount = 0;
+  }
+
+  private final UnaryOperator<V> copier;
+
+  private final ConcurrentMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor.
+   *
+   * @param copier
+   *          creates an independent copy of a loaded value. It is not called with
+   *          <code>null</code>.
+   */
+  SingleFlightLoader(final UnaryOperator<V> copier) {
+    this.copier = Objects.requireNonNull(copier);
+  }
+
+  /**
+   * Returns the number of threads that wait for the running load of a key.
+   *
+   * @param key
+   *          the key.
+   * @return the number of waiting threads or 0 if there is no running load for the key.
+   */
+  int getWaitingCount(final K key) {
+    Flight<V> flight = flights.get(key);
+    if (flight == null) {
+      return 0;
+    }
+    synchronized (flight) {
+      return flight.waitingCount;
+    }
+  }
+
+  private V lead(final K key, final Flight<V> flight, final Supplier<V> loader) {
+    try {
+      V value;
+      int waitingCount;
+      try {
+        value = loader.get();
+      } finally {
+        flights.remove(key, flight);
+        synchronized (flight) {
+          flight.closed = true;
+          waitingCount = flight.waitingCount;
+        }
+      }
+      if (value == null || waitingCount == 0) {
+        flight.result.complete(null);
+        return value;
+      }
+      for (int i = 0; i < waitingCount; i++) {
+        flight.copies.add(copier.apply(value));
+      }
+      flight.result.complete(null);
+      // Copying might have touched the original, so it is not handed out either
+      return copier.apply(value);
+    } catch (RuntimeException | Error e) {
+      flight.result.completeExceptionally(e);
+      throw e;
+    }
+  }
+
+  /**
+   * Loads the value of a key or waits for the load that is already running for the same key.
+   *
+   * @param key
+   *          the key that identifies the value.
+   * @param loader
+   *          the function that loads the value if there is no running load for the key.
+   * @return the loaded value that is not shared with any other caller.
+   */
+  public V load(final K key, final Supplier<V> loader) {
+    while (true) {
+      Flight<V> flight = new Flight<>();
+      Flight<V> runningFlight = flights.putIfAbsent(key, flight);
+      if (runningFlight == null) {
+        return lead(key, flight, loader);
+      }
+
+      boolean joined;
+      synchronized (runningFlight) {
+        joined = !runningFlight.closed;
+        if (joined) {
+          runningFlight.waitingCount++;
+        }
+      }
+      if (joined) {
+        return waitFor(runningFlight);
+      }
+    }
+  }
+
+  private V waitFor(final Flight<V> flight) {
+    try {
+      flight.result.join();
+      return flight.copies.poll();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
+
+}
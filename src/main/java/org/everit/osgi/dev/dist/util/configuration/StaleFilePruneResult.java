@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of pruning the stale files of a distribution directory. A file or directory that
+ * could not be processed does not stop the pruning, its exception is collected instead.
+ */
+public class StaleFilePruneResult {
+
+  /**
+   * The time in nanoseconds that deleting the stale files took. Zero in dry-run mode.
+   */
+  public long deleteNanos;
+
+  /**
+   * The paths of the files and directories that could not be listed or deleted with their
+   * exceptions, relative to the root folder of the distribution and sorted by path.
+   */
+  public Map<String, IOException> failures;
+
+  /**
+   * The number of regular files and links that were checked.
+   */
+  public int scannedFileCount;
+
+  /**
+   * The time in nanoseconds that walking the directory tree and checking the files took.
+   */
+  public long scanNanos;
+
+  /**
+   * The paths of the stale files relative to the root folder of the distribution with slash
+   * separators in ascending order. In dry-run mode, these files still exist.
+   */
+  public List<String> staleFiles;
+
+  /**
+   * Checks whether all files were processed without an error.
+   *
+   * @return <code>true</code> if there are no failures, otherwise <code>false</code>.
+   */
+  public boolean isSuccessful() {
+    return failures.isEmpty();
+  }
+
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.everit.osgi.dev.dist.util.DistConstants;
+import org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType;
+import org.everit.osgi.dev.dist.util.configuration.schema.ParsableType;
+
+/**
+ * Finds and deletes the files of a distribution directory that are not part of the environment
+ * anymore. A file is kept if
+ * <ul>
+ * <li>an artifact of the environment is copied to its path,</li>
+ * <li>it is one of the parsables of the environment,</li>
+ * <li>it matches one of the runtime path regular expressions of the environment or</li>
+ * <li>its name starts with {@link DistConstants#FILE_NAME_EOSGI_DIST_CONFIG} or it is the
+ * {@link DistConstants#FILE_NAME_LAUNCH_FINGERPRINT_STORE}.</li>
+ * </ul>
+ * All other regular files and links are stale. Directories are never deleted and links to
+ * directories are not followed. The directory tree is walked by several threads, each directory
+ * is listed by a separate task.
+ */
+public final class StaleFilePruner {
+
+  /**
+   * Lists a directory, checks its files and forks a task for each subdirectory.
+   */
+  private final class DirectoryTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Path directory;
+
+    private final Map<String, IOException> failures;
+
+    private final Path root;
+
+    private final AtomicInteger scannedFileCount;
+
+    private final Queue<Path> staleFiles;
+
+    DirectoryTask(final Path root, final Path directory, final Queue<Path> staleFiles,
+        final AtomicInteger scannedFileCount, final Map<String, IOException> failures) {
+      this.root = root;
+      this.directory = directory;
+      this.staleFiles = staleFiles;
+      this.scannedFileCount = scannedFileCount;
+      this.failures = failures;
+    }
+
+    @Override
+    protected void compute() {
+      List<DirectoryTask> subtasks = new ArrayList<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+        for (Path path : stream) {
+          if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            subtasks.add(
+                new DirectoryTask(root, path, staleFiles, scannedFileCount, failures));
+          } else {
+            scannedFileCount.incrementAndGet();
+            if (isStale(relativePath(root, path))) {
+              staleFiles.add(path);
+            }
+          }
+        }
+      } catch (IOException e) {
+        failures.put(relativePath(root, directory), e);
+      }
+      invokeAll(subtasks);
+    }
+  }
+
+  private static String relativePath(final Path root, final Path path) {
+    return ArtifactIndex.normalizeTargetPath(root.relativize(path).toString());
+  }
+
+  private final ArtifactIndex artifactIndex;
+
+  private final Set<String> parsablePaths;
+
+  private final RuntimePathMatcher runtimePathMatcher;
+
+  /**
+   * Creates the pruner of the distribution directory of an environment.
+   *
+   * @param environment
+   *          the environment configuration that lists the files that must be kept.
+   * @throws IllegalArgumentException
+   *           if one of the runtime path regular expressions is invalid.
+   */
+  public StaleFilePruner(final EnvironmentType environment) {
+    this.artifactIndex = new ArtifactIndex(environment);
+    this.runtimePathMatcher = new RuntimePathMatcher(environment);
+    Set<String> parsables = new HashSet<>();
+    if (environment.getParsables() != null) {
+      for (ParsableType parsable : environment.getParsables().getParsable()) {
+        if (parsable != null && parsable.getPath() != null) {
+          parsables.add(ArtifactIndex.normalizeTargetPath(parsable.getPath()));
+        }
+      }
+    }
+    this.parsablePaths = parsables;
+  }
+
+  private void delete(final Path root, final List<Path> staleFiles,
+      final Map<String, IOException> failures, final ForkJoinPool pool) {
+    try {
+      pool.submit(() -> staleFiles.parallelStream().forEach((path) -> {
+        try {
+          Files.deleteIfExists(path);
+        } catch (IOException e) {
+          failures.put(relativePath(root, path), e);
+        }
+      })).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while deleting stale files of " + root, e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Error during deleting stale files of " + root,
+          e.getCause());
+    }
+  }
+
+  /**
+   * Checks whether a file of the distribution is stale.
+   *
+   * @param relativePath
+   *          the path of the file relative to the root folder of the distribution. Both slashes
+   *          and backslashes are accepted.
+   * @return <code>true</code> if the file is not part of the environment anymore.
+   */
+  public boolean isStale(final String relativePath) {
+    String path = ArtifactIndex.normalizeTargetPath(relativePath);
+    if (path.startsWith(DistConstants.FILE_NAME_EOSGI_DIST_CONFIG)
+        || path.equals(DistConstants.FILE_NAME_LAUNCH_FINGERPRINT_STORE)) {
+      return false;
+    }
+    return artifactIndex.getByTargetPath(path) == null && !parsablePaths.contains(path)
+        && !runtimePathMatcher.matches(path);
+  }
+
+  /**
+   * Walks the distribution directory of the environment and deletes the stale files.
+   *
+   * @param environmentFolder
+   *          the root folder of the distribution.
+   * @param parameter
+   *          the parameters of the pruning.
+   * @return the stale files, the failures and the timings.
+   */
+  public StaleFilePruneResult prune(final Path environmentFolder,
+      final StaleFilePrunerParameter parameter) {
+
+    Queue<Path> staleFileQueue = new ConcurrentLinkedQueue<>();
+    AtomicInteger scannedFileCount = new AtomicInteger();
+    Map<String, IOException> failures = new ConcurrentHashMap<>();
+    StaleFilePruneResult result = new StaleFilePruneResult();
+
+    ForkJoinPool pool = new ForkJoinPool(Math.max(1, parameter.parallelism));
+    try {
+      long scanStartTime = System.nanoTime();
+      pool.invoke(new DirectoryTask(environmentFolder, environmentFolder, staleFileQueue,
+          scannedFileCount, failures));
+      result.scanNanos = System.nanoTime() - scanStartTime;
+
+      List<Path> staleFiles = new ArrayList<>(staleFileQueue);
+      if (!parameter.dryRun && !staleFiles.isEmpty()) {
+        long deleteStartTime = System.nanoTime();
+        delete(environmentFolder, staleFiles, failures, pool);
+        result.deleteNanos = System.nanoTime() - deleteStartTime;
+      }
+
+      List<String> stalePaths = new ArrayList<>(staleFiles.size());
+      for (Path staleFile : staleFiles) {
+        stalePaths.add(relativePath(environmentFolder, staleFile));
+      }
+      Collections.sort(stalePaths);
+      result.staleFiles = stalePaths;
+      result.scannedFileCount = scannedFileCount.get();
+      result.failures = new TreeMap<>(failures);
+      return result;
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+}
@@ -0,0 +1,508 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.InputStream;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.everit.osgi.dev.dist.util.configuration.schema.AbstractLaunchConfigType;
+import org.everit.osgi.dev.dist.util.configuration.schema.ArgumentsType;
+import org.everit.osgi.dev.dist.util.configuration.schema.ArtifactType;
+import org.everit.osgi.dev.dist.util.configuration.schema.ArtifactsType;
+import org.everit.osgi.dev.dist.util.configuration.schema.EntryType;
+import org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType;
+import org.everit.osgi.dev.dist.util.configuration.schema.LaunchConfigOverrideType;
+import org.everit.osgi.dev.dist.util.configuration.schema.LaunchConfigOverridesType;
+import org.everit.osgi.dev.dist.util.configuration.schema.LaunchConfigType;
+import org.everit.osgi.dev.dist.util.configuration.schema.ParsableType;
+import org.everit.osgi.dev.dist.util.configuration.schema.ParsablesType;
+import org.everit.osgi.dev.dist.util.configuration.schema.PropertiesType;
+import org.everit.osgi.dev.dist.util.configuration.schema.RuntimePathRegexesType;
+import org.everit.osgi.dev.dist.util.configuration.schema.TemplateEnginesType;
+import org.everit.osgi.dev.dist.util.configuration.schema.UseByType;
+
+/**
+ * Fills the classes of the <code>configuration.schema</code> package from an
+ * {@link XMLStreamReader} without creating a JAXB context. The result is the same as the one that
+ * JAXB gives for the same document: unknown elements are skipped, text content is not trimmed,
+ * lists are only created when they have at least one element and nil arguments are added as
+ * <code>null</code>.
+ *
+ * <p>
+ * The binder can be restricted to some {@link DistConfigSection}s. The elements of the other
+ * sections are skipped on the stream level, no object is created for them and they stay
+ * <code>null</code> in the result.
+ *
+ * <p>
+ * The strings of the result are canonicalized with {@link DistConfigInterner#SHARED}.
+ */
+final class StaxEnvironmentBinder {
+
+  private static final String ELEMENT_ENVIRONMENT = "environment";
+
+  static final String NAMESPACE = "http://everit.org/eosgi/dist/definition/4.0.0";
+
+  private static final XMLInputFactory XML_INPUT_FACTORY = createXMLInputFactory();
+
+  private final Set<DistConfigSection> sections;
+
+  private static XMLInputFactory createXMLInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    return factory;
+  }
+
+  /**
+   * Creates a reader on a distribution configuration document.
+   *
+   * @param in
+   *          the stream of the document. It is not closed by the reader.
+   * @return the reader that stands on the start of the document.
+   * @throws XMLStreamException
+   *           if the reader cannot be created.
+   */
+  static XMLStreamReader createXMLStreamReader(final InputStream in) throws XMLStreamException {
+    return XML_INPUT_FACTORY.createXMLStreamReader(in);
+  }
+
+  private static boolean isNil(final XMLStreamReader reader) {
+    String nil = reader.getAttributeValue(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "nil");
+    return nil != null && ("true".equals(nil.trim()) || "1".equals(nil.trim()));
+  }
+
+  private static boolean isSchemaElement(final XMLStreamReader reader, final String localName) {
+    return localName.equals(reader.getLocalName()) && NAMESPACE.equals(reader.getNamespaceURI());
+  }
+
+  /**
+   * Moves the reader to the start of the next child element of the current element.
+   *
+   * @return <code>true</code> if the reader stands on the start of a child element,
+   *         <code>false</code> if it reached the end of the current element.
+   */
+  private static boolean nextChildElement(final XMLStreamReader reader)
+      throws XMLStreamException {
+    while (reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        return true;
+      }
+      if (event == XMLStreamConstants.END_ELEMENT) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  private static Integer parseInteger(final XMLStreamReader reader, final String attributeName)
+      throws XMLStreamException {
+    String value = reader.getAttributeValue(null, attributeName);
+    if (value == null) {
+      return null;
+    }
+    try {
+      return Integer.valueOf(value.trim());
+    } catch (NumberFormatException e) {
+      throw new XMLStreamException("Not a number in attribute " + attributeName + ": " + value,
+          reader.getLocation(), e);
+    }
+  }
+
+  private static String readText(final XMLStreamReader reader) throws XMLStreamException {
+    StringBuilder sb = null;
+    String text = null;
+    while (reader.hasNext()) {
+      int event = reader.next();
+      switch (event) {
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+        case XMLStreamConstants.ENTITY_REFERENCE:
+          if (text == null) {
+            text = reader.getText();
+          } else {
+            if (sb == null) {
+              sb = new StringBuilder(text);
+            }
+            sb.append(reader.getText());
+          }
+          break;
+        case XMLStreamConstants.START_ELEMENT:
+          skipElement(reader);
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          if (sb != null) {
+            return sb.toString();
+          }
+          return (text != null) ? text : "";
+        default:
+          break;
+      }
+    }
+    throw new XMLStreamException("Unexpected end of document", reader.getLocation());
+  }
+
+  /**
+   * Skips the current element with all of its descendants. The reader stands on the end of the
+   * skipped element after the call.
+   */
+  private static void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+    int depth = 1;
+    while (depth > 0 && reader.hasNext()) {
+      int event = reader.next();
+      if (event == XMLStreamConstants.START_ELEMENT) {
+        depth++;
+      } else if (event == XMLStreamConstants.END_ELEMENT) {
+        depth--;
+      }
+    }
+  }
+
+  private static TemplateEnginesType toTemplateEngine(final String value) {
+    if (value == null) {
+      return null;
+    }
+    try {
+      return TemplateEnginesType.fromValue(value.trim());
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  private static UseByType toUseBy(final String value) {
+    try {
+      return UseByType.fromValue(value);
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Creates a binder that reads all sections.
+   */
+  StaxEnvironmentBinder() {
+    this(EnumSet.allOf(DistConfigSection.class));
+  }
+
+  /**
+   * Creates a binder that reads only the given sections.
+   *
+   * @param sections
+   *          the sections to read.
+   */
+  StaxEnvironmentBinder(final Set<DistConfigSection> sections) {
+    this.sections = EnumSet.noneOf(DistConfigSection.class);
+    this.sections.addAll(sections);
+  }
+
+  /**
+   * Moves the reader from the start of the environment element to the start of the artifacts
+   * element. The elements before the artifacts are skipped.
+   *
+   * @param reader
+   *          the reader that stands on the start of the environment element.
+   * @return <code>true</code> if the reader stands on the start of the artifacts element or
+   *         <code>false</code> if the environment has no artifacts.
+   * @throws XMLStreamException
+   *           if the document is not well-formed.
+   */
+  boolean moveToArtifacts(final XMLStreamReader reader) throws XMLStreamException {
+    while (nextChildElement(reader)) {
+      if (isSchemaElement(reader, "artifacts")) {
+        return true;
+      }
+      skipElement(reader);
+    }
+    return false;
+  }
+
+  private void moveToEnvironment(final XMLStreamReader reader) throws XMLStreamException {
+    reader.nextTag();
+    if (!isSchemaElement(reader, ELEMENT_ENVIRONMENT)) {
+      throw new XMLStreamException("Unexpected root element {" + reader.getNamespaceURI()
+          + "}" + reader.getLocalName() + ". Expected element is {" + NAMESPACE + "}"
+          + ELEMENT_ENVIRONMENT, reader.getLocation());
+    }
+  }
+
+  /**
+   * Reads the next artifact of the artifacts element.
+   *
+   * @param reader
+   *          the reader that stands within the artifacts element, between two of its children.
+   * @return the next artifact or <code>null</code> if the reader reached the end of the artifacts
+   *         element.
+   * @throws XMLStreamException
+   *           if the document is not well-formed.
+   */
+  ArtifactType nextArtifact(final XMLStreamReader reader) throws XMLStreamException {
+    while (nextChildElement(reader)) {
+      if (isSchemaElement(reader, "artifact")) {
+        return readArtifact(reader);
+      }
+      skipElement(reader);
+    }
+    return null;
+  }
+
+  /**
+   * Creates a reader on a distribution configuration document that stands on the start of the
+   * root element.
+   *
+   * @param in
+   *          the stream of the document. It is not closed by the reader.
+   * @return the reader.
+   * @throws XMLStreamException
+   *           if the document is not well-formed or the root element is not the environment
+   *           element of the schema.
+   */
+  XMLStreamReader openEnvironment(final InputStream in) throws XMLStreamException {
+    XMLStreamReader reader = createXMLStreamReader(in);
+    try {
+      moveToEnvironment(reader);
+      return reader;
+    } catch (XMLStreamException | RuntimeException e) {
+      reader.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Reads a distribution configuration document.
+   *
+   * @param in
+   *          the stream of the document. It is not closed by this method.
+   * @return the environment configuration.
+   * @throws XMLStreamException
+   *           if the document is not well-formed or the root element is not the environment
+   *           element of the schema.
+   */
+  public EnvironmentType read(final InputStream in) throws XMLStreamException {
+    XMLStreamReader reader = createXMLStreamReader(in);
+    try {
+      return read(reader);
+    } finally {
+      reader.close();
+    }
+  }
+
+  /**
+   * Reads a distribution configuration document from a reader. The reader stands on the end of the
+   * root element when the method returns.
+   *
+   * @param reader
+   *          the reader that stands on the start of the document. It is not closed by this method.
+   * @return the environment configuration.
+   * @throws XMLStreamException
+   *           if the document is not well-formed or the root element is not the environment
+   *           element of the schema.
+   */
+  EnvironmentType read(final XMLStreamReader reader) throws XMLStreamException {
+    moveToEnvironment(reader);
+    return readEnvironment(reader);
+  }
+
+  private void readAbstractLaunchConfigChild(final XMLStreamReader reader,
+      final AbstractLaunchConfigType launchConfig) throws XMLStreamException {
+    if (isSchemaElement(reader, "vmArguments")) {
+      ArgumentsType arguments = new ArgumentsType();
+      readArguments(reader, arguments);
+      launchConfig.setVmArguments(arguments);
+    } else if (isSchemaElement(reader, "programArguments")) {
+      ArgumentsType arguments = new ArgumentsType();
+      readArguments(reader, arguments);
+      launchConfig.setProgramArguments(arguments);
+    } else {
+      skipElement(reader);
+    }
+  }
+
+  private void readArguments(final XMLStreamReader reader, final ArgumentsType arguments)
+      throws XMLStreamException {
+    while (nextChildElement(reader)) {
+      if (isSchemaElement(reader, "argument")) {
+        if (isNil(reader)) {
+          arguments.getArgument().add(null);
+          skipElement(reader);
+        } else {
+          arguments.getArgument().add(readEntry(reader));
+        }
+      } else {
+        skipElement(reader);
+      }
+    }
+  }
+
+  private ArtifactType readArtifact(final XMLStreamReader reader) throws XMLStreamException {
+    ArtifactType artifact = new ArtifactType();
+    artifact.setTargetFolder(reader.getAttributeValue(null, "targetFolder"));
+    artifact.setTargetFile(reader.getAttributeValue(null, "targetFile"));
+    while (nextChildElement(reader)) {
+      if (isSchemaElement(reader, "coordinates")) {
+        artifact.setCoordinates(readText(reader));
+      } else if (isSchemaElement(reader, "downloadURL")) {
+        artifact.setDownloadURL(readText(reader));
+      } else if (isSchemaElement(reader, "properties")) {
+        PropertiesType properties = new PropertiesType();
+        readEntries(reader, "property", properties::getProperty);
+        artifact.setProperties(properties);
+      } else {
+        skipElement(reader);
+      }
+    }
+    DistConfigInterner.SHARED.internStrings(artifact);
+    return artifact;
+  }
+
+  private void readArtifacts(final XMLStreamReader reader, final ArtifactsType artifacts)
+      throws XMLStreamException {
+    while (nextChildElement(reader)) {
+      if (isSchemaElement(reader, "artifact")) {
+        artifacts.getArtifact().add(readArtifact(reader));
+      } else {
+        skipElement(reader);
+      }
+    }
+  }
+
+  /**
+   * Reads the entry children of the current element. The list is only queried if there is at least
+   * one entry as the getters of the schema classes create the list on their first call.
+   */
+  private void readEntries(final XMLStreamReader reader, final String elementName,
+      final Supplier<List<EntryType>> entries) throws XMLStreamException {
+    while (nextChildElement(reader)) {
+      if (isSchemaElement(reader, elementName)) {
+        entries.get().add(readEntry(reader));
+      } else {
+        skipElement(reader);
+      }
+    }
+  }
+
+  private EntryType readEntry(final XMLStreamReader reader) throws XMLStreamException {
+    EntryType entry = new EntryType();
+    entry.setKey(reader.getAttributeValue(null, "key"));
+    entry.setValue(readText(reader));
+    DistConfigInterner.SHARED.internStrings(entry);
+    return entry;
+  }
+
+  private EnvironmentType readEnvironment(final XMLStreamReader reader)
+      throws XMLStreamException {
+    EnvironmentType environment = new EnvironmentType();
+    environment.setId(reader.getAttributeValue(null, "id"));
+    environment.setFrameworkStartLevel(parseInteger(reader, "frameworkStartLevel"));
+    environment.setInitialBundleStartLevel(parseInteger(reader, "initialBundleStartLevel"));
+    DistConfigInterner.SHARED.internStrings(environment);
+
+    while (nextChildElement(reader)) {
+      if (isSchemaElement(reader, "artifacts") && sections.contains(DistConfigSection.ARTIFACTS)) {
+        ArtifactsType artifacts = new ArtifactsType();
+        readArtifacts(reader, artifacts);
+        environment.setArtifacts(artifacts);
+      } else if (isSchemaElement(reader, "parsables")
+          && sections.contains(DistConfigSection.PARSABLES)) {
+        environment.setParsables(readParsables(reader));
+      } else if (isSchemaElement(reader, "runtimePathRegexes")
+          && sections.contains(DistConfigSection.RUNTIME_PATH_REGEXES)) {
+        RuntimePathRegexesType runtimePathRegexes = new RuntimePathRegexesType();
+        readEntries(reader, "entry", runtimePathRegexes::getEntry);
+        environment.setRuntimePathRegexes(runtimePathRegexes);
+      } else if (isSchemaElement(reader, "launchConfig")
+          && sections.contains(DistConfigSection.LAUNCH_CONFIG)) {
+        environment.setLaunchConfig(readLaunchConfig(reader));
+      } else {
+        skipElement(reader);
+      }
+    }
+    return environment;
+  }
+
+  private LaunchConfigType readLaunchConfig(final XMLStreamReader reader)
+      throws XMLStreamException {
+    LaunchConfigType launchConfig = new LaunchConfigType();
+    launchConfig.setMainClass(reader.getAttributeValue(null, "mainClass"));
+    launchConfig.setClassPath(reader.getAttributeValue(null, "classPath"));
+    DistConfigInterner.SHARED.internStrings(launchConfig);
+    while (nextChildElement(reader)) {
+      if (isSchemaElement(reader, "overrides")) {
+        launchConfig.setOverrides(readOverrides(reader));
+      } else {
+        readAbstractLaunchConfigChild(reader, launchConfig);
+      }
+    }
+    return launchConfig;
+  }
+
+  private LaunchConfigOverrideType readOverride(final XMLStreamReader reader)
+      throws XMLStreamException {
+    LaunchConfigOverrideType override = new LaunchConfigOverrideType();
+    while (nextChildElement(reader)) {
+      if (isSchemaElement(reader, "useBy")) {
+        override.setUseBy(toUseBy(readText(reader)));
+      } else {
+        readAbstractLaunchConfigChild(reader, override);
+      }
+    }
+    return override;
+  }
+
+  private LaunchConfigOverridesType readOverrides(final XMLStreamReader reader)
+      throws XMLStreamException {
+    LaunchConfigOverridesType overrides = new LaunchConfigOverridesType();
+    while (nextChildElement(reader)) {
+      if (isSchemaElement(reader, "override")) {
+        overrides.getOverride().add(readOverride(reader));
+      } else {
+        skipElement(reader);
+      }
+    }
+    return overrides;
+  }
+
+  private ParsablesType readParsables(final XMLStreamReader reader) throws XMLStreamException {
+    ParsablesType parsables = new ParsablesType();
+    while (nextChildElement(reader)) {
+      if (isSchemaElement(reader, "parsable")) {
+        ParsableType parsable = new ParsableType();
+        parsable.setPath(reader.getAttributeValue(null, "path"));
+        parsable.setEncoding(reader.getAttributeValue(null, "encoding"));
+        parsable.setTemplateEngine(
+            toTemplateEngine(reader.getAttributeValue(null, "templateEngine")));
+        DistConfigInterner.SHARED.internStrings(parsable);
+        parsables.getParsable().add(parsable);
+        skipElement(reader);
+      } else {
+        skipElement(reader);
+      }
+    }
+    return parsables;
+  }
+
+}
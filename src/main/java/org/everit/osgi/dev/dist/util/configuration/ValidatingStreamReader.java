@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import javax.xml.validation.Schema;
+import javax.xml.validation.ValidatorHandler;
+
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/**
+ * Validates a document against a schema while it is read. Every event that the consumer pulls
+ * with {@link #next()} or {@link #nextTag()} is passed to a {@link ValidatorHandler}, so the
+ * document is read only once. The validation errors go to the {@link ErrorHandler}.
+ *
+ * <p>
+ * The consumer must call {@link #finish()} after it read the root element, so the end of the
+ * document is validated as well.
+ */
+final class ValidatingStreamReader extends StreamReaderDelegate {
+
+  private static final String ATTRIBUTE_TYPE_CDATA = "CDATA";
+
+  private static String emptyIfNull(final String value) {
+    return (value != null) ? value : "";
+  }
+
+  private static String qualifiedName(final String prefix, final String localName) {
+    return (prefix == null || prefix.isEmpty()) ? localName : prefix + ":" + localName;
+  }
+
+  private final ValidatorHandler validatorHandler;
+
+  /**
+   * Constructor.
+   *
+   * @param reader
+   *          the reader that stands on the start of the document.
+   * @param schema
+   *          the schema to validate against.
+   * @param errorHandler
+   *          receives the validation errors.
+   * @throws XMLStreamException
+   *           if the validation cannot be started.
+   */
+  ValidatingStreamReader(final XMLStreamReader reader, final Schema schema,
+      final ErrorHandler errorHandler) throws XMLStreamException {
+    super(reader);
+    validatorHandler = schema.newValidatorHandler();
+    validatorHandler.setErrorHandler(errorHandler);
+    validatorHandler.setDocumentLocator(new Locator() {
+
+      @Override
+      public int getColumnNumber() {
+        return getLocation().getColumnNumber();
+      }
+
+      @Override
+      public int getLineNumber() {
+        return getLocation().getLineNumber();
+      }
+
+      @Override
+      public String getPublicId() {
+        return getLocation().getPublicId();
+      }
+
+      @Override
+      public String getSystemId() {
+        return getLocation().getSystemId();
+      }
+    });
+    try {
+      validatorHandler.startDocument();
+    } catch (SAXException e) {
+      throw toXMLStreamException(e);
+    }
+  }
+
+  private void endElement() throws SAXException {
+    validatorHandler.endElement(emptyIfNull(getNamespaceURI()), getLocalName(),
+        qualifiedName(getPrefix(), getLocalName()));
+    for (int i = 0, n = getNamespaceCount(); i < n; i++) {
+      validatorHandler.endPrefixMapping(emptyIfNull(getNamespacePrefix(i)));
+    }
+  }
+
+  /**
+   * Reads the rest of the document after the root element, so its end is validated.
+   *
+   * @throws XMLStreamException
+   *           if the rest of the document is not well-formed.
+   */
+  void finish() throws XMLStreamException {
+    while (getEventType() != XMLStreamConstants.END_DOCUMENT && hasNext()) {
+      next();
+    }
+  }
+
+  @Override
+  public String getElementText() throws XMLStreamException {
+    StringBuilder sb = new StringBuilder();
+    int eventType = next();
+    while (eventType != XMLStreamConstants.END_ELEMENT) {
+      if (eventType == XMLStreamConstants.START_ELEMENT) {
+        throw new XMLStreamException("Element text must not contain elements", getLocation());
+      }
+      if (eventType == XMLStreamConstants.CHARACTERS || eventType == XMLStreamConstants.CDATA
+          || eventType == XMLStreamConstants.SPACE) {
+        sb.append(getText());
+      }
+      eventType = next();
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public int next() throws XMLStreamException {
+    int eventType = super.next();
+    try {
+      switch (eventType) {
+        case XMLStreamConstants.START_ELEMENT:
+          startElement();
+          break;
+        case XMLStreamConstants.END_ELEMENT:
+          endElement();
+          break;
+        case XMLStreamConstants.CHARACTERS:
+        case XMLStreamConstants.CDATA:
+        case XMLStreamConstants.SPACE:
+          validatorHandler.characters(getTextCharacters(), getTextStart(), getTextLength());
+          break;
+        case XMLStreamConstants.END_DOCUMENT:
+          validatorHandler.endDocument();
+          break;
+        default:
+          break;
+      }
+    } catch (SAXException e) {
+      throw toXMLStreamException(e);
+    }
+    return eventType;
+  }
+
+  @Override
+  public int nextTag() throws XMLStreamException {
+    int eventType = next();
+    while ((isWhiteSpace() && (eventType == XMLStreamConstants.CHARACTERS
+        || eventType == XMLStreamConstants.CDATA))
+        || eventType == XMLStreamConstants.SPACE
+        || eventType == XMLStreamConstants.PROCESSING_INSTRUCTION
+        || eventType == XMLStreamConstants.COMMENT) {
+      eventType = next();
+    }
+    if (eventType != XMLStreamConstants.START_ELEMENT
+        && eventType != XMLStreamConstants.END_ELEMENT) {
+      throw new XMLStreamException("Expected start or end tag", getLocation());
+    }
+    return eventType;
+  }
+
+  private void startElement() throws SAXException {
+    for (int i = 0, n = getNamespaceCount(); i < n; i++) {
+      validatorHandler.startPrefixMapping(emptyIfNull(getNamespacePrefix(i)),
+          emptyIfNull(getNamespaceURI(i)));
+    }
+    AttributesImpl attributes = new AttributesImpl();
+    for (int i = 0, n = getAttributeCount(); i < n; i++) {
+      attributes.addAttribute(emptyIfNull(getAttributeNamespace(i)),
+          getAttributeLocalName(i),
+          qualifiedName(getAttributePrefix(i), getAttributeLocalName(i)),
+          ATTRIBUTE_TYPE_CDATA, getAttributeValue(i));
+    }
+    validatorHandler.startElement(emptyIfNull(getNamespaceURI()), getLocalName(),
+        qualifiedName(getPrefix(), getLocalName()), attributes);
+  }
+
+  private XMLStreamException toXMLStreamException(final SAXException e) {
+    Location location = getLocation();
+    return new XMLStreamException(e.getMessage(), location, e);
+  }
+}
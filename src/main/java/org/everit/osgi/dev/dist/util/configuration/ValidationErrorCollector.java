@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Collects the validation errors of one read, so all of them can be reported at the end instead of
+ * only the first one. Warnings are ignored.
+ */
+final class ValidationErrorCollector implements ErrorHandler {
+
+  private static String format(final int lineNumber, final int columnNumber,
+      final String message) {
+    return "line " + lineNumber + ", column " + columnNumber + ": " + message;
+  }
+
+  private final List<String> errors = new ArrayList<>();
+
+  @Override
+  public void error(final SAXParseException exception) {
+    errors.add(format(exception.getLineNumber(), exception.getColumnNumber(),
+        exception.getMessage()));
+  }
+
+  @Override
+  public void fatalError(final SAXParseException exception) {
+    error(exception);
+  }
+
+  List<String> getErrors() {
+    return errors;
+  }
+
+  /**
+   * Throws a {@link DistConfigValidationException} if there were any errors.
+   *
+   * @param distConfigFile
+   *          the file that was read.
+   * @param cause
+   *          the exception that stopped the read or <code>null</code>.
+   */
+  void throwIfErrors(final File distConfigFile, final Throwable cause) {
+    if (errors.isEmpty()) {
+      return;
+    }
+    StringBuilder sb = new StringBuilder("Distribution configuration file is not valid: ")
+        .append(distConfigFile.getAbsolutePath());
+    for (String error : errors) {
+      sb.append("\n  ").append(error);
+    }
+    throw new DistConfigValidationException(sb.toString(), errors, cause);
+  }
+
+  @Override
+  public void warning(final SAXParseException exception) {
+    // Warnings do not make the file invalid
+  }
+}
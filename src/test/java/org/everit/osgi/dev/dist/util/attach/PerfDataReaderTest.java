@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.attach;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PerfDataReaderTest {
+
+  private static final int ENTRY_HEADER_SIZE = 20;
+
+  private static final int PROLOGUE_SIZE = 32;
+
+  /**
+   * Creates the content of a performance data file with string counters in the same layout as
+   * HotSpot writes them.
+   */
+  private static ByteBuffer perfData(final ByteOrder byteOrder, final String... namesAndValues) {
+    return perfData(byteOrder, 8, namesAndValues);
+  }
+
+  /**
+   * Creates the content of a performance data file with string counters that have the specified
+   * number of bytes in their vectors after the values. Zero means a truncated counter without
+   * terminating character.
+   */
+  private static ByteBuffer perfData(final ByteOrder byteOrder, final int vectorPadding,
+      final String... namesAndValues) {
+    ByteBuffer buffer = ByteBuffer.allocate(4096).order(byteOrder);
+    buffer.order(ByteOrder.BIG_ENDIAN).putInt(0, 0xcafec0c0).order(byteOrder);
+    buffer.put(4, (byte) ((byteOrder == ByteOrder.BIG_ENDIAN) ? 0 : 1));
+    buffer.put(5, (byte) 2);
+    buffer.put(7, (byte) 1);
+    buffer.putInt(24, PROLOGUE_SIZE);
+    buffer.putInt(28, namesAndValues.length / 2);
+
+    int entryPosition = PROLOGUE_SIZE;
+    for (int i = 0; i < namesAndValues.length; i = i + 2) {
+      byte[] name = namesAndValues[i].getBytes(StandardCharsets.UTF_8);
+      byte[] value = namesAndValues[i + 1].getBytes(StandardCharsets.UTF_8);
+      int vectorLength = value.length + vectorPadding;
+      int dataOffset = ENTRY_HEADER_SIZE + name.length + 1;
+      int entryLength = (dataOffset + vectorLength + 7) / 8 * 8;
+      buffer.putInt(entryPosition, entryLength);
+      buffer.putInt(entryPosition + 4, ENTRY_HEADER_SIZE);
+      buffer.putInt(entryPosition + 8, vectorLength);
+      buffer.put(entryPosition + 12, (byte) 'B');
+      buffer.putInt(entryPosition + 16, dataOffset);
+      for (int j = 0; j < name.length; j++) {
+        buffer.put(entryPosition + ENTRY_HEADER_SIZE + j, name[j]);
+      }
+      for (int j = 0; j < value.length; j++) {
+        buffer.put(entryPosition + dataOffset + j, value[j]);
+      }
+      entryPosition += entryLength;
+    }
+    return buffer;
+  }
+
+  @Test
+  public void testCurrentVM() {
+    String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+    if (PerfDataReader.getPerfDataFolder() == null
+        || !PerfDataReader.getPerfDataFolder().resolve(pid).toFile().exists()) {
+      return;
+    }
+    Properties systemProperties = PerfDataReader.readSystemProperties(pid);
+    Assert.assertEquals(System.getProperty("java.home"),
+        systemProperties.getProperty("java.home"));
+  }
+
+  @Test
+  public void testInvalidContent() {
+    Assert.assertNull(PerfDataReader.readStringCounters(ByteBuffer.allocate(8)));
+    Assert.assertNull(PerfDataReader.readStringCounters(ByteBuffer.allocate(64)));
+
+    ByteBuffer notAccessible = perfData(ByteOrder.LITTLE_ENDIAN, "a", "b");
+    notAccessible.put(7, (byte) 0);
+    Assert.assertNull(PerfDataReader.readStringCounters(notAccessible));
+
+    ByteBuffer truncated = perfData(ByteOrder.LITTLE_ENDIAN, "a", "b");
+    truncated.limit(PROLOGUE_SIZE + 8);
+    Assert.assertNull(PerfDataReader.readStringCounters(truncated));
+  }
+
+  @Test
+  public void testStringCounters() {
+    for (ByteOrder byteOrder : new ByteOrder[] { ByteOrder.BIG_ENDIAN,
+        ByteOrder.LITTLE_ENDIAN }) {
+      Map<String, String> counters = PerfDataReader.readStringCounters(perfData(byteOrder,
+          "java.property.java.home", "/jdk",
+          "java.rt.vmArgs", "-Xmx1g -Dorg.everit.osgi.dev.environmentId=equinox -Dflag -D=x",
+          "sun.rt.javaCommand", "org.example.Main arg"));
+
+      Map<String, String> expectedCounters = new HashMap<>();
+      expectedCounters.put("java.property.java.home", "/jdk");
+      expectedCounters.put("java.rt.vmArgs",
+          "-Xmx1g -Dorg.everit.osgi.dev.environmentId=equinox -Dflag -D=x");
+      expectedCounters.put("sun.rt.javaCommand", "org.example.Main arg");
+      Assert.assertEquals(expectedCounters, counters);
+
+      Properties expectedProperties = new Properties();
+      expectedProperties.setProperty("java.home", "/jdk");
+      expectedProperties.setProperty("org.everit.osgi.dev.environmentId", "equinox");
+      expectedProperties.setProperty("flag", "");
+      expectedProperties.setProperty("sun.java.command", "org.example.Main arg");
+      Assert.assertEquals(expectedProperties, PerfDataReader.toSystemProperties(counters));
+    }
+  }
+
+  @Test
+  public void testTruncatedCounter() {
+    for (ByteOrder byteOrder : new ByteOrder[] { ByteOrder.BIG_ENDIAN,
+        ByteOrder.LITTLE_ENDIAN }) {
+      Assert.assertNotNull(PerfDataReader.readStringCounters(
+          perfData(byteOrder, 1, "java.rt.vmArgs", "-Xmx1g -Dorg.everit.osgi.dev")));
+      Assert.assertNull(PerfDataReader.readStringCounters(
+          perfData(byteOrder, 0, "java.rt.vmArgs", "-Xmx1g -Dorg.everit.osgi.dev")));
+    }
+  }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.attach;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ProcCmdlineScannerTest {
+
+  private static byte[] zeroSeparated(final String... parts) {
+    return (String.join("\0", parts) + "\0").getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testCommandLine() {
+    Assert.assertTrue(ProcCmdlineScanner.hasEOSGiArgument(zeroSeparated("java",
+        "-Dorg.everit.osgi.dev.environmentId=equinox", "-jar", "x.jar")));
+    Assert.assertTrue(ProcCmdlineScanner.hasEOSGiArgument(zeroSeparated("java",
+        "-Dorg.everit.osgi.dev.launchUniqueId=1", "Main")));
+    Assert.assertFalse(ProcCmdlineScanner.hasEOSGiArgument(zeroSeparated("java",
+        "-Dorg.everit.osgi.dev.environmentIdX=equinox", "Main",
+        "org.everit.osgi.dev.environmentId=equinox")));
+    Assert.assertFalse(ProcCmdlineScanner.hasEOSGiArgument(new byte[0]));
+  }
+
+  @Test
+  public void testJavaOptions() {
+    Assert.assertTrue(ProcCmdlineScanner.hasEOSGiJavaOptions(zeroSeparated("HOME=/root",
+        "JAVA_TOOL_OPTIONS=-Xmx1g  -Dorg.everit.osgi.dev.environmentId=equinox")));
+    Assert.assertFalse(ProcCmdlineScanner.hasEOSGiJavaOptions(zeroSeparated(
+        "OTHER=-Dorg.everit.osgi.dev.environmentId=equinox", "JAVA_TOOL_OPTIONS=-Xmx1g")));
+  }
+
+  @Test
+  public void testUnreadableProcessIsCandidate() {
+    if (ProcCmdlineScanner.isAvailable()) {
+      Assert.assertTrue(ProcCmdlineScanner.isEOSGiCandidate("no-such-process"));
+    }
+  }
+
+}
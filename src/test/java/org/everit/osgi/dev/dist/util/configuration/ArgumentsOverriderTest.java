@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.everit.osgi.dev.dist.util.configuration.schema.ArgumentsType;
+import org.everit.osgi.dev.dist.util.configuration.schema.EntryType;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ArgumentsOverriderTest {
+
+  private static final int LARGE_ARGUMENT_COUNT = 10000;
+
+  private static ArgumentsType arguments(final String... keyValuePairs) {
+    ArgumentsType result = new ArgumentsType();
+    for (int i = 0; i < keyValuePairs.length; i = i + 2) {
+      result.getArgument().add(entry(keyValuePairs[i], keyValuePairs[i + 1]));
+    }
+    return result;
+  }
+
+  private static EntryType entry(final String key, final String value) {
+    EntryType entry = new EntryType();
+    entry.setKey(key);
+    entry.setValue(value);
+    return entry;
+  }
+
+  /**
+   * The nested loop algorithm that was used before {@link ArgumentsOverrider}. The results of the
+   * two must be the same.
+   */
+  private static List<String> legacyOverride(final List<EntryType> originals,
+      final List<List<EntryType>> layers) {
+
+    List<EntryType> rvals = new ArrayList<>();
+    for (EntryType original : originals) {
+      rvals.add(entry(original.getKey(), original.getValue()));
+    }
+
+    for (List<EntryType> overrides : layers) {
+      for (EntryType override : overrides) {
+        String overridingKey = override.getKey();
+        String overridingValue = override.getValue();
+        boolean keyShouldBeDeleted = false;
+        boolean overridden = false;
+        for (EntryType rval : rvals) {
+          if (overridingKey.equals(rval.getKey())) {
+            if (overridingValue == null) {
+              keyShouldBeDeleted = true;
+            } else {
+              rval.setValue(overridingValue);
+              overridden = true;
+            }
+            break;
+          }
+        }
+        if (keyShouldBeDeleted) {
+          Iterator<EntryType> iterator = rvals.iterator();
+          while (iterator.hasNext()) {
+            if (iterator.next().getKey().equals(overridingKey)) {
+              iterator.remove();
+            }
+          }
+        }
+        if (!overridden) {
+          rvals.add(entry(overridingKey, overridingValue));
+        }
+      }
+    }
+
+    Iterator<EntryType> iterator = rvals.iterator();
+    while (iterator.hasNext()) {
+      String value = iterator.next().getValue();
+      if (value == null || "".equals(value.trim())) {
+        iterator.remove();
+      }
+    }
+    Collections.sort(rvals, (o1, o2) -> o1.getKey().compareTo(o2.getKey()));
+    return toKeyValueList(rvals);
+  }
+
+  private static List<EntryType> randomEntries(final Random random, final int count,
+      final int keyRange) {
+    List<EntryType> result = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      String key = "k" + random.nextInt(keyRange);
+      int valueSelector = random.nextInt(10);
+      String value;
+      if (valueSelector == 0) {
+        value = null;
+      } else if (valueSelector == 1) {
+        value = " ";
+      } else {
+        value = "v" + random.nextInt(keyRange);
+      }
+      result.add(entry(key, value));
+    }
+    return result;
+  }
+
+  private static List<String> toKeyValueList(final List<EntryType> entries) {
+    List<String> result = new ArrayList<>();
+    for (EntryType entry : entries) {
+      result.add(entry.getKey() + "=" + entry.getValue());
+    }
+    return result;
+  }
+
+  @Test
+  public void testDeleteReplaceAndAppend() {
+    ArgumentsOverrider overrider = new ArgumentsOverrider(
+        arguments("b", "1", "a", "2", "b", "3", "c", "4"));
+
+    overrider.override(arguments("b", null, "c", "5", "d", "6", "e", null));
+
+    List<String> result = toKeyValueList(overrider.toNormalizedArguments().getArgument());
+    Assert.assertEquals(Arrays.asList("a=2", "c=5", "d=6"), result);
+  }
+
+  @Test
+  public void testLargeArgumentLists() {
+    Random random = new Random(1);
+    ArgumentsType original = new ArgumentsType();
+    original.getArgument().addAll(
+        randomEntries(random, LARGE_ARGUMENT_COUNT, LARGE_ARGUMENT_COUNT));
+
+    List<List<EntryType>> layers = new ArrayList<>();
+    ArgumentsOverrider overrider = new ArgumentsOverrider(original);
+    for (int i = 0; i < 3; i++) {
+      ArgumentsType layer = new ArgumentsType();
+      layer.getArgument().addAll(
+          randomEntries(random, LARGE_ARGUMENT_COUNT, LARGE_ARGUMENT_COUNT));
+      layers.add(layer.getArgument());
+      overrider.override(layer);
+    }
+
+    Assert.assertEquals(legacyOverride(original.getArgument(), layers),
+        toKeyValueList(overrider.toNormalizedArguments().getArgument()));
+  }
+
+  @Test
+  public void testOriginalsAreNotModified() {
+    ArgumentsType original = arguments("a", "1");
+    EntryType originalEntry = original.getArgument().get(0);
+
+    ArgumentsOverrider overrider = new ArgumentsOverrider(original);
+    overrider.override(arguments("a", "2"));
+
+    Assert.assertEquals("1", originalEntry.getValue());
+    Assert.assertEquals("2", overrider.toNormalizedArguments().getArgument().get(0).getValue());
+  }
+
+  @Test
+  public void testPresence() {
+    Assert.assertNull(new ArgumentsOverrider(null).toNormalizedArguments());
+
+    ArgumentsOverrider overrider = new ArgumentsOverrider(null);
+    overrider.override(null);
+    Assert.assertTrue(overrider.toNormalizedArguments().getArgument().isEmpty());
+  }
+
+  @Test
+  public void testSameAsLegacyAlgorithm() {
+    Random random = new Random(0);
+    for (int round = 0; round < 500; round++) {
+      List<EntryType> originals = randomEntries(random, random.nextInt(20), 8);
+      ArgumentsType original = new ArgumentsType();
+      original.getArgument().addAll(originals);
+
+      ArgumentsOverrider overrider = new ArgumentsOverrider(original);
+      List<List<EntryType>> layers = new ArrayList<>();
+      int layerCount = random.nextInt(4);
+      for (int i = 0; i < layerCount; i++) {
+        ArgumentsType layer = new ArgumentsType();
+        layer.getArgument().addAll(randomEntries(random, random.nextInt(10), 8));
+        layers.add(layer.getArgument());
+        overrider.override(layer);
+      }
+
+      Assert.assertEquals(legacyOverride(originals, layers),
+          toKeyValueList(overrider.toNormalizedArguments().getArgument()));
+    }
+  }
+
+}
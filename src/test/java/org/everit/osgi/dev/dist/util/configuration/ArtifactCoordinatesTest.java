@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import org.everit.osgi.dev.dist.util.configuration.schema.ArtifactType;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ArtifactCoordinatesTest {
+
+  @Test
+  public void testEqualCoordinatesAreInterned() {
+    ArtifactCoordinates coordinates = ArtifactCoordinates.parse("org.example:bundle:1.0.0");
+
+    Assert.assertSame(coordinates, ArtifactCoordinates.parse(" org.example:bundle:1.0.0 "));
+    Assert.assertSame(coordinates, ArtifactCoordinates.parse("org.example:bundle:jar:1.0.0"));
+    Assert.assertSame(coordinates, ArtifactCoordinates.parse("org.example:bundle::1.0.0"));
+    Assert.assertEquals(coordinates.hashCode(),
+        ArtifactCoordinates.parse("org.example:bundle:jar::1.0.0").hashCode());
+    Assert.assertNotEquals(coordinates, ArtifactCoordinates.parse("org.example:bundle:1.0.1"));
+    Assert.assertNotEquals(coordinates,
+        ArtifactCoordinates.parse("org.example:bundle:jar:sources:1.0.0"));
+  }
+
+  @Test
+  public void testInvalidCoordinates() {
+    for (String invalid : new String[] { "", "g:a", ":a:1", "g::1", "g:a:", "g:a:b:c:d:1" }) {
+      Assert.assertNull(invalid, ArtifactCoordinates.tryParse(invalid));
+      try {
+        ArtifactCoordinates.parse(invalid);
+        Assert.fail("Invalid coordinates were accepted: " + invalid);
+      } catch (IllegalArgumentException e) {
+        Assert.assertTrue(e.getMessage().contains(invalid));
+      }
+    }
+  }
+
+  @Test
+  public void testOfArtifact() {
+    ArtifactType artifact = new ArtifactType();
+    Assert.assertNull(ArtifactCoordinates.of(artifact));
+    artifact.setCoordinates("g:a:zip:1");
+    Assert.assertEquals("zip", ArtifactCoordinates.of(artifact).extension);
+  }
+
+  @Test
+  public void testParts() {
+    ArtifactCoordinates simple = ArtifactCoordinates.parse("org.example:bundle:1.0.0");
+    Assert.assertEquals("org.example", simple.groupId);
+    Assert.assertEquals("bundle", simple.artifactId);
+    Assert.assertEquals(ArtifactCoordinates.DEFAULT_EXTENSION, simple.extension);
+    Assert.assertNull(simple.classifier);
+    Assert.assertEquals("1.0.0", simple.version);
+    Assert.assertEquals("org.example:bundle:1.0.0", simple.toString());
+    Assert.assertEquals("bundle-1.0.0.jar", simple.getFileName());
+    Assert.assertEquals("org/example/bundle/1.0.0/bundle-1.0.0.jar", simple.getRepositoryPath());
+
+    ArtifactCoordinates full =
+        ArtifactCoordinates.parse("org.example:bundle:jar:sources:1.0.0-SNAPSHOT");
+    Assert.assertEquals("sources", full.classifier);
+    Assert.assertEquals("org.example:bundle:jar:sources:1.0.0-SNAPSHOT", full.toString());
+    Assert.assertEquals("bundle-1.0.0-SNAPSHOT-sources.jar", full.getFileName());
+
+    ArtifactCoordinates extension = ArtifactCoordinates.parse("org.example:dist:zip:2");
+    Assert.assertEquals("org.example:dist:zip:2", extension.toString());
+    Assert.assertEquals("dist-2.zip", extension.getFileName());
+  }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.everit.osgi.dev.dist.util.DistConstants;
+import org.everit.osgi.dev.dist.util.configuration.schema.ArtifactType;
+import org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType;
+import org.everit.osgi.dev.dist.util.configuration.schema.UseByType;
+import org.junit.Assert;
+import org.junit.Test;
+import org.unitils.reflectionassert.ReflectionAssert;
+
+public class ArtifactCursorTest {
+
+  private static final int LARGE_ARTIFACT_COUNT = 5000;
+
+  private final DistributedEnvironmentConfigurationProvider provider =
+      new DistributedEnvironmentConfigurationProvider();
+
+  private List<ArtifactType> readAll(final File distConfigFile) throws IOException {
+    List<ArtifactType> result = new ArrayList<>();
+    try (ArtifactCursor cursor = provider.openArtifactCursor(distConfigFile)) {
+      while (cursor.hasNext()) {
+        result.add(cursor.next());
+      }
+    }
+    return result;
+  }
+
+  @Test
+  public void testLargeDistribution() throws IOException {
+    Path distConfigFile = Files.createTempFile("eosgi-dist", ".xml");
+    try {
+      try (Writer writer = Files.newBufferedWriter(distConfigFile, StandardCharsets.UTF_8)) {
+        writer.write("<environment id='large' xmlns='" + StaxEnvironmentBinder.NAMESPACE + "'>");
+        writer.write("<artifacts>");
+        for (int i = 0; i < LARGE_ARTIFACT_COUNT; i++) {
+          writer.write("<artifact targetFolder='bundle'><coordinates>g:a" + i
+              + ":1.0</coordinates><properties><property key='i'>" + i
+              + "</property></properties></artifact>");
+        }
+        writer.write("</artifacts><launchConfig mainClass='M'/></environment>");
+      }
+
+      int count = 0;
+      try (ArtifactCursor cursor = provider.openArtifactCursor(distConfigFile.toFile())) {
+        while (cursor.hasNext()) {
+          ArtifactType artifact = cursor.next();
+          Assert.assertEquals("g:a" + count + ":1.0", artifact.getCoordinates());
+          Assert.assertEquals(String.valueOf(count),
+              artifact.getProperties().getProperty().get(0).getValue());
+          count++;
+        }
+      }
+      Assert.assertEquals(LARGE_ARTIFACT_COUNT, count);
+    } finally {
+      Files.delete(distConfigFile);
+    }
+  }
+
+  @Test
+  public void testMissingFile() throws IOException {
+    try (ArtifactCursor cursor = provider.openArtifactCursor(new File("missing.xml"))) {
+      Assert.assertFalse(cursor.hasNext());
+      try {
+        cursor.next();
+        Assert.fail("NoSuchElementException expected");
+      } catch (NoSuchElementException e) {
+        Assert.assertNotNull(e);
+      }
+    }
+  }
+
+  @Test
+  public void testSameAsFullRead() throws URISyntaxException, IOException {
+    File distConfigFile = new File(Paths.get(getClass().getResource("/dists").toURI()).toFile(),
+        DistConstants.FILE_NAME_EOSGI_DIST_CONFIG);
+
+    EnvironmentType environment =
+        provider.getOverriddenDistributedEnvironmentConfig(distConfigFile, UseByType.IDE);
+
+    List<ArtifactType> artifacts = readAll(distConfigFile);
+    Assert.assertFalse(artifacts.isEmpty());
+    ReflectionAssert.assertReflectionEquals(environment.getArtifacts().getArtifact(), artifacts);
+  }
+
+  @Test
+  public void testStopAfterFirstArtifact() throws URISyntaxException, IOException {
+    File distConfigFile = new File(Paths.get(getClass().getResource("/dists").toURI()).toFile(),
+        DistConstants.FILE_NAME_EOSGI_DIST_CONFIG);
+
+    ArtifactCursor cursor = provider.openArtifactCursor(distConfigFile);
+    Assert.assertNotNull(cursor.next());
+    cursor.close();
+    Assert.assertFalse(cursor.hasNext());
+    cursor.close();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testWrongRootElement() throws IOException {
+    Path distConfigFile = Files.createTempFile("eosgi-dist", ".xml");
+    try {
+      Files.write(distConfigFile, "<environment/>".getBytes(StandardCharsets.UTF_8));
+      provider.openArtifactCursor(distConfigFile.toFile()).close();
+    } finally {
+      Files.delete(distConfigFile);
+    }
+  }
+
+}
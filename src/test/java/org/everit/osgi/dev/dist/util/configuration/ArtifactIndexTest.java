@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.everit.osgi.dev.dist.util.configuration.schema.ArtifactType;
+import org.everit.osgi.dev.dist.util.configuration.schema.ArtifactsType;
+import org.everit.osgi.dev.dist.util.configuration.schema.EntryType;
+import org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType;
+import org.everit.osgi.dev.dist.util.configuration.schema.PropertiesType;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ArtifactIndexTest {
+
+  private static ArtifactType artifact(final String coordinates, final String targetFolder,
+      final String targetFile, final String... properties) {
+    ArtifactType artifact = new ArtifactType();
+    artifact.setCoordinates(coordinates);
+    artifact.setTargetFolder(targetFolder);
+    artifact.setTargetFile(targetFile);
+    if (properties.length > 0) {
+      PropertiesType propertiesType = new PropertiesType();
+      for (int i = 0; i < properties.length; i = i + 2) {
+        EntryType entry = new EntryType();
+        entry.setKey(properties[i]);
+        entry.setValue(properties[i + 1]);
+        propertiesType.getProperty().add(entry);
+      }
+      artifact.setProperties(propertiesType);
+    }
+    return artifact;
+  }
+
+  private static ArtifactsType artifacts(final ArtifactType... artifacts) {
+    ArtifactsType result = new ArtifactsType();
+    result.getArtifact().addAll(Arrays.asList(artifacts));
+    return result;
+  }
+
+  @Test
+  public void testDuplicateTargets() {
+    ArtifactType first = artifact("g:a:1", "lib", "a.jar");
+    ArtifactType second = artifact("g:b:1", "lib/", "a.jar");
+    ArtifactType third = artifact("g:a:1", "lib", null);
+    ArtifactType fourth = artifact("g:a:jar:1", "lib", null);
+
+    ArtifactIndex index = new ArtifactIndex(artifacts(first, second, third, fourth));
+
+    Assert.assertEquals(Arrays.asList("lib/a.jar", "lib/a-1.jar"),
+        Arrays.asList(index.getDuplicateTargets().keySet().toArray()));
+    Assert.assertEquals(Arrays.asList(first, second), index.getDuplicateTargets().get("lib/a.jar"));
+    Assert.assertEquals(Arrays.asList(third, fourth),
+        index.getDuplicateTargets().get("lib/a-1.jar"));
+    Assert.assertSame(first, index.getByTargetPath("lib/a.jar"));
+    Assert.assertSame(first, index.getByCoordinates("g:a:1"));
+  }
+
+  @Test
+  public void testEmpty() {
+    ArtifactIndex index = new ArtifactIndex(new EnvironmentType());
+    Assert.assertTrue(index.getArtifacts().isEmpty());
+    Assert.assertTrue(index.getDuplicateTargets().isEmpty());
+    Assert.assertNull(index.getByCoordinates("g:a:1"));
+    Assert.assertNull(index.getByTargetPath("a.jar"));
+    Assert.assertEquals(Collections.emptyList(), index.getByProperty("bundle.action", "start"));
+  }
+
+  @Test
+  public void testLookups() {
+    ArtifactType framework = artifact("org.eclipse:osgi:3.10", null, "osgi.jar");
+    ArtifactType bundle = artifact(" g:bundle:jar:sources:1.0 ", "lib", null,
+        "bundle.symbolicName", "bundle", "bundle.action", "start");
+    ArtifactType otherBundle = artifact("g:other:1.0", "lib\\sub", "other.jar",
+        "bundle.symbolicName", "other", "bundle.action", "start", "nil", null);
+    ArtifactType unknownTarget = artifact("invalid", null, null);
+
+    ArtifactIndex index =
+        new ArtifactIndex(artifacts(framework, bundle, null, otherBundle, unknownTarget));
+
+    Assert.assertEquals(Arrays.asList(framework, bundle, otherBundle, unknownTarget),
+        index.getArtifacts());
+    Assert.assertTrue(index.getDuplicateTargets().isEmpty());
+
+    Assert.assertSame(framework, index.getByCoordinates("org.eclipse:osgi:3.10"));
+    Assert.assertSame(bundle, index.getByCoordinates("g:bundle:jar:sources:1.0"));
+    Assert.assertSame(framework, index.getByCoordinates("org.eclipse:osgi:jar:3.10"));
+    Assert.assertSame(framework,
+        index.getByCoordinates(ArtifactCoordinates.parse("org.eclipse:osgi:3.10")));
+    Assert.assertNull(index.getByCoordinates("g:bundle:1.0"));
+    Assert.assertNull(index.getByCoordinates("invalid"));
+
+    Assert.assertSame(framework, index.getByTargetPath("osgi.jar"));
+    Assert.assertSame(framework, index.getByTarget(null, "osgi.jar"));
+    Assert.assertSame(bundle, index.getByTargetPath("/lib/bundle-1.0-sources.jar"));
+    Assert.assertSame(otherBundle, index.getByTarget("lib/sub", "other.jar"));
+    Assert.assertSame(otherBundle, index.getByTargetPath("lib\\sub\\other.jar"));
+
+    Assert.assertEquals(Arrays.asList(bundle),
+        index.getByProperty("bundle.symbolicName", "bundle"));
+    Assert.assertEquals(Arrays.asList(bundle, otherBundle),
+        index.getByProperty("bundle.action", "start"));
+    Assert.assertEquals(Arrays.asList(otherBundle), index.getByProperty("nil", null));
+    Assert.assertTrue(index.getByProperty("bundle.symbolicName", "missing").isEmpty());
+  }
+
+  @Test
+  public void testNormalizeTargetPath() {
+    Assert.assertEquals("lib/a.jar", ArtifactIndex.normalizeTargetPath("\\lib//a.jar/"));
+    Assert.assertEquals("lib/a.jar", ArtifactIndex.normalizeTargetPath("./lib/./a.jar"));
+    Assert.assertEquals("lib/a.jar", ArtifactIndex.normalizeTargetPath("lib/sub/../a.jar"));
+    Assert.assertEquals("a.jar", ArtifactIndex.normalizeTargetPath("lib\\..\\.\\a.jar"));
+    Assert.assertEquals("../a.jar", ArtifactIndex.normalizeTargetPath("lib/../../a.jar"));
+    Assert.assertEquals("", ArtifactIndex.normalizeTargetPath("./lib/.."));
+    Assert.assertEquals(".lib/a..jar", ArtifactIndex.normalizeTargetPath(".lib/a..jar"));
+    Assert.assertEquals("lib/.../a.jar", ArtifactIndex.normalizeTargetPath("lib/.../a.jar"));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testUnmodifiable() {
+    ArtifactIndex index = new ArtifactIndex(artifacts(artifact("g:a:1", null, null,
+        "bundle.action", "start")));
+    index.getByProperty("bundle.action", "start").clear();
+  }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+import org.everit.osgi.dev.dist.util.DistConstants;
+import org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType;
+import org.everit.osgi.dev.dist.util.configuration.schema.UseByType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DistConfigCacheTest {
+
+  private Path tempDir;
+
+  private File copyDistConfig(final String folderName) throws IOException {
+    Path folder = Files.createDirectories(tempDir.resolve(folderName));
+    Path target = folder.resolve(DistConstants.FILE_NAME_EOSGI_DIST_CONFIG);
+    try (InputStream in = getClass().getResourceAsStream(
+        "/dists/" + DistConstants.FILE_NAME_EOSGI_DIST_CONFIG)) {
+      Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+    return target.toFile();
+  }
+
+  private DistributedEnvironmentConfigurationProvider createProvider(
+      final DistConfigCache cache) {
+    DistributedEnvironmentConfigurationProviderParameter parameter =
+        new DistributedEnvironmentConfigurationProviderParameter();
+    parameter.cache = cache;
+    return new DistributedEnvironmentConfigurationProvider(parameter);
+  }
+
+  private void deleteRecursively(final File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    tempDir = Files.createTempDirectory("eosgi-dist-cache-test");
+  }
+
+  @After
+  public void tearDown() {
+    deleteRecursively(tempDir.toFile());
+  }
+
+  @Test
+  public void testChangedFileIsParsedAgain() throws IOException {
+    DistConfigCache cache = new DistConfigCache(10);
+    DistributedEnvironmentConfigurationProvider provider = createProvider(cache);
+    File distConfigFile = copyDistConfig("changed");
+
+    provider.getOverriddenDistributedEnvironmentConfig(distConfigFile, UseByType.IDE);
+
+    String content = new String(Files.readAllBytes(distConfigFile.toPath()),
+        StandardCharsets.UTF_8);
+    Files.write(distConfigFile.toPath(),
+        content.replace("id=\"equinoxtest\"", "id=\"equinoxchanged\"")
+            .getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.TRUNCATE_EXISTING);
+
+    EnvironmentType changed =
+        provider.getOverriddenDistributedEnvironmentConfig(distConfigFile, UseByType.IDE);
+
+    Assert.assertEquals("equinoxchanged", changed.getId());
+    Assert.assertEquals(0, cache.getHitCount());
+    Assert.assertEquals(2, cache.getMissCount());
+  }
+
+  @Test
+  public void testContentHashDetectsSameSizeAndTimestamp() throws IOException {
+    DistConfigCache cache = new DistConfigCache(10, true);
+    DistributedEnvironmentConfigurationProvider provider = createProvider(cache);
+    File distConfigFile = copyDistConfig("hashed");
+    Path path = distConfigFile.toPath();
+    FileTime lastModified = Files.getLastModifiedTime(path);
+
+    provider.getOverriddenDistributedEnvironmentConfig(distConfigFile, UseByType.IDE);
+
+    String content = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    Files.write(path,
+        content.replace("id=\"equinoxtest\"", "id=\"equinoxTEST\"")
+            .getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.TRUNCATE_EXISTING);
+    Files.setLastModifiedTime(path, lastModified);
+
+    EnvironmentType changed =
+        provider.getOverriddenDistributedEnvironmentConfig(distConfigFile, UseByType.IDE);
+
+    Assert.assertEquals("equinoxTEST", changed.getId());
+    Assert.assertEquals(2, cache.getMissCount());
+  }
+
+  @Test
+  public void testEviction() throws IOException {
+    DistConfigCache cache = new DistConfigCache(2);
+    DistributedEnvironmentConfigurationProvider provider = createProvider(cache);
+    File first = copyDistConfig("first");
+    File second = copyDistConfig("second");
+    File third = copyDistConfig("third");
+
+    provider.getOverriddenDistributedEnvironmentConfig(first, UseByType.IDE);
+    provider.getOverriddenDistributedEnvironmentConfig(second, UseByType.IDE);
+    provider.getOverriddenDistributedEnvironmentConfig(first, UseByType.IDE);
+    provider.getOverriddenDistributedEnvironmentConfig(third, UseByType.IDE);
+
+    Assert.assertEquals(2, cache.size());
+
+    provider.getOverriddenDistributedEnvironmentConfig(first, UseByType.IDE);
+    Assert.assertEquals(2, cache.getHitCount());
+
+    provider.getOverriddenDistributedEnvironmentConfig(second, UseByType.IDE);
+    Assert.assertEquals(2, cache.getHitCount());
+    Assert.assertEquals(4, cache.getMissCount());
+  }
+
+  @Test
+  public void testHitReturnsIsolatedCopy() throws IOException {
+    DistConfigCache cache = new DistConfigCache(10);
+    DistributedEnvironmentConfigurationProvider provider = createProvider(cache);
+    File distConfigFile = copyDistConfig("isolated");
+
+    EnvironmentType ide =
+        provider.getOverriddenDistributedEnvironmentConfig(distConfigFile, UseByType.IDE);
+    ide.setId("modified");
+    ide.getArtifacts().getArtifact().clear();
+
+    EnvironmentType parsables =
+        provider.getOverriddenDistributedEnvironmentConfig(distConfigFile, UseByType.PARSABLES);
+
+    Assert.assertEquals(1, cache.getHitCount());
+    Assert.assertEquals(1, cache.getMissCount());
+    Assert.assertEquals("equinoxtest", parsables.getId());
+    Assert.assertEquals(3, parsables.getArtifacts().getArtifact().size());
+    Assert.assertNull(parsables.getLaunchConfig().getOverrides());
+    Assert.assertEquals(3, parsables.getLaunchConfig().getVmArguments().getArgument().size());
+
+    EnvironmentType integrationTest = provider.getOverriddenDistributedEnvironmentConfig(
+        distConfigFile, UseByType.INTEGRATION_TEST);
+    Assert.assertEquals(1, integrationTest.getLaunchConfig().getVmArguments().getArgument().size());
+  }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+
+import org.everit.osgi.dev.dist.util.DistConstants;
+import org.everit.osgi.dev.dist.util.configuration.schema.ArtifactType;
+import org.everit.osgi.dev.dist.util.configuration.schema.EntryType;
+import org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType;
+import org.everit.osgi.dev.dist.util.configuration.schema.ObjectFactory;
+import org.everit.osgi.dev.dist.util.configuration.schema.UseByType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.unitils.reflectionassert.ReflectionAssert;
+
+public class DistConfigInternerTest {
+
+  /**
+   * Footprint of the strings and entries of a model, every instance counted only once.
+   */
+  private static final class Footprint {
+
+    private long bytes;
+
+    private final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private void add(final EntryType entry) {
+      if (entry != null && seen.add(entry)) {
+        bytes += ENTRY_SHALLOW_SIZE;
+        add(entry.getKey());
+        add(entry.getValue());
+      }
+    }
+
+    private void add(final EnvironmentType environment) {
+      for (ArtifactType artifact : environment.getArtifacts().getArtifact()) {
+        add(artifact.getCoordinates());
+        add(artifact.getTargetFolder());
+        for (EntryType property : artifact.getProperties().getProperty()) {
+          add(property);
+        }
+      }
+    }
+
+    private void add(final String value) {
+      if (value != null && seen.add(value)) {
+        bytes += STRING_SHALLOW_SIZE + CHAR_ARRAY_HEADER_SIZE + 2L * value.length();
+      }
+    }
+  }
+
+  private static final int ARTIFACT_COUNT = 10000;
+
+  private static final int CHAR_ARRAY_HEADER_SIZE = 16;
+
+  private static final int ENTRY_SHALLOW_SIZE = 24;
+
+  private static final int STRING_SHALLOW_SIZE = 24;
+
+  private File distConfigFile;
+
+  private Path tempDir;
+
+  private EnvironmentType readWithoutInterning() throws IOException, JAXBException {
+    JAXBContext jaxbContext = JAXBContext.newInstance(
+        ObjectFactory.class.getPackage().getName(), ObjectFactory.class.getClassLoader());
+    try (InputStream in = Files.newInputStream(distConfigFile.toPath())) {
+      Object result = jaxbContext.createUnmarshaller().unmarshal(in);
+      return (EnvironmentType) ((JAXBElement<?>) result).getValue();
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    tempDir = Files.createTempDirectory("eosgi-dist-interner-test");
+    distConfigFile = tempDir.resolve(DistConstants.FILE_NAME_EOSGI_DIST_CONFIG).toFile();
+    try (Writer writer = Files.newBufferedWriter(distConfigFile.toPath(),
+        StandardCharsets.UTF_8)) {
+      writer.write("<environment id='synthetic'"
+          + " xmlns='http://everit.org/eosgi/dist/definition/4.0.0'><artifacts>\n");
+      for (int i = 0; i < ARTIFACT_COUNT; i++) {
+        writer.write("<artifact targetFolder='lib'>"
+            + "<coordinates>org.example:bundle" + (i % 500) + ":1.0.0</coordinates>"
+            + "<properties><property key='bundle.action'>start</property>"
+            + "<property key='bundle.symbolicName'>bundle" + (i % 500) + "</property>"
+            + "<property key='bundle.location'>lib/bundle" + (i % 500) + ".jar</property>"
+            + "</properties></artifact>\n");
+      }
+      writer.write("</artifacts></environment>\n");
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.delete(distConfigFile.toPath());
+    Files.delete(tempDir);
+  }
+
+  @Test
+  public void testEntriesOfCachedModelsAreShared() throws IOException, JAXBException {
+    EnvironmentType environment = readWithoutInterning();
+    EnvironmentCopyUtil.initializeLists(environment);
+    Footprint before = new Footprint();
+    before.add(environment);
+
+    new DistConfigInterner(ARTIFACT_COUNT).internEntries(environment);
+
+    Footprint after = new Footprint();
+    after.add(environment);
+    Assert.assertTrue(before.bytes + " -> " + after.bytes, after.bytes * 3 < before.bytes);
+    ReflectionAssert.assertReflectionEquals(readWithoutInterning().getArtifacts(),
+        environment.getArtifacts());
+  }
+
+  @Test
+  public void testInternReturnsCanonicalInstance() {
+    DistConfigInterner interner = new DistConfigInterner(16);
+    String value = interner.intern(new String("bundle.action"));
+    Assert.assertSame(value, interner.intern(new String("bundle.action")));
+    Assert.assertNull(interner.intern((String) null));
+
+    EntryType entry = new EntryType();
+    entry.setKey(value);
+    entry.setValue("start");
+    EntryType equalEntry = new EntryType();
+    equalEntry.setKey(value);
+    equalEntry.setValue(new String("start"));
+    Assert.assertSame(entry, interner.intern(entry));
+    Assert.assertSame(entry, interner.intern(equalEntry));
+  }
+
+  @Test
+  public void testReadStringsAreInterned() throws IOException, JAXBException {
+    EnvironmentType expected = readWithoutInterning();
+    Footprint withoutInterning = new Footprint();
+    withoutInterning.add(expected);
+
+    for (DistConfigReaderMode readerMode : DistConfigReaderMode.values()) {
+      DistributedEnvironmentConfigurationProviderParameter parameter =
+          new DistributedEnvironmentConfigurationProviderParameter();
+      parameter.readerMode = readerMode;
+      EnvironmentType actual = new DistributedEnvironmentConfigurationProvider(parameter)
+          .getOverriddenDistributedEnvironmentConfig(distConfigFile, UseByType.IDE);
+
+      ReflectionAssert.assertReflectionEquals(expected.getArtifacts(), actual.getArtifacts());
+      Footprint withInterning = new Footprint();
+      withInterning.add(actual);
+      Assert.assertTrue(withoutInterning.bytes + " -> " + withInterning.bytes,
+          withInterning.bytes * 2 < withoutInterning.bytes);
+    }
+  }
+
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.everit.osgi.dev.dist.util.DistConstants;
+import org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType;
+import org.everit.osgi.dev.dist.util.configuration.schema.UseByType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.unitils.reflectionassert.ReflectionAssert;
+
+public class DistConfigValidationTest {
+
+  private static final String VALID_XML =
+      "<?xml version='1.0' encoding='UTF-8'?>\n"
+          + "<environment id='valid' frameworkStartLevel='4'"
+          + " xmlns='http://everit.org/eosgi/dist/definition/4.0.0'"
+          + " xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance'>\n"
+          + "  <artifacts>\n"
+          + "    <artifact targetFile='a.jar'><coordinates>g:a:1</coordinates>"
+          + "<properties><property key='k'>v</property></properties></artifact>\n"
+          + "  </artifacts>\n"
+          + "  <parsables><parsable path='p' templateEngine='XML'/></parsables>\n"
+          + "  <runtimePathRegexes><entry key='log'>log/.*</entry></runtimePathRegexes>\n"
+          + "  <launchConfig mainClass='Main'>\n"
+          + "    <vmArguments><argument key='a'>-Da</argument>"
+          + "<argument key='n' xsi:nil='true'/></vmArguments>\n"
+          + "    <overrides><override>"
+          + "<programArguments><argument key='p'>-p</argument></programArguments>"
+          + "<useBy>IDE</useBy></override></overrides>\n"
+          + "  </launchConfig>\n"
+          + "</environment>\n";
+
+  private File invalidDistConfigFile;
+
+  private Path tempDir;
+
+  private File validDistConfigFile;
+
+  private DistributedEnvironmentConfigurationProvider createProvider(
+      final DistConfigReaderMode readerMode, final boolean validating) {
+    DistributedEnvironmentConfigurationProviderParameter parameter =
+        new DistributedEnvironmentConfigurationProviderParameter();
+    parameter.readerMode = readerMode;
+    parameter.validating = validating;
+    return new DistributedEnvironmentConfigurationProvider(parameter);
+  }
+
+  private List<String> readInvalid(final DistributedEnvironmentConfigurationProvider provider,
+      final boolean allSections) {
+    try {
+      if (allSections) {
+        provider.getOverriddenDistributedEnvironmentConfig(invalidDistConfigFile, UseByType.IDE);
+      } else {
+        provider.getOverriddenDistributedEnvironmentConfig(invalidDistConfigFile, UseByType.IDE,
+            EnumSet.of(DistConfigSection.LAUNCH_CONFIG));
+      }
+    } catch (DistConfigValidationException e) {
+      Assert.assertTrue(e.getMessage().contains(invalidDistConfigFile.getAbsolutePath()));
+      return e.getValidationErrors();
+    }
+    Assert.fail("Invalid file was accepted");
+    return null;
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    tempDir = Files.createTempDirectory("eosgi-dist-validation-test");
+    Path invalidFolder = Files.createDirectory(tempDir.resolve("invalid"));
+    Path invalidTarget = invalidFolder.resolve(DistConstants.FILE_NAME_EOSGI_DIST_CONFIG);
+    try (InputStream in = getClass().getResourceAsStream(
+        "/dists/" + DistConstants.FILE_NAME_EOSGI_DIST_CONFIG)) {
+      Files.copy(in, invalidTarget);
+    }
+    invalidDistConfigFile = invalidTarget.toFile();
+
+    Path validFolder = Files.createDirectory(tempDir.resolve("valid"));
+    Path validTarget = validFolder.resolve(DistConstants.FILE_NAME_EOSGI_DIST_CONFIG);
+    Files.write(validTarget, VALID_XML.getBytes(StandardCharsets.UTF_8));
+    validDistConfigFile = validTarget.toFile();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.delete(invalidDistConfigFile.toPath());
+    Files.delete(invalidDistConfigFile.getParentFile().toPath());
+    Files.delete(validDistConfigFile.toPath());
+    Files.delete(validDistConfigFile.getParentFile().toPath());
+    Files.delete(tempDir);
+  }
+
+  @Test
+  public void testAllErrorsReportedWithLineNumbers() {
+    List<String> jaxbErrors = readInvalid(createProvider(DistConfigReaderMode.JAXB, true), true);
+    List<String> staxErrors = readInvalid(createProvider(DistConfigReaderMode.STAX, true), true);
+
+    Assert.assertTrue(jaxbErrors.size() > 1);
+    Assert.assertEquals(jaxbErrors, staxErrors);
+    for (String error : staxErrors) {
+      Assert.assertTrue(error, error.matches("line [1-9][0-9]*, column [0-9]+: .*"));
+    }
+  }
+
+  @Test
+  public void testSkippedSectionsAreValidated() {
+    List<String> errors = readInvalid(createProvider(DistConfigReaderMode.JAXB, true), false);
+    Assert.assertEquals(
+        readInvalid(createProvider(DistConfigReaderMode.STAX, true), true), errors);
+  }
+
+  @Test
+  public void testValidatedCacheEntriesAreSeparate() {
+    DistributedEnvironmentConfigurationProviderParameter parameter =
+        new DistributedEnvironmentConfigurationProviderParameter();
+    parameter.cache = new DistConfigCache(2);
+    new DistributedEnvironmentConfigurationProvider(parameter)
+        .getOverriddenDistributedEnvironmentConfig(invalidDistConfigFile, UseByType.IDE);
+
+    parameter.validating = true;
+    readInvalid(new DistributedEnvironmentConfigurationProvider(parameter), true);
+  }
+
+  @Test
+  public void testValidFileGivesSameResult() {
+    for (DistConfigReaderMode readerMode : DistConfigReaderMode.values()) {
+      for (UseByType useBy : UseByType.values()) {
+        EnvironmentType expected = createProvider(readerMode, false)
+            .getOverriddenDistributedEnvironmentConfig(validDistConfigFile, useBy);
+        EnvironmentType actual = createProvider(readerMode, true)
+            .getOverriddenDistributedEnvironmentConfig(validDistConfigFile, useBy);
+        ReflectionAssert.assertReflectionEquals(expected, actual);
+      }
+    }
+  }
+
+}
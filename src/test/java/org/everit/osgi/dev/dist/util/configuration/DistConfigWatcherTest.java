@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.everit.osgi.dev.dist.util.DistConstants;
+import org.everit.osgi.dev.dist.util.configuration.schema.UseByType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.unitils.reflectionassert.ReflectionAssert;
+
+public class DistConfigWatcherTest {
+
+  private static final long DEBOUNCE_MILLIS = 100;
+
+  private static final long QUIET_PERIOD_MILLIS = 1000;
+
+  private static final long TIMEOUT_MILLIS = 20000;
+
+  private File distConfigFile;
+
+  private final BlockingQueue<DistConfigChangeEventData> events = new LinkedBlockingQueue<>();
+
+  private Path tempDir;
+
+  private DistConfigWatcher watcher;
+
+  private void append(final String text) throws IOException {
+    Files.write(distConfigFile.toPath(), text.getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+  }
+
+  private void assertNoEvent() throws InterruptedException {
+    Assert.assertNull(events.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS));
+  }
+
+  private DistConfigChangeEventData nextEvent() throws InterruptedException {
+    DistConfigChangeEventData event = events.poll(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    Assert.assertNotNull("No change event", event);
+    Assert.assertSame(watcher, event.watcher);
+    Assert.assertEquals(distConfigFile.getAbsoluteFile(), event.distConfigFile.getAbsoluteFile());
+    return event;
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    tempDir = Files.createTempDirectory("eosgi-dist-watcher-test");
+    Path target = tempDir.resolve(DistConstants.FILE_NAME_EOSGI_DIST_CONFIG);
+    try (InputStream in = getClass().getResourceAsStream(
+        "/dists/" + DistConstants.FILE_NAME_EOSGI_DIST_CONFIG)) {
+      Files.copy(in, target);
+    }
+    distConfigFile = target.toFile();
+
+    DistConfigWatcherParameter parameter = new DistConfigWatcherParameter();
+    parameter.debounceMillis = DEBOUNCE_MILLIS;
+    parameter.useBy = UseByType.IDE;
+    watcher = new DistConfigWatcher(parameter);
+    watcher.addChangeListener(events::add);
+    watcher.watch(tempDir.toFile());
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    watcher.close();
+    Files.deleteIfExists(distConfigFile.toPath());
+    Files.delete(tempDir);
+  }
+
+  @Test
+  public void testBurstOfWritesIsReportedOnce() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      append("\n");
+    }
+
+    DistConfigChangeEventData event = nextEvent();
+    Assert.assertNull(event.cause);
+    Assert.assertNotNull(event.environment);
+    ReflectionAssert.assertReflectionEquals(
+        new DistributedEnvironmentConfigurationProvider().getLaunchConfiguration(distConfigFile,
+            UseByType.IDE),
+        event.launchConfiguration);
+    assertNoEvent();
+  }
+
+  @Test
+  public void testDeletedAndBrokenFiles() throws Exception {
+    byte[] content = Files.readAllBytes(distConfigFile.toPath());
+    Files.write(distConfigFile.toPath(), "<environment".getBytes(StandardCharsets.UTF_8));
+    DistConfigChangeEventData event = nextEvent();
+    Assert.assertTrue(event.cause instanceof IllegalStateException);
+    Assert.assertNull(event.environment);
+
+    Files.delete(distConfigFile.toPath());
+    event = nextEvent();
+    Assert.assertNull(event.cause);
+    Assert.assertNull(event.environment);
+
+    Files.write(distConfigFile.toPath(), content);
+    event = nextEvent();
+    Assert.assertNotNull(event.environment);
+  }
+
+  @Test
+  public void testSameContentIsNotReported() throws Exception {
+    byte[] content = Files.readAllBytes(distConfigFile.toPath());
+    Files.setLastModifiedTime(distConfigFile.toPath(),
+        FileTime.fromMillis(System.currentTimeMillis() + 10000));
+    Files.write(distConfigFile.toPath(), content);
+    assertNoEvent();
+  }
+
+  @Test
+  public void testUnwatchedFolderIsNotReported() throws Exception {
+    watcher.unwatch(tempDir.toFile());
+    append("\n");
+    assertNoEvent();
+  }
+
+}
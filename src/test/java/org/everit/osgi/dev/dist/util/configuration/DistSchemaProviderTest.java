@@ -16,10 +16,14 @@
 package org.everit.osgi.dev.dist.util.configuration;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -321,6 +325,82 @@ public class DistSchemaProviderTest {
 
   }
 
+  @Test
+  public void testGetAllOverriddenDistributionPackages() throws URISyntaxException {
+
+    File distConfigFile = new File(getDistFolderFile(), DistConstants.FILE_NAME_EOSGI_DIST_CONFIG);
+
+    Map<UseByType, EnvironmentType> environments =
+        distSchemaProvider.getOverriddenDistributedEnvironmentConfigs(distConfigFile);
+
+    Assert.assertEquals(UseByType.values().length, environments.size());
+
+    for (UseByType useBy : UseByType.values()) {
+      ReflectionAssert.assertReflectionEquals(
+          distSchemaProvider.getOverriddenDistributedEnvironmentConfig(distConfigFile, useBy),
+          environments.get(useBy));
+    }
+
+    EnvironmentType distIde = environments.get(UseByType.IDE);
+    EnvironmentType distTest = environments.get(UseByType.INTEGRATION_TEST);
+    EnvironmentType distParsables = environments.get(UseByType.PARSABLES);
+
+    Assert.assertSame(distIde.getArtifacts(), distTest.getArtifacts());
+    Assert.assertSame(distIde.getArtifacts(), distParsables.getArtifacts());
+    Assert.assertSame(distIde.getParsables(), distParsables.getParsables());
+    Assert.assertNotSame(distIde.getLaunchConfig(), distTest.getLaunchConfig());
+
+    Map<UseByType, LaunchConfigurationDTO> launchConfigurations =
+        distSchemaProvider.getLaunchConfigurations(distConfigFile);
+
+    Assert.assertEquals(UseByType.values().length, launchConfigurations.size());
+    for (UseByType useBy : UseByType.values()) {
+      ReflectionAssert.assertReflectionEquals(
+          distSchemaProvider.getLaunchConfiguration(environments.get(useBy)),
+          launchConfigurations.get(useBy));
+    }
+  }
+
+  @Test
+  public void testGetAllOverriddenDistributionPackagesOfMissingFile() throws URISyntaxException {
+    File distConfigFile = new File(getDistFolderFile(), "missing.xml");
+
+    Assert.assertTrue(
+        distSchemaProvider.getOverriddenDistributedEnvironmentConfigs(distConfigFile).isEmpty());
+    Assert.assertTrue(distSchemaProvider.getLaunchConfigurations(distConfigFile).isEmpty());
+  }
+
+  @Test
+  public void testGetOverriddenDistributionPackagesOfSeveralFiles()
+      throws URISyntaxException, IOException {
+
+    File distConfigFile = new File(getDistFolderFile(), DistConstants.FILE_NAME_EOSGI_DIST_CONFIG);
+    File missingFile = new File(getDistFolderFile(), "missing.xml");
+    File brokenFile = Files.createTempFile("eosgi-dist", ".xml").toFile();
+    try {
+      Files.write(brokenFile.toPath(), "<environment".getBytes(StandardCharsets.UTF_8));
+
+      EnvironmentConfigBatchResult result =
+          distSchemaProvider.getOverriddenDistributedEnvironmentConfigs(
+              Arrays.asList(brokenFile, distConfigFile, missingFile, distConfigFile),
+              UseByType.PARSABLES, 2);
+
+      Assert.assertFalse(result.isSuccessful());
+      Assert.assertEquals(Arrays.asList(distConfigFile, missingFile),
+          Arrays.asList(result.environments.keySet().toArray()));
+      ReflectionAssert.assertReflectionEquals(
+          distSchemaProvider.getOverriddenDistributedEnvironmentConfig(distConfigFile,
+              UseByType.PARSABLES),
+          result.environments.get(distConfigFile));
+      Assert.assertNull(result.environments.get(missingFile));
+
+      Assert.assertEquals(1, result.failures.size());
+      Assert.assertTrue(result.failures.get(brokenFile) instanceof IllegalStateException);
+    } finally {
+      Files.delete(brokenFile.toPath());
+    }
+  }
+
   private Map<String, String> toMap(final ArgumentsType programArguments) {
     return toMap(programArguments.getArgument());
   }
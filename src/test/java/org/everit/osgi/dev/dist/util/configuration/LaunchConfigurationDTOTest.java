@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LaunchConfigurationDTOTest {
+
+  private static LaunchConfigurationDTO config(final String mainClass, final String... classpath) {
+    return new LaunchConfigurationDTO(mainClass, String.join(File.pathSeparator, classpath),
+        new ArrayList<>(Arrays.asList("-Xmx1g", "-Da=1")),
+        new ArrayList<>(Arrays.asList("-console")));
+  }
+
+  @Test
+  public void testDiff() {
+    LaunchConfigurationDTO existing = config("Main", "a.jar", "b.jar", "c.jar");
+    LaunchConfigurationDTO current = config("Main2", "a.jar", "c.jar", "d.jar");
+    current.vmArguments = Arrays.asList("-Da=1", "-Xmx2g", "-Da=1");
+    current.programArguments = Arrays.asList("-console");
+
+    LaunchConfigurationDiff diff = current.diff(existing);
+
+    Assert.assertFalse(diff.isEmpty());
+    Assert.assertTrue(diff.mainClassChanged);
+    Assert.assertEquals(Arrays.asList("d.jar"), diff.addedClasspathEntries);
+    Assert.assertEquals(Arrays.asList("b.jar"), diff.removedClasspathEntries);
+    Assert.assertEquals(Arrays.asList("-Xmx2g", "-Da=1"), diff.addedVmArguments);
+    Assert.assertEquals(Arrays.asList("-Xmx1g"), diff.removedVmArguments);
+    Assert.assertTrue(diff.addedProgramArguments.isEmpty());
+    Assert.assertTrue(diff.removedProgramArguments.isEmpty());
+    Assert.assertFalse(diff.classpathReordered);
+    Assert.assertFalse(diff.programArgumentsReordered);
+  }
+
+  @Test
+  public void testDiffOfReorderedAndSameConfigs() {
+    LaunchConfigurationDTO existing = config("Main", "a.jar", "b.jar");
+    Assert.assertTrue(config("Main", "a.jar", "b.jar").diff(existing).isEmpty());
+
+    LaunchConfigurationDiff diff = config("Main", "b.jar", "a.jar").diff(existing);
+    Assert.assertTrue(diff.classpathReordered);
+    Assert.assertTrue(diff.addedClasspathEntries.isEmpty());
+    Assert.assertFalse(diff.isEmpty());
+
+    diff = config("Main").diff(null);
+    Assert.assertTrue(diff.mainClassChanged);
+    Assert.assertEquals(Arrays.asList("-Xmx1g", "-Da=1"), diff.addedVmArguments);
+  }
+
+  @Test
+  public void testFingerprint() {
+    LaunchConfigurationDTO config = config("Main", "a.jar");
+    Assert.assertEquals(config.getFingerprint(), config("Main", "a.jar").getFingerprint());
+    Assert.assertEquals(config.getFingerprint().hashCode(),
+        config("Main", "a.jar").getFingerprint().hashCode());
+    Assert.assertEquals(32, config.getFingerprint().toString().length());
+
+    Assert.assertNotEquals(config.getFingerprint(), config("Main", "b.jar").getFingerprint());
+    Assert.assertNotEquals(config.getFingerprint(), config("Main2", "a.jar").getFingerprint());
+
+    // Field boundaries are part of the fingerprint
+    Assert.assertNotEquals(
+        new LaunchConfigurationDTO("ab", "c", null, null).getFingerprint(),
+        new LaunchConfigurationDTO("a", "bc", null, null).getFingerprint());
+    Assert.assertNotEquals(
+        new LaunchConfigurationDTO(null, null, Arrays.asList("a"), null).getFingerprint(),
+        new LaunchConfigurationDTO(null, null, null, Arrays.asList("a")).getFingerprint());
+  }
+
+  @Test
+  public void testFollowsModifications() {
+    LaunchConfigurationDTO existing = config("Main", "a.jar");
+    LaunchConfigurationDTO current = config("Main", "a.jar");
+    Assert.assertFalse(current.isChanged(existing));
+
+    current.vmArguments.add("-Db=2");
+    Assert.assertTrue(current.isChanged(existing));
+    Assert.assertNotEquals(existing.getFingerprint(), current.getFingerprint());
+    Assert.assertEquals(Arrays.asList("-Db=2"), current.diff(existing).addedVmArguments);
+  }
+
+  @Test
+  public void testNullAndEmptyHaveSameFingerprint() {
+    LaunchConfigurationDTO withNulls = new LaunchConfigurationDTO("Main", null, null, null);
+    LaunchConfigurationDTO withEmpties = new LaunchConfigurationDTO("Main", "",
+        Collections.<String> emptyList(), Collections.<String> emptyList());
+
+    Assert.assertTrue(withEmpties.diff(withNulls).isEmpty());
+    Assert.assertEquals(withNulls.getFingerprint(), withEmpties.getFingerprint());
+
+    // isChanged compares the fields directly
+    Assert.assertTrue(withEmpties.isChanged(withNulls));
+    Assert.assertTrue(withNulls.isChanged(withEmpties));
+  }
+
+  @Test
+  public void testIsChanged() {
+    LaunchConfigurationDTO existing = config("Main", "a.jar");
+    Assert.assertFalse(config("Main", "a.jar").isChanged(existing));
+    Assert.assertTrue(config("Main", "b.jar").isChanged(existing));
+    Assert.assertFalse(existing.isChanged(null));
+
+    LaunchConfigurationDTO withoutClasspath = new LaunchConfigurationDTO("Main", null,
+        existing.vmArguments, existing.programArguments);
+    Assert.assertTrue(withoutClasspath.isChanged(existing));
+  }
+
+}
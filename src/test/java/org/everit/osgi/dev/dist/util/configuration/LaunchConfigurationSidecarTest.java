@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.everit.osgi.dev.dist.util.DistConstants;
+import org.everit.osgi.dev.dist.util.configuration.schema.UseByType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.unitils.reflectionassert.ReflectionAssert;
+
+public class LaunchConfigurationSidecarTest {
+
+  private File distConfigFile;
+
+  private Path tempDir;
+
+  private DistributedEnvironmentConfigurationProvider createProvider(
+      final boolean launchConfigSidecarEnabled) {
+    DistributedEnvironmentConfigurationProviderParameter parameter =
+        new DistributedEnvironmentConfigurationProviderParameter();
+    parameter.launchConfigSidecarEnabled = launchConfigSidecarEnabled;
+    return new DistributedEnvironmentConfigurationProvider(parameter);
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    tempDir = Files.createTempDirectory("eosgi-dist-sidecar-test");
+    Path target = tempDir.resolve(DistConstants.FILE_NAME_EOSGI_DIST_CONFIG);
+    try (InputStream in = getClass().getResourceAsStream(
+        "/dists/" + DistConstants.FILE_NAME_EOSGI_DIST_CONFIG)) {
+      Files.copy(in, target);
+    }
+    distConfigFile = target.toFile();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    File[] children = tempDir.toFile().listFiles();
+    if (children != null) {
+      for (File child : children) {
+        Files.delete(child.toPath());
+      }
+    }
+    Files.delete(tempDir);
+  }
+
+  @Test
+  public void testChangedSourceInvalidatesSidecar() throws IOException {
+    DistributedEnvironmentConfigurationProvider provider = createProvider(true);
+    provider.getLaunchConfiguration(distConfigFile, UseByType.IDE);
+    File sidecarFile = LaunchConfigurationSidecar.getSidecarFile(distConfigFile, UseByType.IDE);
+
+    DistConfigFingerprint oldFingerprint =
+        DistConfigFingerprint.of(distConfigFile);
+    Files.write(distConfigFile.toPath(), "\n".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+    DistConfigFingerprint newFingerprint =
+        DistConfigFingerprint.of(distConfigFile);
+
+    Assert.assertNotNull(LaunchConfigurationSidecar.read(sidecarFile, oldFingerprint));
+    Assert.assertNull(LaunchConfigurationSidecar.read(sidecarFile, newFingerprint));
+
+    provider.getLaunchConfiguration(distConfigFile, UseByType.IDE);
+    Assert.assertNotNull(LaunchConfigurationSidecar.read(sidecarFile, newFingerprint));
+  }
+
+  @Test
+  public void testCorruptSidecarIsIgnored() throws IOException {
+    DistConfigFingerprint fingerprint =
+        DistConfigFingerprint.of(distConfigFile);
+    File sidecarFile = LaunchConfigurationSidecar.getSidecarFile(distConfigFile, UseByType.IDE);
+    LaunchConfigurationSidecar.write(sidecarFile, fingerprint,
+        new LaunchConfigurationDTO("Main", "cp", Arrays.asList("-Xmx1g"),
+            Collections.<String> emptyList()));
+
+    byte[] content = Files.readAllBytes(sidecarFile.toPath());
+    Files.write(sidecarFile.toPath(), Arrays.copyOf(content, content.length - 1));
+    Assert.assertNull(LaunchConfigurationSidecar.read(sidecarFile, fingerprint));
+
+    ReflectionAssert.assertReflectionEquals(
+        createProvider(false).getLaunchConfiguration(distConfigFile, UseByType.IDE),
+        createProvider(true).getLaunchConfiguration(distConfigFile, UseByType.IDE));
+    Assert.assertNotNull(LaunchConfigurationSidecar.read(sidecarFile, fingerprint));
+  }
+
+  @Test
+  public void testMissingSourceFile() throws IOException {
+    File missingFile = new File(tempDir.toFile(), "missing.xml");
+    Assert.assertNull(DistConfigFingerprint.of(missingFile));
+    Assert.assertNull(createProvider(true).getLaunchConfiguration(missingFile, UseByType.IDE));
+  }
+
+  @Test
+  public void testSidecarHasSameContentAsSource() throws IOException {
+    DistributedEnvironmentConfigurationProvider provider = createProvider(true);
+    DistributedEnvironmentConfigurationProvider providerWithoutSidecar = createProvider(false);
+    DistConfigFingerprint fingerprint =
+        DistConfigFingerprint.of(distConfigFile);
+
+    for (UseByType useBy : UseByType.values()) {
+      LaunchConfigurationDTO expected =
+          providerWithoutSidecar.getLaunchConfiguration(distConfigFile, useBy);
+      File sidecarFile = LaunchConfigurationSidecar.getSidecarFile(distConfigFile, useBy);
+      Assert.assertFalse(sidecarFile.exists());
+
+      ReflectionAssert.assertReflectionEquals(expected,
+          provider.getLaunchConfiguration(distConfigFile, useBy));
+      ReflectionAssert.assertReflectionEquals(expected,
+          LaunchConfigurationSidecar.read(sidecarFile, fingerprint));
+      ReflectionAssert.assertReflectionEquals(expected,
+          provider.getLaunchConfiguration(distConfigFile, useBy));
+    }
+  }
+
+  @Test
+  public void testStringsWithNullAndUnicode() throws IOException {
+    DistConfigFingerprint fingerprint =
+        DistConfigFingerprint.of(distConfigFile);
+    File sidecarFile = new File(tempDir.toFile(), "test.launch");
+    LaunchConfigurationDTO launchConfiguration = new LaunchConfigurationDTO(null, "",
+        Arrays.asList("-Dname=árvíztűrő", null, ""),
+        Arrays.asList("x"));
+
+    LaunchConfigurationSidecar.write(sidecarFile, fingerprint, launchConfiguration);
+
+    ReflectionAssert.assertReflectionEquals(launchConfiguration,
+        LaunchConfigurationSidecar.read(sidecarFile, fingerprint));
+  }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.everit.osgi.dev.dist.util.DistConstants;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LaunchFingerprintStoreTest {
+
+  private static final int MANY_ENVIRONMENT_COUNT = 1000;
+
+  private File storeFile;
+
+  @Before
+  public void setUp() throws IOException {
+    storeFile = new File(Files.createTempDirectory("eosgi-fingerprint-store-test").toFile(),
+        DistConstants.FILE_NAME_LAUNCH_FINGERPRINT_STORE);
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(storeFile.toPath());
+    Files.delete(storeFile.getParentFile().toPath());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testInvalidFile() throws IOException {
+    Files.write(storeFile.toPath(), "not a store file".getBytes(StandardCharsets.UTF_8));
+    try (LaunchFingerprintStore store = new LaunchFingerprintStore(storeFile)) {
+      store.get("env", "1");
+    }
+  }
+
+  @Test
+  public void testIsStale() throws IOException {
+    LaunchConfigurationDTO launchConfiguration = new LaunchConfigurationDTO("Main", "cp",
+        Arrays.asList("-Xmx1g"), Collections.<String> emptyList());
+    LaunchConfigurationDTO changedLaunchConfiguration = new LaunchConfigurationDTO("Main", "cp",
+        Arrays.asList("-Xmx2g"), Collections.<String> emptyList());
+
+    try (LaunchFingerprintStore store = new LaunchFingerprintStore(storeFile)) {
+      Assert.assertTrue(store.isStale("env", "1", launchConfiguration));
+      store.put("env", "1", launchConfiguration.getFingerprint());
+      Assert.assertFalse(store.isStale("env", "1", launchConfiguration));
+      Assert.assertTrue(store.isStale("env", "1", changedLaunchConfiguration));
+      Assert.assertTrue(store.isStale("env", "2", launchConfiguration));
+    }
+  }
+
+  @Test
+  public void testManyEnvironmentsSurviveReopen() throws IOException {
+    try (LaunchFingerprintStore store = new LaunchFingerprintStore(storeFile)) {
+      for (int i = 0; i < MANY_ENVIRONMENT_COUNT; i++) {
+        store.put("env" + i, "launch", new LaunchConfigurationFingerprint(i, -i));
+      }
+      for (int i = 0; i < MANY_ENVIRONMENT_COUNT; i += 2) {
+        Assert.assertTrue(store.remove("env" + i, "launch"));
+      }
+    }
+
+    try (LaunchFingerprintStore store = new LaunchFingerprintStore(storeFile)) {
+      for (int i = 0; i < MANY_ENVIRONMENT_COUNT; i++) {
+        LaunchConfigurationFingerprint fingerprint = store.get("env" + i, "launch");
+        if (i % 2 == 0) {
+          Assert.assertNull(fingerprint);
+        } else {
+          Assert.assertEquals(new LaunchConfigurationFingerprint(i, -i), fingerprint);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testPutGetRemove() throws IOException {
+    try (LaunchFingerprintStore store = new LaunchFingerprintStore(storeFile)) {
+      Assert.assertNull(store.get("env", "1"));
+      Assert.assertFalse(store.remove("env", "1"));
+
+      store.put("env", "1", new LaunchConfigurationFingerprint(1, 2));
+      store.put("env", "2", new LaunchConfigurationFingerprint(3, 4));
+      store.put("env", "1", new LaunchConfigurationFingerprint(5, 6));
+
+      Assert.assertEquals(new LaunchConfigurationFingerprint(5, 6), store.get("env", "1"));
+      Assert.assertEquals(new LaunchConfigurationFingerprint(3, 4), store.get("env", "2"));
+      Assert.assertNull(store.get("env1", ""));
+
+      Assert.assertTrue(store.remove("env", "1"));
+      Assert.assertNull(store.get("env", "1"));
+      Assert.assertEquals(new LaunchConfigurationFingerprint(3, 4), store.get("env", "2"));
+
+      store.put("env", "1", new LaunchConfigurationFingerprint(7, 8));
+      Assert.assertEquals(new LaunchConfigurationFingerprint(7, 8), store.get("env", "1"));
+    }
+  }
+
+}
@@ -15,8 +15,12 @@
  */
 package org.everit.osgi.dev.dist.util.configuration;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
 
 import org.everit.osgi.dev.dist.util.configuration.MergeUtil;
 import org.junit.Assert;
@@ -24,6 +28,68 @@ import org.junit.Test;
 
 public class MergeUtilTest {
 
+  private static void assertSameContent(final Map<String, String> expected,
+      final Map<String, String> view) {
+
+    Assert.assertEquals(expected, view);
+    Assert.assertEquals(new ArrayList<String>(expected.keySet()),
+        new ArrayList<String>(view.keySet()));
+    for (int i = 0; i < 10; i++) {
+      String key = "k" + i;
+      Assert.assertEquals(expected.containsKey(key), view.containsKey(key));
+      Assert.assertEquals(expected.get(key), view.get(key));
+    }
+  }
+
+  private static void assertSameAsPairwiseChain(final boolean sorted) {
+    Random random = new Random(sorted ? 2 : 3);
+    for (int round = 0; round < 1000; round++) {
+      Map<String, String> override = randomMap(random, sorted);
+      int layerCount = 5 + random.nextInt(4);
+      List<MergeLayer> layers = new ArrayList<MergeLayer>();
+      List<Map<String, String>> defaults = new ArrayList<Map<String, String>>();
+      Map<String, String> expectedOverrides = override;
+      Map<String, String> expectedDefaults = null;
+      for (int i = 0; i < layerCount; i++) {
+        MergeLayer layer = new MergeLayer(randomMap(random, sorted), randomMap(random, sorted));
+        layers.add(layer);
+        defaults.add(layer.defaults);
+        expectedOverrides =
+            MergeUtil.mergeOverrides(expectedOverrides, layer.defaults, layer.overrides);
+        expectedDefaults = MergeUtil.mergeDefaults(expectedDefaults, layer.defaults);
+      }
+
+      assertSameContent(expectedOverrides, MergeUtil.mergeOverrides(override, layers));
+      assertSameContent(expectedDefaults, MergeUtil.mergeDefaults(defaults));
+    }
+  }
+
+  private static Map<String, String> randomMap(final Random random) {
+    return randomMap(random, false);
+  }
+
+  private static Map<String, String> randomMap(final Random random, final boolean sorted) {
+    int size = random.nextInt(6) - 1;
+    if (size < 0) {
+      return null;
+    }
+    Map<String, String> result =
+        sorted ? new TreeMap<String, String>() : new HashMap<String, String>();
+    for (int i = 0; i < size; i++) {
+      int valueSelector = random.nextInt(5);
+      String value;
+      if (valueSelector == 0) {
+        value = null;
+      } else if (valueSelector == 1) {
+        value = "";
+      } else {
+        value = "v" + random.nextInt(10);
+      }
+      result.put("k" + random.nextInt(10), value);
+    }
+    return result;
+  }
+
   @Test
   public void testMergeDefaults() {
 
@@ -63,6 +129,23 @@ public class MergeUtilTest {
     Assert.assertEquals("v1", result.get("k1"));
   }
 
+  @Test
+  public void testMergeDefaultsViewSameAsMergeDefaults() {
+    Random random = new Random(0);
+    for (int round = 0; round < 1000; round++) {
+      Map<String, String> default1 = randomMap(random);
+      Map<String, String> default2 = randomMap(random);
+
+      assertSameContent(MergeUtil.mergeDefaults(default1, default2),
+          MergeUtil.mergeDefaultsView(default1, default2));
+    }
+  }
+
+  @Test
+  public void testMergeLayersSameAsPairwiseChain() {
+    assertSameAsPairwiseChain(false);
+  }
+
   @Test
   public void testMergeOverrides() {
 
@@ -122,4 +205,45 @@ public class MergeUtilTest {
     Assert.assertEquals("v1", result.get("k1"));
   }
 
+  @Test
+  public void testMergeOverridesViewSameAsMergeOverrides() {
+    Random random = new Random(1);
+    for (int round = 0; round < 1000; round++) {
+      Map<String, String> override1 = randomMap(random);
+      Map<String, String> default2 = randomMap(random);
+      Map<String, String> override2 = randomMap(random);
+
+      assertSameContent(MergeUtil.mergeOverrides(override1, default2, override2),
+          MergeUtil.mergeOverridesView(override1, default2, override2));
+    }
+  }
+
+  @Test
+  public void testMergeSortedLayersSameAsPairwiseChain() {
+    assertSameAsPairwiseChain(true);
+  }
+
+  @Test
+  public void testViewAcceptsAnyKey() {
+    Map<String, String> default1 = new TreeMap<String, String>();
+    default1.put("k1", "v1");
+    Map<String, String> view = MergeUtil.mergeDefaultsView(default1, new TreeMap<String, String>());
+
+    Assert.assertFalse(view.containsKey(null));
+    Assert.assertFalse(view.containsKey(Integer.valueOf(1)));
+    Assert.assertNull(view.get(null));
+    Assert.assertNull(view.get(Integer.valueOf(1)));
+    Assert.assertEquals("v1", view.get("k1"));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testViewIsReadOnly() {
+    Map<String, String> default1 = new HashMap<String, String>();
+    default1.put("k1", "v1");
+
+    Map<String, String> result = MergeUtil.mergeDefaultsView(default1, null);
+    Assert.assertEquals("v1", result.get("k1"));
+    result.entrySet().iterator().next().setValue("x");
+  }
+
 }
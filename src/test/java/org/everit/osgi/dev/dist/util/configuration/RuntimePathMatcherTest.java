@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.everit.osgi.dev.dist.util.configuration.schema.EntryType;
+import org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType;
+import org.everit.osgi.dev.dist.util.configuration.schema.RuntimePathRegexesType;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RuntimePathMatcherTest {
+
+  private static final String[] REGEXES = {
+      "log/.*", "^log/.*\\.log$", "bin/run\\.sh", "bin/run.sh", "etc/[^/]*\\.cfg", "a+b/c",
+      "x?y/z", "(data|tmp)/.*", "(?i)LIB/.*\\.JAR", "lib/.*\\.jar", "lib/\\w+-\\d+\\.jar",
+      "\\x6cog/x", "a{2,3}/b", "[/]tmp", ".*/\\.lock", "work/(cache)?/.*", "\\Qbin/\\E.*",
+      "conf/\\p{Alpha}+", "[\\]x]/y", "[a-z[0-9]]+/q$", "\\cA", "(a)\\1/b", "bin/run\\.sh" };
+
+  private static final String[] SEGMENTS = {
+      "log", "LOG", "bin", "run.sh", "runxsh", "etc", "a.cfg", "b/a.cfg", "ab", "aab", "b", "c",
+      "y", "xy", "z", "data", "tmp", "lib", "LIB", "a.jar", "A.JAR", "x-1.jar", "x", "aa", "aaa",
+      "aaaa", "/tmp", ".lock", "work", "cache", "", "conf", "abc", "]", "q", "\u0001", "a/b" };
+
+  private static RuntimePathRegexesType regexes(final String... keyValuePairs) {
+    RuntimePathRegexesType result = new RuntimePathRegexesType();
+    for (int i = 0; i < keyValuePairs.length; i = i + 2) {
+      EntryType entry = new EntryType();
+      entry.setKey(keyValuePairs[i]);
+      entry.setValue(keyValuePairs[i + 1]);
+      result.getEntry().add(entry);
+    }
+    return result;
+  }
+
+  private static String prefix(final String regex) {
+    List<Character> tokens = RuntimePathMatcher.tokenize(regex);
+    if (tokens == null) {
+      return null;
+    }
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < tokens.size() && tokens.get(i) != null; i++) {
+      sb.append(tokens.get(i).charValue());
+    }
+    return sb.toString();
+  }
+
+  private static String randomPath(final Random random) {
+    StringBuilder sb = new StringBuilder();
+    int segmentCount = random.nextInt(4);
+    for (int i = 0; i < segmentCount; i++) {
+      if (i > 0) {
+        sb.append('/');
+      }
+      sb.append(SEGMENTS[random.nextInt(SEGMENTS.length)]);
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testFirstMatchingKey() {
+    RuntimePathMatcher matcher = new RuntimePathMatcher(regexes(
+        "logs", "log/.*", "exact", "log/x.log", "lock", ".*\\.lock", "none", null));
+
+    Assert.assertEquals("logs", matcher.match("log/x.log"));
+    Assert.assertEquals("lock", matcher.match("work/.lock"));
+    Assert.assertNull(matcher.match("log"));
+    Assert.assertNull(matcher.match("xlog/a"));
+    Assert.assertFalse(matcher.matches("bin/run.sh"));
+    Assert.assertEquals(Arrays.asList("logs", "exact"), matcher.matchAll("log/x.log"));
+    Assert.assertEquals(Collections.emptyList(), matcher.matchAll("bin"));
+  }
+
+  @Test
+  public void testLiteralRuleAfterRegexRule() {
+    RuntimePathMatcher matcher = new RuntimePathMatcher(regexes(
+        "exact", "bin/run.sh", "wildcard", "bin/.*", "exact2", "bin/run"));
+
+    Assert.assertEquals("exact", matcher.match("bin/run.sh"));
+    Assert.assertEquals("wildcard", matcher.match("bin/run"));
+    Assert.assertEquals("exact", matcher.match("bin/runxsh"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidRegex() {
+    new RuntimePathMatcher(regexes("invalid", "log/(.*"));
+  }
+
+  @Test
+  public void testNoRegexes() {
+    RuntimePathMatcher matcher = new RuntimePathMatcher(new EnvironmentType());
+    Assert.assertNull(matcher.match("log/x.log"));
+    Assert.assertTrue(matcher.matchAll("log/x.log").isEmpty());
+  }
+
+  @Test
+  public void testPrefixExtraction() {
+    Assert.assertEquals("log/", prefix("^log/.*"));
+    Assert.assertEquals("bin/run.sh", prefix("bin/run\\.sh"));
+    Assert.assertEquals("bin/run", prefix("bin/run.sh"));
+    Assert.assertEquals("", prefix("a+b"));
+    Assert.assertEquals("", prefix("x?y"));
+    Assert.assertEquals("a", prefix("ab{2}"));
+    Assert.assertEquals("", prefix("\\w+"));
+    Assert.assertNull(prefix("(data|tmp)/.*"));
+    Assert.assertNull(prefix("(?i)lib"));
+    Assert.assertNull(prefix("\\x6cog"));
+    Assert.assertNull(prefix("\\Qlog\\E"));
+  }
+
+  @Test
+  public void testSameAsPatternMatching() {
+    List<String> keyValuePairs = new ArrayList<>();
+    for (int i = 0; i < REGEXES.length; i++) {
+      keyValuePairs.add("r" + i);
+      keyValuePairs.add(REGEXES[i]);
+    }
+    RuntimePathMatcher matcher =
+        new RuntimePathMatcher(regexes(keyValuePairs.toArray(new String[0])));
+
+    Random random = new Random(0);
+    for (int round = 0; round < 20000; round++) {
+      String path = randomPath(random);
+      List<String> expected = new ArrayList<>();
+      for (int i = 0; i < REGEXES.length; i++) {
+        if (Pattern.matches(REGEXES[i], path)) {
+          expected.add("r" + i);
+        }
+      }
+      Assert.assertEquals(path, expected, matcher.matchAll(path));
+      Assert.assertEquals(path, expected.isEmpty() ? null : expected.get(0), matcher.match(path));
+    }
+  }
+
+}
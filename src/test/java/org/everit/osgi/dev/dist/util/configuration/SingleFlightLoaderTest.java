@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.everit.osgi.dev.dist.util.DistConstants;
+import org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType;
+import org.everit.osgi.dev.dist.util.configuration.schema.UseByType;
+import org.junit.Assert;
+import org.junit.Test;
+import org.unitils.reflectionassert.ReflectionAssert;
+
+public class SingleFlightLoaderTest {
+
+  private static final int THREAD_COUNT = 8;
+
+  private static final long TIMEOUT_MS = 10000;
+
+  private void awaitWaitingCount(final SingleFlightLoader<String, StringBuilder> loader,
+      final int expectedCount) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (loader.getWaitingCount("key") < expectedCount) {
+      if (System.currentTimeMillis() > deadline) {
+        Assert.fail("Threads did not join the running load");
+      }
+      Thread.sleep(1);
+    }
+  }
+
+  private File getDistConfigFile() throws URISyntaxException {
+    return new File(Paths.get(getClass().getResource("/dists").toURI()).toFile(),
+        DistConstants.FILE_NAME_EOSGI_DIST_CONFIG);
+  }
+
+  @Test
+  public void testConcurrentLoadsShareOneComputation() throws Exception {
+    SingleFlightLoader<String, StringBuilder> loader =
+        new SingleFlightLoader<>((value) -> new StringBuilder(value));
+    AtomicInteger loadCount = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+
+    ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+    try {
+      List<Future<StringBuilder>> results = new ArrayList<>();
+      results.add(executor.submit(() -> loader.load("key", () -> {
+        loadCount.incrementAndGet();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return new StringBuilder("value");
+      })));
+      while (loadCount.get() == 0) {
+        Thread.sleep(1);
+      }
+
+      for (int i = 1; i < THREAD_COUNT; i++) {
+        results.add(executor.submit(() -> loader.load("key", () -> {
+          loadCount.incrementAndGet();
+          return new StringBuilder("other");
+        })));
+      }
+      awaitWaitingCount(loader, THREAD_COUNT - 1);
+      release.countDown();
+
+      IdentityHashMap<StringBuilder, Boolean> distinctResults = new IdentityHashMap<>();
+      for (Future<StringBuilder> result : results) {
+        StringBuilder value = result.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        Assert.assertEquals("value", value.toString());
+        distinctResults.put(value, Boolean.TRUE);
+      }
+      Assert.assertEquals(1, loadCount.get());
+      Assert.assertEquals(THREAD_COUNT, distinctResults.size());
+      Assert.assertEquals(0, loader.getWaitingCount("key"));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testExceptionIsPassedToWaitingThreads() throws Exception {
+    SingleFlightLoader<String, StringBuilder> loader =
+        new SingleFlightLoader<>((value) -> new StringBuilder(value));
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger started = new AtomicInteger();
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<StringBuilder> leader = executor.submit(() -> loader.load("key", () -> {
+        started.incrementAndGet();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        throw new IllegalStateException("failed");
+      }));
+      while (started.get() == 0) {
+        Thread.sleep(1);
+      }
+      Future<StringBuilder> waiting = executor.submit(() -> loader.load("key", () -> null));
+      awaitWaitingCount(loader, 1);
+      release.countDown();
+
+      for (Future<StringBuilder> future : Arrays.asList(leader, waiting)) {
+        try {
+          future.get(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+          Assert.fail("Exception expected");
+        } catch (ExecutionException e) {
+          Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+      }
+
+      Assert.assertEquals("again",
+          loader.load("key", () -> new StringBuilder("again")).toString());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testParallelProviderCalls() throws Exception {
+    File distConfigFile = getDistConfigFile();
+
+    DistributedEnvironmentConfigurationProviderParameter parameter =
+        new DistributedEnvironmentConfigurationProviderParameter();
+    parameter.cache = new DistConfigCache(1);
+    DistributedEnvironmentConfigurationProvider provider =
+        new DistributedEnvironmentConfigurationProvider(parameter);
+
+    EnvironmentType expected =
+        provider.getOverriddenDistributedEnvironmentConfig(distConfigFile, UseByType.PARSABLES);
+
+    ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+    try {
+      List<Future<EnvironmentType>> results = new ArrayList<>();
+      for (int i = 0; i < THREAD_COUNT * 10; i++) {
+        results.add(executor.submit(() -> {
+          EnvironmentType result = provider.getOverriddenDistributedEnvironmentConfig(
+              distConfigFile, UseByType.PARSABLES);
+          result.getArtifacts().getArtifact().get(0).setTargetFile("modified");
+          return provider.getOverriddenDistributedEnvironmentConfig(
+              distConfigFile, UseByType.PARSABLES);
+        }));
+      }
+      for (Future<EnvironmentType> result : results) {
+        ReflectionAssert.assertReflectionEquals(expected,
+            result.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testProvidersWithDifferentCachesFillTheirOwnCache() throws Exception {
+    File distConfigFile = getDistConfigFile();
+    List<DistConfigCache> caches = new ArrayList<>();
+    List<DistributedEnvironmentConfigurationProvider> providers = new ArrayList<>();
+    for (int i = 0; i < THREAD_COUNT; i++) {
+      DistributedEnvironmentConfigurationProviderParameter parameter =
+          new DistributedEnvironmentConfigurationProviderParameter();
+      parameter.cache = new DistConfigCache(1);
+      caches.add(parameter.cache);
+      providers.add(new DistributedEnvironmentConfigurationProvider(parameter));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+    try {
+      CountDownLatch start = new CountDownLatch(1);
+      List<Future<EnvironmentType>> results = new ArrayList<>();
+      for (DistributedEnvironmentConfigurationProvider provider : providers) {
+        results.add(executor.submit(() -> {
+          start.await();
+          return provider.getOverriddenDistributedEnvironmentConfig(
+              distConfigFile, UseByType.PARSABLES);
+        }));
+      }
+      start.countDown();
+      for (Future<EnvironmentType> result : results) {
+        Assert.assertNotNull(result.get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    for (DistConfigCache cache : caches) {
+      Assert.assertEquals(1, cache.size());
+    }
+  }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.everit.osgi.dev.dist.util.DistConstants;
+import org.everit.osgi.dev.dist.util.configuration.schema.ArtifactType;
+import org.everit.osgi.dev.dist.util.configuration.schema.ArtifactsType;
+import org.everit.osgi.dev.dist.util.configuration.schema.EntryType;
+import org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType;
+import org.everit.osgi.dev.dist.util.configuration.schema.ParsableType;
+import org.everit.osgi.dev.dist.util.configuration.schema.ParsablesType;
+import org.everit.osgi.dev.dist.util.configuration.schema.RuntimePathRegexesType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StaleFilePrunerTest {
+
+  private static final int MANY_FILE_COUNT = 2000;
+
+  private static ArtifactType artifact(final String targetFolder, final String targetFile,
+      final String coordinates) {
+    ArtifactType artifact = new ArtifactType();
+    artifact.setTargetFolder(targetFolder);
+    artifact.setTargetFile(targetFile);
+    artifact.setCoordinates(coordinates);
+    return artifact;
+  }
+
+  private static EnvironmentType environment() {
+    EnvironmentType environment = new EnvironmentType();
+    environment.setId("env");
+
+    ArtifactsType artifacts = new ArtifactsType();
+    artifacts.getArtifact().add(artifact("lib", "a.jar", "g:a:1"));
+    artifacts.getArtifact().add(artifact("lib", null, "g:b:2"));
+    artifacts.getArtifact().add(artifact(null, "start.sh", null));
+    environment.setArtifacts(artifacts);
+
+    ParsablesType parsables = new ParsablesType();
+    ParsableType parsable = new ParsableType();
+    parsable.setPath("etc\\config.ini");
+    parsables.getParsable().add(parsable);
+    environment.setParsables(parsables);
+
+    RuntimePathRegexesType runtimePathRegexes = new RuntimePathRegexesType();
+    EntryType entry = new EntryType();
+    entry.setKey("log");
+    entry.setValue("log/.*");
+    runtimePathRegexes.getEntry().add(entry);
+    environment.setRuntimePathRegexes(runtimePathRegexes);
+    return environment;
+  }
+
+  private Path root;
+
+  private void createFiles(final String... paths) throws IOException {
+    for (String path : paths) {
+      Path file = root.resolve(path);
+      Files.createDirectories(file.getParent());
+      Files.createFile(file);
+    }
+  }
+
+  private List<String> listFiles() throws IOException {
+    List<String> result = new ArrayList<>();
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+        result.add(ArtifactIndex.normalizeTargetPath(root.relativize(file).toString()));
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    Collections.sort(result);
+    return result;
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("eosgi-stale-file-pruner-test");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult postVisitDirectory(final Path dir, final IOException exc)
+          throws IOException {
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+          throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  @Test
+  public void testDryRunAndPrune() throws IOException {
+    createFiles("lib/a.jar", "lib/b-2.jar", "lib/old.jar", "start.sh", "etc/config.ini",
+        "etc/old.ini", "log/x.log", "log/sub/y.log", "logs/z.log",
+        DistConstants.FILE_NAME_EOSGI_DIST_CONFIG,
+        DistConstants.FILE_NAME_EOSGI_DIST_CONFIG + ".IDE"
+            + DistConstants.FILE_EXTENSION_LAUNCH_CONFIG_SIDECAR);
+    List<String> stale = Arrays.asList("etc/old.ini", "lib/old.jar", "logs/z.log");
+    List<String> expectedRemaining = new ArrayList<>(listFiles());
+    expectedRemaining.removeAll(stale);
+
+    StaleFilePruner pruner = new StaleFilePruner(environment());
+    StaleFilePrunerParameter parameter = new StaleFilePrunerParameter();
+    parameter.dryRun = true;
+    StaleFilePruneResult dryRunResult = pruner.prune(root, parameter);
+
+    Assert.assertEquals(stale, dryRunResult.staleFiles);
+    Assert.assertEquals(11, dryRunResult.scannedFileCount);
+    Assert.assertEquals(0, dryRunResult.deleteNanos);
+    Assert.assertTrue(dryRunResult.isSuccessful());
+    Assert.assertEquals(11, listFiles().size());
+
+    StaleFilePruneResult result = pruner.prune(root, new StaleFilePrunerParameter());
+    Assert.assertEquals(stale, result.staleFiles);
+    Assert.assertTrue(result.isSuccessful());
+    Assert.assertEquals(expectedRemaining, listFiles());
+    Assert.assertTrue(Files.isDirectory(root.resolve("logs")));
+  }
+
+  @Test
+  public void testManyFilesSameAsSequentialCheck() throws IOException {
+    List<String> paths = new ArrayList<>();
+    for (int i = 0; i < MANY_FILE_COUNT; i++) {
+      String folder = (i % 3 == 0) ? "log" : (i % 3 == 1) ? "lib" : "tmp";
+      paths.add(folder + "/d" + (i % 17) + "/f" + i);
+    }
+    createFiles(paths.toArray(new String[paths.size()]));
+
+    StaleFilePruner pruner = new StaleFilePruner(environment());
+    List<String> expected = new ArrayList<>();
+    for (String path : listFiles()) {
+      if (pruner.isStale(path)) {
+        expected.add(path);
+      }
+    }
+
+    StaleFilePrunerParameter parameter = new StaleFilePrunerParameter();
+    parameter.parallelism = 4;
+    StaleFilePruneResult result = pruner.prune(root, parameter);
+
+    Assert.assertEquals(expected, result.staleFiles);
+    Assert.assertEquals(MANY_FILE_COUNT, result.scannedFileCount);
+    Assert.assertEquals(MANY_FILE_COUNT - expected.size(), listFiles().size());
+  }
+
+  @Test
+  public void testNonCanonicalTargetFolder() throws IOException {
+    createFiles("lib/a.jar", "lib/c.jar", "lib/old.jar");
+    EnvironmentType environment = environment();
+    environment.getArtifacts().getArtifact().add(artifact("./lib/sub/..", "c.jar", null));
+    StaleFilePruner pruner = new StaleFilePruner(environment);
+
+    Assert.assertFalse(pruner.isStale("lib/c.jar"));
+    Assert.assertFalse(pruner.isStale("./lib/a.jar"));
+
+    StaleFilePruneResult result = pruner.prune(root, new StaleFilePrunerParameter());
+    Assert.assertTrue(result.isSuccessful());
+    Assert.assertEquals(Arrays.asList("lib/old.jar"), result.staleFiles);
+  }
+
+  @Test
+  public void testMissingFolderIsReportedAsFailure() {
+    StaleFilePruneResult result = new StaleFilePruner(environment())
+        .prune(root.resolve("missing"), new StaleFilePrunerParameter());
+
+    Assert.assertFalse(result.isSuccessful());
+    Assert.assertTrue(result.staleFiles.isEmpty());
+  }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2011 Everit Kft. (http://www.everit.biz)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.everit.osgi.dev.dist.util.configuration;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLStreamException;
+
+import org.everit.osgi.dev.dist.util.DistConstants;
+import org.everit.osgi.dev.dist.util.configuration.schema.EnvironmentType;
+import org.everit.osgi.dev.dist.util.configuration.schema.ObjectFactory;
+import org.everit.osgi.dev.dist.util.configuration.schema.UseByType;
+import org.junit.Assert;
+import org.junit.Test;
+import org.unitils.reflectionassert.ReflectionAssert;
+
+public class StaxEnvironmentBinderTest {
+
+  private static final String EDGE_CASE_XML =
+      "<environment id=' x ' frameworkStartLevel=' 4 '"
+          + " xmlns='http://everit.org/eosgi/dist/definition/4.0.0'"
+          + " xmlns:xsi='http://www.w3.org/2001/XMLSchema-instance'>"
+          + "<artifacts>"
+          + "<artifact targetFile='a'><coordinates> g:a:1 </coordinates>"
+          + "<unknown><x/>t</unknown><properties>\n</properties></artifact>"
+          + "<artifact/>"
+          + "</artifacts>"
+          + "<parsables><parsable path='p' templateEngine='XML'/></parsables>"
+          + "<runtimePathRegexes><entry key='log'>log/.*</entry></runtimePathRegexes>"
+          + "<launchConfig mainClass='M'><vmArguments>"
+          + "<argument key='a'>  v &amp; <![CDATA[c]]> </argument>"
+          + "<argument key='e'></argument><argument key='s'/>"
+          + "<argument key='n' xsi:nil='true'/>"
+          + "</vmArguments>"
+          + "<overrides><override><useBy>IDE</useBy>"
+          + "<programArguments><argument key='p'>-p</argument></programArguments>"
+          + "</override><override><useBy>UNKNOWN</useBy></override></overrides>"
+          + "</launchConfig>"
+          + "</environment>";
+
+  private File getDistConfigFile() throws URISyntaxException {
+    return new File(Paths.get(getClass().getResource("/dists").toURI()).toFile(),
+        DistConstants.FILE_NAME_EOSGI_DIST_CONFIG);
+  }
+
+  private EnvironmentType readWithJAXB(final InputStream in) throws JAXBException {
+    JAXBContext jaxbContext = JAXBContext.newInstance(
+        ObjectFactory.class.getPackage().getName(), ObjectFactory.class.getClassLoader());
+    Object result = jaxbContext.createUnmarshaller().unmarshal(in);
+    return (EnvironmentType) ((JAXBElement<?>) result).getValue();
+  }
+
+  @Test
+  public void testEdgeCasesSameAsJAXB() throws JAXBException, XMLStreamException {
+    byte[] content = EDGE_CASE_XML.getBytes(StandardCharsets.UTF_8);
+
+    EnvironmentType expected = readWithJAXB(new ByteArrayInputStream(content));
+    EnvironmentType actual = new StaxEnvironmentBinder().read(new ByteArrayInputStream(content));
+
+    ReflectionAssert.assertReflectionEquals(expected, actual);
+    Assert.assertNull(actual.getLaunchConfig().getVmArguments().getArgument().get(3));
+    Assert.assertEquals("  v & c ",
+        actual.getLaunchConfig().getVmArguments().getArgument().get(0).getValue());
+  }
+
+  @Test
+  public void testProviderModesGiveSameResult() throws URISyntaxException {
+    DistributedEnvironmentConfigurationProviderParameter parameter =
+        new DistributedEnvironmentConfigurationProviderParameter();
+    parameter.readerMode = DistConfigReaderMode.STAX;
+    DistributedEnvironmentConfigurationProvider staxProvider =
+        new DistributedEnvironmentConfigurationProvider(parameter);
+    DistributedEnvironmentConfigurationProvider jaxbProvider =
+        new DistributedEnvironmentConfigurationProvider();
+
+    File distConfigFile = getDistConfigFile();
+    for (UseByType useBy : UseByType.values()) {
+      EnvironmentType expected =
+          jaxbProvider.getOverriddenDistributedEnvironmentConfig(distConfigFile, useBy);
+      EnvironmentType actual =
+          staxProvider.getOverriddenDistributedEnvironmentConfig(distConfigFile, useBy);
+      ReflectionAssert.assertReflectionEquals(expected, actual);
+    }
+  }
+
+  @Test
+  public void testSameAsJAXB() throws URISyntaxException, IOException, JAXBException,
+      XMLStreamException {
+
+    EnvironmentType expected;
+    try (InputStream in = getClass().getResourceAsStream(
+        "/dists/" + DistConstants.FILE_NAME_EOSGI_DIST_CONFIG)) {
+      expected = readWithJAXB(in);
+    }
+
+    EnvironmentType actual;
+    try (InputStream in = getClass().getResourceAsStream(
+        "/dists/" + DistConstants.FILE_NAME_EOSGI_DIST_CONFIG)) {
+      actual = new StaxEnvironmentBinder().read(in);
+    }
+
+    ReflectionAssert.assertReflectionEquals(expected, actual);
+  }
+
+  @Test
+  public void testSelectedSectionsOnly() throws IOException, XMLStreamException {
+    EnvironmentType full;
+    try (InputStream in = getClass().getResourceAsStream(
+        "/dists/" + DistConstants.FILE_NAME_EOSGI_DIST_CONFIG)) {
+      full = new StaxEnvironmentBinder().read(in);
+    }
+
+    EnvironmentType launchConfigOnly;
+    try (InputStream in = getClass().getResourceAsStream(
+        "/dists/" + DistConstants.FILE_NAME_EOSGI_DIST_CONFIG)) {
+      launchConfigOnly =
+          new StaxEnvironmentBinder(EnumSet.of(DistConfigSection.LAUNCH_CONFIG)).read(in);
+    }
+
+    Assert.assertNotNull(full.getArtifacts());
+    Assert.assertNotNull(full.getParsables());
+    Assert.assertNull(launchConfigOnly.getArtifacts());
+    Assert.assertNull(launchConfigOnly.getParsables());
+    Assert.assertNull(launchConfigOnly.getRuntimePathRegexes());
+    Assert.assertEquals(full.getId(), launchConfigOnly.getId());
+    ReflectionAssert.assertReflectionEquals(full.getLaunchConfig(),
+        launchConfigOnly.getLaunchConfig());
+  }
+
+  @Test
+  public void testSelectedSectionsViaProvider() throws URISyntaxException {
+    DistributedEnvironmentConfigurationProviderParameter parameter =
+        new DistributedEnvironmentConfigurationProviderParameter();
+    parameter.cache = new DistConfigCache(2);
+    DistributedEnvironmentConfigurationProvider provider =
+        new DistributedEnvironmentConfigurationProvider(parameter);
+
+    File distConfigFile = getDistConfigFile();
+    EnvironmentType full =
+        provider.getOverriddenDistributedEnvironmentConfig(distConfigFile, UseByType.IDE);
+    EnvironmentType artifactsOnly = provider.getOverriddenDistributedEnvironmentConfig(
+        distConfigFile, UseByType.IDE, EnumSet.of(DistConfigSection.ARTIFACTS));
+
+    Assert.assertEquals(2, parameter.cache.size());
+    Assert.assertNull(artifactsOnly.getLaunchConfig());
+    Assert.assertNull(artifactsOnly.getParsables());
+    ReflectionAssert.assertReflectionEquals(full.getArtifacts(), artifactsOnly.getArtifacts());
+    ReflectionAssert.assertReflectionEquals(
+        provider.getLaunchConfiguration(full),
+        provider.getLaunchConfiguration(distConfigFile, UseByType.IDE));
+  }
+
+  @Test(expected = XMLStreamException.class)
+  public void testUnexpectedRootElement() throws XMLStreamException {
+    new StaxEnvironmentBinder().read(new ByteArrayInputStream(
+        "<environment id='x'/>".getBytes(StandardCharsets.UTF_8)));
+  }
+
+}